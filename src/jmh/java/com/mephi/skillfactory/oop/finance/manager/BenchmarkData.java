@@ -0,0 +1,64 @@
+package com.mephi.skillfactory.oop.finance.manager;
+
+import com.mephi.skillfactory.oop.finance.manager.domain.Operation;
+import com.mephi.skillfactory.oop.finance.manager.domain.Wallet;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import static com.mephi.skillfactory.oop.finance.manager.domain.enumeration.OperationType.EXPENSE;
+import static com.mephi.skillfactory.oop.finance.manager.domain.enumeration.OperationType.INCOME;
+
+// Deterministic wallets for the benchmarks: every tenth operation is an income large enough
+// to keep the balance positive, so no balance alert is printed while measuring
+public final class BenchmarkData {
+    private static final long SEED = 42L;
+
+    private BenchmarkData() {
+    }
+
+    public static List<Operation> operations(String login, int count, int categories) {
+        final var random = new Random(SEED);
+        final var operations = new ArrayList<Operation>(count);
+        for (var i = 0; i < count; i++) {
+            final var category = category(random.nextInt(categories));
+            if (i % 10 == 0) {
+                operations.add(new Operation(INCOME, 10_000 + random.nextInt(1000), category, "income " + i, null, login));
+            } else {
+                operations.add(new Operation(EXPENSE, 1 + random.nextInt(500), category, "expense " + i, login, null));
+            }
+        }
+        return operations;
+    }
+
+    public static Wallet wallet(List<Operation> operations) {
+        final var wallet = new Wallet(0.0, new ArrayList<>(), new HashMap<>());
+        operations.forEach(wallet::addOperation);
+        return wallet;
+    }
+
+    public static String category(int index) {
+        return "category-" + index;
+    }
+
+    public static Path createTempDir() throws IOException {
+        return Files.createTempDirectory("finance-manager-jmh");
+    }
+
+    public static void deleteRecursively(Path dir) throws IOException {
+        if (dir == null || !Files.exists(dir)) {
+            return;
+        }
+        try (final var paths = Files.walk(dir)) {
+            for (final var path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.mephi.skillfactory.oop.finance.manager.repository;
+
+import com.mephi.skillfactory.oop.finance.manager.BenchmarkData;
+import com.mephi.skillfactory.oop.finance.manager.domain.User;
+import com.mephi.skillfactory.oop.finance.manager.domain.Wallet;
+import com.mephi.skillfactory.oop.finance.manager.repository.codec.WalletFileFormat;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// Full rewrite and full read of one wallet file in both formats
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WalletRepositoryBenchmark {
+    private static final String LOGIN = "benchmark";
+
+    @Param({"1000", "100000", "1000000"})
+    private int operations;
+
+    @Param({"10", "1000"})
+    private int categories;
+
+    @Param({"JSON", "BINARY"})
+    private WalletFileFormat format;
+
+    private Path dataDir;
+    private FileBasedWalletRepository walletRepository;
+    private User user;
+
+    @Setup
+    public void setUp() throws IOException {
+        dataDir = BenchmarkData.createTempDir();
+        walletRepository = new FileBasedWalletRepository(dataDir.toString(), format, DataSize.ofMegabytes(1));
+
+        user = new User(LOGIN, "passwordHash");
+        user.setWallet(BenchmarkData.wallet(BenchmarkData.operations(LOGIN, operations, categories)));
+        walletRepository.saveWallet(user);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        BenchmarkData.deleteRecursively(dataDir);
+    }
+
+    @Benchmark
+    public void saveWallet() {
+        walletRepository.saveWallet(user);
+    }
+
+    @Benchmark
+    public Wallet loadWallet() {
+        return walletRepository.loadWallet(LOGIN);
+    }
+}
@@ -0,0 +1,76 @@
+package com.mephi.skillfactory.oop.finance.manager.service.auth;
+
+import com.mephi.skillfactory.oop.finance.manager.BenchmarkData;
+import com.mephi.skillfactory.oop.finance.manager.concurrent.IoExecutor;
+import com.mephi.skillfactory.oop.finance.manager.repository.FileBasedCredentialsRepository;
+import com.mephi.skillfactory.oop.finance.manager.repository.FileBasedWalletRepository;
+import com.mephi.skillfactory.oop.finance.manager.repository.codec.WalletFileFormat;
+import com.mephi.skillfactory.oop.finance.manager.service.wallet.WalletLocks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+// Startup cost of AuthService with `users` registered users: credentials are read eagerly, wallets lazily
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class AuthServiceStartupBenchmark {
+    private static final String CREDENTIALS_FILE = "credentials.json";
+
+    @Param({"1000", "100000"})
+    private int users;
+
+    @Param({"false", "true"})
+    private boolean preload;
+
+    private Path dataDir;
+    private FileBasedWalletRepository walletRepository;
+    private FileBasedCredentialsRepository credentialsRepository;
+    private WalletLocks walletLocks;
+    private IoExecutor ioExecutor;
+
+    @Setup
+    public void setUp() throws IOException {
+        dataDir = BenchmarkData.createTempDir();
+        walletRepository = new FileBasedWalletRepository(dataDir.toString(), WalletFileFormat.JSON, DataSize.ofMegabytes(1));
+        credentialsRepository = new FileBasedCredentialsRepository(dataDir.toString(), CREDENTIALS_FILE);
+        walletLocks = new WalletLocks(64);
+        ioExecutor = new IoExecutor(8);
+
+        final var credentials = new HashMap<String, String>();
+        for (var i = 0; i < users; i++) {
+            credentials.put("user-" + i, "passwordHash-" + i);
+        }
+        credentialsRepository.saveCredentials(credentials);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        BenchmarkData.deleteRecursively(dataDir);
+    }
+
+    @Benchmark
+    public AuthService startUp() {
+        return new AuthService(walletRepository, credentialsRepository, walletLocks, ioExecutor,
+            new OffHeapWalletStore(DataSize.ofBytes(0), DataSize.ofBytes(0)), 1000, preload);
+    }
+}
@@ -0,0 +1,88 @@
+package com.mephi.skillfactory.oop.finance.manager.service.wallet;
+
+import com.mephi.skillfactory.oop.finance.manager.BenchmarkData;
+import com.mephi.skillfactory.oop.finance.manager.concurrent.IoExecutor;
+import com.mephi.skillfactory.oop.finance.manager.domain.Operation;
+import com.mephi.skillfactory.oop.finance.manager.domain.User;
+import com.mephi.skillfactory.oop.finance.manager.repository.FileBasedWalletRepository;
+import com.mephi.skillfactory.oop.finance.manager.repository.codec.WalletFileFormat;
+import com.mephi.skillfactory.oop.finance.manager.service.AlertService;
+import com.mephi.skillfactory.oop.finance.manager.service.auth.OffHeapWalletStore;
+import com.mephi.skillfactory.oop.finance.manager.service.wallet.exception.AmountException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Hot write path: a single expense added to a wallet that already holds `operations` operations
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WalletServiceBenchmark {
+    private static final String LOGIN = "benchmark";
+
+    @Param({"1000", "100000", "1000000"})
+    private int operations;
+
+    @Param({"10", "1000"})
+    private int categories;
+
+    private Path dataDir;
+    private List<Operation> baseOperations;
+    private WalletPersister walletPersister;
+    private WalletService walletService;
+    private User user;
+    private int nextCategory;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dataDir = BenchmarkData.createTempDir();
+        baseOperations = BenchmarkData.operations(LOGIN, operations, categories);
+        final var walletRepository = new FileBasedWalletRepository(dataDir.toString(), WalletFileFormat.JSON, DataSize.ofMegabytes(1));
+        final var walletLocks = new WalletLocks(64);
+        walletPersister = new WalletPersister(walletRepository, walletLocks, new IoExecutor(8),
+            new OffHeapWalletStore(DataSize.ofBytes(0), DataSize.ofBytes(0)), Duration.ofSeconds(2), 32);
+        walletService = new WalletService(null, walletRepository, new AlertService(), walletLocks, walletPersister,
+            new PeriodAggregator(200_000, 50_000));
+    }
+
+    // the wallet grows with every invocation, so it is rebuilt before each iteration to keep its size at `operations`
+    @Setup(Level.Iteration)
+    public void resetWallet() {
+        user = new User(LOGIN, "passwordHash");
+        user.setWallet(BenchmarkData.wallet(baseOperations));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        walletPersister.close();
+        BenchmarkData.deleteRecursively(dataDir);
+    }
+
+    @Benchmark
+    public double addExpense() throws AmountException {
+        nextCategory = (nextCategory + 1) % categories;
+        walletService.addExpense(user, 1, BenchmarkData.category(nextCategory), "benchmark");
+        return user.getWallet().getBalance();
+    }
+}
@@ -0,0 +1,110 @@
+package com.mephi.skillfactory.oop.finance.manager.service.wallet;
+
+import com.mephi.skillfactory.oop.finance.manager.BenchmarkData;
+import com.mephi.skillfactory.oop.finance.manager.concurrent.IoExecutor;
+import com.mephi.skillfactory.oop.finance.manager.domain.User;
+import com.mephi.skillfactory.oop.finance.manager.repository.FileBasedWalletRepository;
+import com.mephi.skillfactory.oop.finance.manager.repository.codec.WalletFileFormat;
+import com.mephi.skillfactory.oop.finance.manager.service.AlertService;
+import com.mephi.skillfactory.oop.finance.manager.service.auth.OffHeapWalletStore;
+import com.mephi.skillfactory.oop.finance.manager.service.wallet.exception.PeriodException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.mephi.skillfactory.oop.finance.manager.domain.enumeration.OperationType.EXPENSE;
+
+// Summary read path: per-category sums from the in-memory aggregates, and period reports scanning the operations
+// sequentially or split into chunks on the fork-join pool
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WalletSummaryBenchmark {
+    private static final String LOGIN = "benchmark";
+    private static final int CHUNK_SIZE = 50_000;
+
+    @Param({"1000", "100000", "1000000"})
+    private int operations;
+
+    @Param({"10", "1000"})
+    private int categories;
+
+    @Param({"sequential", "parallel"})
+    private String aggregation;
+
+    private Path dataDir;
+    private WalletPersister walletPersister;
+    private WalletService walletService;
+    private User user;
+
+    @Setup
+    public void setUp() throws IOException {
+        dataDir = BenchmarkData.createTempDir();
+        final var maxImportFileSize = DataSize.ofMegabytes(1);
+        final var walletRepository = new FileBasedWalletRepository(dataDir.toString(), WalletFileFormat.BINARY, maxImportFileSize);
+        final var walletLocks = new WalletLocks(64);
+        final var parallelThreshold = "parallel".equals(aggregation)
+            ? CHUNK_SIZE
+            : Integer.MAX_VALUE;
+        walletPersister = new WalletPersister(walletRepository, walletLocks, new IoExecutor(8),
+            new OffHeapWalletStore(DataSize.ofBytes(0), DataSize.ofBytes(0)), Duration.ofSeconds(2), 32);
+        walletService = new WalletService(null, walletRepository, new AlertService(), walletLocks, walletPersister,
+            new PeriodAggregator(parallelThreshold, CHUNK_SIZE));
+
+        user = new User(LOGIN, "passwordHash");
+        user.setWallet(BenchmarkData.wallet(BenchmarkData.operations(LOGIN, operations, categories)));
+        walletRepository.saveWallet(user);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        walletPersister.close();
+        BenchmarkData.deleteRecursively(dataDir);
+    }
+
+    @Benchmark
+    public Map<String, Double> expensesByCategory() {
+        return walletService.sumByOperationTypeAndCategory(user, EXPENSE, null);
+    }
+
+    @Benchmark
+    public Map<String, Double> expensesOfOneCategory() {
+        return walletService.sumByOperationTypeAndCategory(user, EXPENSE, BenchmarkData.category(0));
+    }
+
+    // every operation of the wallet was made today
+    @Benchmark
+    public PeriodSummary periodSummary() throws PeriodException {
+        final var today = LocalDate.now();
+        return walletService.summarizePeriod(user, today.minusDays(1), today, ZoneId.systemDefault());
+    }
+
+    @Benchmark
+    public List<PeriodBucket> dailyBuckets() throws PeriodException {
+        final var today = LocalDate.now();
+        return walletService.bucketPeriod(user, BucketSize.DAY, today.minusDays(6), today, ZoneId.systemDefault());
+    }
+}
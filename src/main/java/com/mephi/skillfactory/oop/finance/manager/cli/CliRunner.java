@@ -1,34 +1,50 @@
 package com.mephi.skillfactory.oop.finance.manager.cli;
 
 import com.mephi.skillfactory.oop.finance.manager.domain.User;
+import com.mephi.skillfactory.oop.finance.manager.domain.enumeration.BudgetPeriod;
 import com.mephi.skillfactory.oop.finance.manager.repository.exception.FileContentTypeMismatchException;
+import com.mephi.skillfactory.oop.finance.manager.repository.exception.WalletLoadException;
 import com.mephi.skillfactory.oop.finance.manager.service.auth.AuthService;
 import com.mephi.skillfactory.oop.finance.manager.service.auth.exception.IllegalCredentialsException;
 import com.mephi.skillfactory.oop.finance.manager.service.exception.UserNotFoundException;
+import com.mephi.skillfactory.oop.finance.manager.service.wallet.BucketSize;
+import com.mephi.skillfactory.oop.finance.manager.service.wallet.PeriodBucket;
+import com.mephi.skillfactory.oop.finance.manager.service.wallet.PeriodSummary;
 import com.mephi.skillfactory.oop.finance.manager.service.wallet.WalletService;
 import com.mephi.skillfactory.oop.finance.manager.service.wallet.exception.AmountException;
 import com.mephi.skillfactory.oop.finance.manager.service.wallet.exception.BudgetException;
 import com.mephi.skillfactory.oop.finance.manager.service.wallet.exception.CategoryNotFoundException;
+import com.mephi.skillfactory.oop.finance.manager.service.wallet.exception.PeriodException;
 import com.mephi.skillfactory.oop.finance.manager.service.wallet.exception.WalletImportSourceException;
 
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
-import java.util.Optional;
 import java.util.Scanner;
 
 import lombok.RequiredArgsConstructor;
 
-import static com.mephi.skillfactory.oop.finance.manager.domain.enumeration.OperationType.EXPENSE;
-import static com.mephi.skillfactory.oop.finance.manager.domain.enumeration.OperationType.INCOME;
-import static java.util.Objects.requireNonNullElse;
-
 @Component
 @RequiredArgsConstructor
 public class CliRunner implements CommandLineRunner {
     private final AuthService authService;
     private final WalletService walletService;
+    private final MeterRegistry meterRegistry;
 
     @Override
     public void run(String... args) {
@@ -39,7 +55,7 @@ public class CliRunner implements CommandLineRunner {
         Runtime.getRuntime()
             .addShutdownHook(new Thread(() -> {
                 System.out.println("Завершение работы");
-                authService.getAllUsers().values().forEach(walletService::saveUserWallet);
+                walletService.flush();
             }));
 
         whileOuter:
@@ -85,6 +101,20 @@ public class CliRunner implements CommandLineRunner {
                             System.out.printf("Не удалось зарегистрировать пользователя: %s%n", e.getMessage());
                         }
                         break;
+                    case "register-all":
+                        if (parts.length < 2) {
+                            System.out.println("Использование: register-all <path/to/users.txt>");
+                            break;
+                        }
+
+                        try {
+                            final var passwords = readPasswords(Path.of(join(parts, 1)));
+                            authService.registerAll(passwords);
+                            System.out.printf("Зарегистрировано пользователей: %d%n", passwords.size());
+                        } catch (IOException | IllegalArgumentException | IllegalCredentialsException e) {
+                            System.out.printf("Не удалось зарегистрировать пользователей: %s%n", e.getMessage());
+                        }
+                        break;
                     case "login":
                         if (parts.length != 3) {
                             System.out.println("Использование: login <login> <password>");
@@ -93,13 +123,13 @@ public class CliRunner implements CommandLineRunner {
                         try {
                             currentUser = authService.login(parts[1], parts[2]);
                             System.out.printf("Авторизация с логином %s успешно пройдена%n", currentUser.getLogin());
-                        } catch (IllegalCredentialsException | UserNotFoundException e) {
+                        } catch (IllegalCredentialsException | UserNotFoundException | WalletLoadException e) {
                             System.out.printf("Не удалось провести аутентификацию: %s%n".formatted(e.getMessage()));
                         }
                         break;
                     case "logout":
                         if (isUserLoggedIn(currentUser)) {
-                            walletService.saveUserWallet(currentUser);
+                            walletService.flush(currentUser);
                             final var login = currentUser.getLogin();
                             currentUser = null;
                             System.out.printf("Осуществлен выход из аккаунта %s%n", login);
@@ -174,17 +204,28 @@ public class CliRunner implements CommandLineRunner {
                             System.out.println("Для установки бюджета необходимо авторизоваться");
                             break;
                         }
-                        if (parts.length != 3) {
-                            System.out.println("Использование: set-budget <category> <amount>");
+                        if (parts.length < 3 || parts.length > 4) {
+                            System.out.println("Использование: set-budget <category> <amount> [all|week|month|<N>d]");
                             break;
                         }
 
                         final var budgetCategory = parts[1];
                         final var budgetAmount = Double.parseDouble(parts[2]);
+                        final var budgetPeriod = parts.length > 3
+                            ? parts[3].toLowerCase()
+                            : "all";
 
                         try {
-                            walletService.setBudget(currentUser, budgetCategory, budgetAmount);
+                            switch (budgetPeriod) {
+                                case "all" -> walletService.setBudget(currentUser, budgetCategory, budgetAmount);
+                                case "week" -> walletService.setBudget(currentUser, budgetCategory, budgetAmount, BudgetPeriod.WEEK, 0);
+                                case "month" -> walletService.setBudget(currentUser, budgetCategory, budgetAmount, BudgetPeriod.MONTH, 0);
+                                default -> walletService.setBudget(currentUser, budgetCategory, budgetAmount, BudgetPeriod.ROLLING,
+                                    parseRollingDays(budgetPeriod));
+                            }
                             System.out.println("Бюджет установлен");
+                        } catch (NumberFormatException e) {
+                            System.out.println("Неизвестный период бюджета. Допустимые значения: all, week, month, <N>d");
                         } catch (BudgetException e) {
                             System.out.printf("Бюджет не установлен: %s%n", e.getMessage());
                         }
@@ -268,7 +309,7 @@ public class CliRunner implements CommandLineRunner {
                         try {
                             walletService.transfer(currentUser.getLogin(), transferTo, transferAmount, transferCategory, transferDescription);
                             System.out.println("Перевод осуществлен");
-                        } catch (AmountException | UserNotFoundException e) {
+                        } catch (AmountException | UserNotFoundException | WalletLoadException e) {
                             System.out.printf("Не удалось осуществить перевод: %s%n", e.getMessage());
                         }
                         break;
@@ -292,6 +333,53 @@ public class CliRunner implements CommandLineRunner {
 
                         printCategoriesSummary(parts, currentUser);
                         break;
+                    case "period-summary":
+                        if (isUserNotLoggedIn(currentUser)) {
+                            System.out.println("Для получения статистики за период необходимо авторизоваться");
+                            break;
+                        }
+                        if (parts.length < 2 || parts.length > 3) {
+                            System.out.println("Использование: period-summary <from yyyy-MM-dd> [to yyyy-MM-dd]");
+                            break;
+                        }
+
+                        try {
+                            final var periodFrom = LocalDate.parse(parts[1]);
+                            final var periodTo = parts.length > 2
+                                ? LocalDate.parse(parts[2])
+                                : LocalDate.now();
+                            printPeriodSummary(walletService.summarizePeriod(currentUser, periodFrom, periodTo, ZoneId.systemDefault()));
+                        } catch (DateTimeParseException e) {
+                            System.out.printf("Неверный формат даты: %s. Ожидается yyyy-MM-dd%n", e.getParsedString());
+                        } catch (PeriodException e) {
+                            System.out.printf("Не удалось получить статистику: %s%n", e.getMessage());
+                        }
+                        break;
+                    case "period-report":
+                        if (isUserNotLoggedIn(currentUser)) {
+                            System.out.println("Для получения отчета за период необходимо авторизоваться");
+                            break;
+                        }
+                        if (parts.length < 3 || parts.length > 4) {
+                            System.out.println("Использование: period-report <day|week|month> <from yyyy-MM-dd> [to yyyy-MM-dd]");
+                            break;
+                        }
+
+                        try {
+                            final var bucketSize = BucketSize.valueOf(parts[1].toUpperCase());
+                            final var reportFrom = LocalDate.parse(parts[2]);
+                            final var reportTo = parts.length > 3
+                                ? LocalDate.parse(parts[3])
+                                : LocalDate.now();
+                            printPeriodReport(walletService.bucketPeriod(currentUser, bucketSize, reportFrom, reportTo, ZoneId.systemDefault()));
+                        } catch (IllegalArgumentException e) {
+                            System.out.println("Неизвестный период группировки. Допустимые значения: day, week, month");
+                        } catch (DateTimeParseException e) {
+                            System.out.printf("Неверный формат даты: %s. Ожидается yyyy-MM-dd%n", e.getParsedString());
+                        } catch (PeriodException e) {
+                            System.out.printf("Не удалось получить отчет: %s%n", e.getMessage());
+                        }
+                        break;
                     case "export":
                         if (isUserNotLoggedIn(currentUser)) {
                             System.out.println("Для экспорта данных необходимо авторизоваться");
@@ -299,7 +387,7 @@ public class CliRunner implements CommandLineRunner {
                         }
 
                         walletService.saveUserWallet(currentUser);
-                        System.out.println("Кошелек сохранен по пути 'data/" + currentUser.getLogin() + ".json'");
+                        System.out.printf("Кошелек сохранен по пути '%s'%n", walletService.walletFile(currentUser));
                         break;
                     case "import":
                         if (isUserNotLoggedIn(currentUser)) {
@@ -342,8 +430,14 @@ public class CliRunner implements CommandLineRunner {
                             System.out.printf("Ошибка во время импорта кошелька: %s%n", e.getMessage());
                         }
                         break;
+                    case "metrics":
+                        printMetrics();
+                        break;
+                    case "flush":
+                        System.out.printf("Сохранено кошельков: %d%n", walletService.flush());
+                        break;
                     case "exit":
-                        authService.getAllUsers().values().forEach(walletService::saveUserWallet);
+                        walletService.flush();
                         System.out.println("Выход из приложения осуществлен");
                         break whileOuter;
                     default:
@@ -370,22 +464,75 @@ public class CliRunner implements CommandLineRunner {
             .println("""
                 Доступные команды:
                   register <login> <password>                           - регистрация
+                  register-all <path/to/users.txt>                      - регистрация всех пользователей из файла, по строке '<login> <password>' на пользователя
                   login <login> <password>                              - авторизация
                   logout                                                - выход из аккаунта
                   add-income <amount> <category> [description]          - добавление дохода
                   add-expense <amount> <category> [description]         - добавление расхода
                   edit-category <old-category-name> <new-category-name> - изменение названия категории
-                  set-budget <category> <amount>                        - установление бюджета для категории
+                  set-budget <category> <amount> [all|week|month|<N>d]  - установление бюджета для категории: за все время (по умолчанию),
+                                                                          на неделю, на месяц или на последние N дней
                   edit-budget <category>                                - изменение бюджета для категории: удаление бюджета или изменение суммы
                   transfer <toLogin> <amount> [category] [description]  - перевод
                   summary                                               - сводная статистика по кошельку
                   summary-by-categories <category1 ... categoryN>       - сводная статистика по категории/категориям
-                  export                                                - сохранение кошелька в файл 'data/<login>.json'
-                  import <path/to/wallet-file.json>                     - импорт кошелька из json-файла в 'data/<login>.json' (кошелек будет присвоен текущему пользователю)
+                  period-summary <from> [to]                            - доходы и расходы по категориям за период (даты yyyy-MM-dd, по умолчанию до сегодня)
+                  period-report <day|week|month> <from> [to]            - доходы и расходы за период по дням, неделям или месяцам
+                  export                                                - сохранение кошелька в файл 'data/<login>.<json|bin>'
+                  import <path/to/wallet-file.json>                     - импорт кошелька из json-файла в 'data/<login>.<json|bin>' (кошелек будет присвоен текущему пользователю)
+                  metrics                                               - метрики времени и объема операций с данными
+                  flush                                                 - немедленное сохранение всех измененных кошельков
                   exit                                                  - выход
                 """);
     }
 
+    private void printPeriodSummary(PeriodSummary summary) {
+        System.out.printf("Период с %s по %s%n", summary.from(), summary.to());
+
+        System.out.printf("%nДоходы за период: %.2f%n", summary.income());
+        summary.incomeByCategory().forEach((k, v) -> System.out.printf("  %s: %.2f%n", k, v));
+
+        System.out.printf("%nРасходы за период: %.2f%n", summary.expense());
+        summary.expenseByCategory().forEach((k, v) -> System.out.printf("  %s: %.2f%n", k, v));
+    }
+
+    private void printPeriodReport(List<PeriodBucket> buckets) {
+        System.out.printf("%-25s %15s %15s%n", "Период", "Доходы", "Расходы");
+        buckets.forEach(bucket -> {
+            final var period = bucket.from().equals(bucket.to())
+                ? bucket.from().toString()
+                : bucket.from() + " - " + bucket.to();
+            System.out.printf("%-25s %15.2f %15.2f%n", period, bucket.income(), bucket.expense());
+        });
+    }
+
+    private void printMetrics() {
+        final var meters = meterRegistry.getMeters().stream()
+            .sorted(Comparator.comparing((Meter meter) -> meter.getId().getName())
+                .thenComparing(meter -> meter.getId().getTags().toString()))
+            .toList();
+        if (meters.isEmpty()) {
+            System.out.println("Метрики еще не собраны");
+            return;
+        }
+
+        meters.forEach(meter -> {
+            final var id = meter.getId();
+            final var tags = id.getTags().isEmpty()
+                ? ""
+                : id.getTags().stream()
+                    .map(tag -> tag.getKey() + "=" + tag.getValue())
+                    .toList()
+                    .toString();
+            final var baseUnit = id.getBaseUnit() == null
+                ? ""
+                : ", " + id.getBaseUnit();
+            System.out.printf("%s%s%s%n", id.getName(), tags, baseUnit);
+            meter.measure().forEach(measurement ->
+                System.out.printf("  %s: %.6f%n", measurement.getStatistic().getTagValueRepresentation(), measurement.getValue()));
+        });
+    }
+
     private boolean isUserLoggedIn(User user) {
         return user != null;
     }
@@ -394,6 +541,32 @@ public class CliRunner implements CommandLineRunner {
         return !isUserLoggedIn(user);
     }
 
+    // '30d' -> 30
+    private static int parseRollingDays(String period) {
+        if (!period.endsWith("d")) {
+            throw new NumberFormatException(period);
+        }
+        return Integer.parseInt(period.substring(0, period.length() - 1));
+    }
+
+    // one '<login> <password>' per line, blank lines are skipped
+    private static Map<String, String> readPasswords(Path path) throws IOException {
+        final var passwords = new LinkedHashMap<String, String>();
+        for (final var line : Files.readAllLines(path)) {
+            if (line.isBlank()) {
+                continue;
+            }
+            final var parts = line.trim().split("\\s+");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Ожидается '<login> <password>', получено: " + line);
+            }
+            if (passwords.putIfAbsent(parts[0], parts[1]) != null) {
+                throw new IllegalArgumentException("Логин %s указан в файле несколько раз".formatted(parts[0]));
+            }
+        }
+        return passwords;
+    }
+
     private String join(String[] parts, int from) {
         final var sb = new StringBuilder();
         for (int i = from; i < parts.length; i++) {
@@ -406,61 +579,45 @@ public class CliRunner implements CommandLineRunner {
     }
 
     private void printSummary(User user) {
-        System.out.printf("В общем на счету: %.2f%n", user.getWallet().getBalance());
+        final var summary = walletService.summarize(user);
+        System.out.printf("В общем на счету: %.2f%n", summary.balance());
 
-        final var incomes = walletService.totalIncome(user);
-        System.out.printf("%nДоходы за все время: %.2f%n", incomes);
-        final var incomeByCategoryMap = walletService.sumByOperationTypeAndCategory(user.getWallet().getOperations(), INCOME, null);
-        if (!incomeByCategoryMap.isEmpty()) {
+        System.out.printf("%nДоходы за все время: %.2f%n", summary.totalIncome());
+        if (!summary.incomeByCategory().isEmpty()) {
             System.out.println("Доходы по категориям:");
-            incomeByCategoryMap.forEach((k, v) -> System.out.printf("  %s: %.2f%n", k, v));
+            summary.incomeByCategory().forEach((k, v) -> System.out.printf("  %s: %.2f%n", k, v));
         }
 
-        final var expenses = walletService.totalExpense(user);
-        System.out.printf("%nРасходы за все время: %.2f%n", expenses);
-        final var expenseByCategoryMap = walletService.sumByOperationTypeAndCategory(user.getWallet().getOperations(), EXPENSE, null);
-        if (!expenseByCategoryMap.isEmpty()) {
+        System.out.printf("%nРасходы за все время: %.2f%n", summary.totalExpense());
+        if (!summary.expenseByCategory().isEmpty()) {
             System.out.println("Расходы по категориям:");
-            expenseByCategoryMap.forEach((k, v) -> System.out.printf("  %s: %.2f%n", k, v));
+            summary.expenseByCategory().forEach((k, v) -> System.out.printf("  %s: %.2f%n", k, v));
         }
 
-        final var budgets = user.getWallet().getBudgets();
-        if (!budgets.isEmpty()) {
+        if (!summary.budgets().isEmpty()) {
             System.out.printf("%nБюджет по категориям:%n");
-            budgets.forEach((k, v) -> {
-                final var spent = walletService.sumByOperationTypeAndCategory(user.getWallet().getOperations(), EXPENSE, null)
-                    .getOrDefault(k, 0.0);
-                final var remaining = v.getLimit() - spent;
-                System.out.printf("  %s: %.2f, Оставшийся бюджет: %.2f%n", k, v.getLimit(), remaining);
-            });
+            summary.budgets().forEach(budget ->
+                System.out.printf("  %s: %.2f %s, Оставшийся бюджет: %.2f%n", budget.category(), budget.limit(),
+                    budget.period().describe(budget.rollingDays()), budget.remaining()));
         }
     }
 
     private void printCategoriesSummary(String[] parts, User user) {
-        final var operations = user.getWallet().getOperations();
-        final var budgets = user.getWallet().getBudgets();
-
-        for (var i = 1; i < parts.length; i++) {
-            final var category = parts[i];
-            final var categoryIncomes = walletService.sumByOperationTypeAndCategory(operations, INCOME, category);
-            final var categoryExpenses = walletService.sumByOperationTypeAndCategory(operations, EXPENSE, category);
-            final var categoryBudgetOptional = Optional.ofNullable(budgets.get(category));
+        final var categories = Arrays.asList(parts).subList(1, parts.length);
 
-            if (categoryIncomes.isEmpty() && categoryExpenses.isEmpty() && categoryBudgetOptional.isEmpty()) {
-                System.out.printf("Данных по категории %s не найдено%n", category);
+        for (final var summary : walletService.summarizeCategories(user, categories)) {
+            if (summary.isEmpty()) {
+                System.out.printf("Данных по категории %s не найдено%n", summary.category());
             } else {
-                System.out.printf("Данные по категории %s:%n", category);
-                final var incomes = requireNonNullElse(categoryIncomes.get(category), 0.0);
-                System.out.printf("  Доходы: %.2f%n", incomes);
-                final var expenses = requireNonNullElse(categoryExpenses.get(category), 0.0);
-                System.out.printf("  Расходы: %.2f%n", expenses);
-
-                categoryBudgetOptional.ifPresent(budget -> {
-                    final var spent = walletService.sumByOperationTypeAndCategory(user.getWallet().getOperations(), EXPENSE, category)
-                        .getOrDefault(category, 0.0);
-                    final var remaining = budget.getLimit() - spent;
-                    System.out.printf("  Бюджет: %.2f, Оставшийся бюджет: %.2f%n", budget.getLimit(), remaining);
-                });
+                System.out.printf("Данные по категории %s:%n", summary.category());
+                System.out.printf("  Доходы: %.2f%n", summary.income());
+                System.out.printf("  Расходы: %.2f%n", summary.expense());
+
+                final var budget = summary.budget();
+                if (budget != null) {
+                    System.out.printf("  Бюджет: %.2f %s, Оставшийся бюджет: %.2f%n", budget.limit(), budget.period().describe(budget.rollingDays()),
+                        budget.remaining());
+                }
             }
         }
     }
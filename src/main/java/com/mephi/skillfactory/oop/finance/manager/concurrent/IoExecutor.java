@@ -0,0 +1,63 @@
+package com.mephi.skillfactory.oop.finance.manager.concurrent;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+// Runs blocking file work for many wallets at once: one virtual thread per item, at most app.concurrency.io-parallelism
+// of them doing I/O at the same time
+@Component
+public class IoExecutor {
+    private final int parallelism;
+
+    public IoExecutor(@Value("${app.concurrency.io-parallelism}") int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    // returns once the action has finished for every item; the first failure is rethrown after all of them are done
+    public <T> void forEach(Collection<? extends T> items, Consumer<? super T> action) {
+        if (items.size() <= 1 || parallelism == 1) {
+            items.forEach(action);
+            return;
+        }
+
+        final var permits = new Semaphore(parallelism);
+        final var futures = new ArrayList<Future<?>>(items.size());
+        try (final var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (final var item : items) {
+                permits.acquireUninterruptibly();
+                futures.add(executor.submit(() -> {
+                    try {
+                        action.accept(item);
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+        }
+
+        for (final var future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException runtimeException) {
+                    throw runtimeException;
+                }
+                if (e.getCause() instanceof Error error) {
+                    throw error;
+                }
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+    }
+}
@@ -1,20 +1,55 @@
 package com.mephi.skillfactory.oop.finance.manager.domain;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.mephi.skillfactory.oop.finance.manager.domain.enumeration.BudgetPeriod;
 
+import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.Setter;
 
 @Getter
 @Setter
+@EqualsAndHashCode
 public class Budget {
+    // the longest rolling window: daily spend older than that is only kept rolled up into months
+    public static final int MAX_ROLLING_DAYS = 366;
+
     private String category;
-    private double limit;
+    // the JSON form keeps the limit in major units, see getLimit
+    @JsonIgnore
+    private long limitMinor;
+    private BudgetPeriod period;
+    private int rollingDays; // window length of a ROLLING budget, ignored by the other periods
+
+    public Budget(String category, double limit) {
+        this(category, limit, BudgetPeriod.ALL_TIME, 0);
+    }
 
+    // budgets stored before periods were introduced are all-time ones
     @JsonCreator
-    public Budget(@JsonProperty("category") String category, @JsonProperty("limit") double limit) {
+    public Budget(@JsonProperty("category") String category, @JsonProperty("limit") double limit,
+                  @JsonProperty("period") BudgetPeriod period, @JsonProperty("rollingDays") int rollingDays) {
         this.category = category;
-        this.limit = limit;
+        this.limitMinor = Money.toMinor(limit);
+        this.period = period == null
+            ? BudgetPeriod.ALL_TIME
+            : period;
+        this.rollingDays = rollingDays;
+    }
+
+    public Budget copy() {
+        final var copy = new Budget(category, 0, period, rollingDays);
+        copy.limitMinor = limitMinor;
+        return copy;
+    }
+
+    public double getLimit() {
+        return Money.toMajor(limitMinor);
+    }
+
+    public void setLimit(double limit) {
+        this.limitMinor = Money.toMinor(limit);
     }
 }
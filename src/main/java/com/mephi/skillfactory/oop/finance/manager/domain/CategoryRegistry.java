@@ -0,0 +1,112 @@
+package com.mephi.skillfactory.oop.finance.manager.domain;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Category names of one wallet, each interned once as a Category with a compact id. The wallet's operations point to these
+// entries, so renaming a category changes one entry instead of every operation, and per-category figures are arrays
+// indexed by id. A category renamed to a name that is already taken is merged: its entry forwards to the existing one.
+public final class CategoryRegistry {
+    private final List<Category> byId = new ArrayList<>();
+    private final Map<String, Category> byName = new HashMap<>();
+
+    Category intern(String name) {
+        final var category = byName.get(name);
+        if (category != null) {
+            return category;
+        }
+
+        final var interned = new Category(byId.size(), name);
+        byId.add(interned);
+        byName.put(name, interned);
+        return interned;
+    }
+
+    // null if no operation has the category
+    Category find(String name) {
+        return byName.get(name);
+    }
+
+    // an upper bound of the ids handed out, merged entries keep theirs
+    int size() {
+        return byId.size();
+    }
+
+    Category byId(int id) {
+        return byId.get(id);
+    }
+
+    void rename(Category category, String newName) {
+        final var current = category.resolve();
+        if (current.name.equals(newName)) {
+            return;
+        }
+
+        byName.remove(current.name);
+        final var existing = byName.get(newName);
+        if (existing == null) {
+            current.name = newName;
+            byName.put(newName, current);
+        } else {
+            current.mergedInto = existing;
+            existing.operations += current.operations;
+        }
+    }
+
+    void clear() {
+        byId.clear();
+        byName.clear();
+    }
+
+    public static final class Category {
+        private final int id;
+        private String name;
+        private Category mergedInto;
+        private int operations;
+
+        private Category(int id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        // an operation's own category before it is added to a wallet, null for no category
+        static Category unbound(String name) {
+            return name == null
+                ? null
+                : new Category(-1, name);
+        }
+
+        public int id() {
+            return resolve().id;
+        }
+
+        public String name() {
+            return resolve().name;
+        }
+
+        int operations() {
+            return resolve().operations;
+        }
+
+        void countOperation() {
+            resolve().operations++;
+        }
+
+        void countOperations(int count) {
+            resolve().operations += count;
+        }
+
+        Category resolve() {
+            var category = this;
+            while (category.mergedInto != null) {
+                category = category.mergedInto;
+            }
+            if (mergedInto != null && mergedInto != category) {
+                mergedInto = category;
+            }
+            return category;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.mephi.skillfactory.oop.finance.manager.domain;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+// Sums per category of one wallet in minor units, indexed by the category id of the wallet's registry: counting an
+// operation is an array update, with no hashing, boxing or allocation.
+public final class CategorySums {
+    private final CategoryRegistry registry;
+    private long[] sums = new long[0];
+    private boolean[] counted = new boolean[0];
+
+    CategorySums(CategoryRegistry registry) {
+        this.registry = registry;
+    }
+
+    public void add(CategoryRegistry.Category category, long minor) {
+        add(category.id(), minor);
+    }
+
+    // adds up sums of the same wallet, e.g. partial sums of chunks of its operations
+    public void addAll(CategorySums other) {
+        for (var id = 0; id < other.sums.length; id++) {
+            if (other.counted[id]) {
+                add(id, other.sums[id]);
+            }
+        }
+    }
+
+    public long get(String category) {
+        final var id = idOf(category);
+        return id < 0
+            ? 0
+            : sums[id];
+    }
+
+    public long get(CategoryRegistry.Category category) {
+        final var id = category.id();
+        return id < sums.length
+            ? sums[id]
+            : 0;
+    }
+
+    public boolean contains(String category) {
+        final var id = idOf(category);
+        return id >= 0 && counted[id];
+    }
+
+    boolean contains(CategoryRegistry.Category category) {
+        final var id = category.id();
+        return id < counted.length && counted[id];
+    }
+
+    // a copy in major units for reports
+    public Map<String, Double> toMajor() {
+        final var result = new HashMap<String, Double>();
+        for (var id = 0; id < sums.length; id++) {
+            if (counted[id]) {
+                result.put(registry.byId(id).name(), Money.toMajor(sums[id]));
+            }
+        }
+        return result;
+    }
+
+    void collectCategories(Set<String> categories) {
+        for (var id = 0; id < sums.length; id++) {
+            if (counted[id]) {
+                categories.add(registry.byId(id).name());
+            }
+        }
+    }
+
+    // for a category about to be merged into another one
+    void move(CategoryRegistry.Category from, CategoryRegistry.Category to) {
+        final var fromId = from.id();
+        if (fromId < sums.length && counted[fromId]) {
+            add(to, sums[fromId]);
+            sums[fromId] = 0;
+            counted[fromId] = false;
+        }
+    }
+
+    void clear() {
+        Arrays.fill(sums, 0);
+        Arrays.fill(counted, false);
+    }
+
+    private void add(int id, long minor) {
+        if (id >= sums.length) {
+            final var capacity = Math.max(id + 1, sums.length * 2);
+            sums = Arrays.copyOf(sums, capacity);
+            counted = Arrays.copyOf(counted, capacity);
+        }
+        sums[id] += minor;
+        counted[id] = true;
+    }
+
+    private int idOf(String category) {
+        final var entry = registry.find(category);
+        if (entry == null) {
+            return -1;
+        }
+        final var id = entry.id();
+        return id < sums.length
+            ? id
+            : -1;
+    }
+}
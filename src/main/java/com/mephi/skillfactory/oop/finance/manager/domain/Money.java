@@ -0,0 +1,41 @@
+package com.mephi.skillfactory.oop.finance.manager.domain;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+// Money is held as a long number of minor units (kopecks), so sums over any history stay exact. Doubles are left only
+// at the edges - user input, JSON files and printed figures - and are converted here.
+public final class Money {
+    public static final int SCALE = 2;
+    public static final long MINOR_UNITS = 100;
+    // the largest amount whose minor units a double still holds exactly
+    public static final double MAX_AMOUNT = (double) (1L << 53) / MINOR_UNITS;
+
+    private static final double ROUNDING_TOLERANCE = 1e-6;
+
+    private Money() {
+    }
+
+    public static boolean isRepresentable(double amount) {
+        return Double.isFinite(amount) && Math.abs(amount) <= MAX_AMOUNT;
+    }
+
+    // rounds half up the decimal the double is written as, e.g. 1.005 gives 101
+    public static long toMinor(double amount) {
+        if (!isRepresentable(amount)) {
+            throw new ArithmeticException("Сумма вне допустимого диапазона: " + amount);
+        }
+
+        // an amount with at most SCALE decimals lands next to a whole number of minor units
+        final var scaled = amount * MINOR_UNITS;
+        final var rounded = Math.round(scaled);
+        if (Math.abs(scaled - rounded) < ROUNDING_TOLERANCE) {
+            return rounded;
+        }
+        return BigDecimal.valueOf(amount).setScale(SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    public static double toMajor(long minor) {
+        return (double) minor / MINOR_UNITS;
+    }
+}
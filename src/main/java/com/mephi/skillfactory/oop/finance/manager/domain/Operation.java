@@ -1,22 +1,34 @@
 package com.mephi.skillfactory.oop.finance.manager.domain;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.mephi.skillfactory.oop.finance.manager.domain.enumeration.OperationType;
 
 import java.time.Instant;
 import java.util.UUID;
 
+import lombok.AccessLevel;
+import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.Setter;
 
+// equal by value: a wallet hands out copies of its operations, see OperationLog
 @Getter
 @Setter
+@EqualsAndHashCode
 public class Operation {
     private UUID id;
     private OperationType type;
-    private double amount;
-    private String category;
+    // the JSON form keeps the amount in major units, see getAmount
+    @JsonIgnore
+    private long amountMinor;
+    // interned in the registry of the wallet the operation is added to, null for an operation without a category
+    @JsonIgnore
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    private CategoryRegistry.Category categoryEntry;
     private String description;
     private Instant timestamp;
     private String fromUser;
@@ -25,25 +37,62 @@ public class Operation {
     public Operation(OperationType type, double amount, String category, String description, String fromUser, String toUser) {
         this.id = UUID.randomUUID();
         this.type = type;
-        this.amount = amount;
-        this.category = category;
+        this.amountMinor = Money.toMinor(amount);
+        this.categoryEntry = CategoryRegistry.Category.unbound(category);
         this.description = description;
         this.timestamp = Instant.now();
         this.fromUser = fromUser;
         this.toUser = toUser;
     }
 
+    public Operation(UUID id, OperationType type, double amount, String category, String description, String fromUser, String toUser) {
+        this(id, type, amount, category, description, null, fromUser, toUser);
+    }
+
+    // a stored operation keeps its timestamp, only one written without it gets the current time
     @JsonCreator
     public Operation(@JsonProperty("id") UUID id, @JsonProperty("type") OperationType type, @JsonProperty("amount") double amount,
                      @JsonProperty("category") String category, @JsonProperty("description") String description,
-                     @JsonProperty("fromUser") String fromUser, @JsonProperty("toUser") String toUser) {
+                     @JsonProperty("timestamp") Instant timestamp, @JsonProperty("fromUser") String fromUser,
+                     @JsonProperty("toUser") String toUser) {
         this.id = id;
         this.type = type;
-        this.amount = amount;
-        this.category = category;
+        this.amountMinor = Money.toMinor(amount);
+        this.categoryEntry = CategoryRegistry.Category.unbound(category);
         this.description = description;
-        this.timestamp = Instant.now();
+        this.timestamp = timestamp == null
+            ? Instant.now()
+            : timestamp;
         this.fromUser = fromUser;
         this.toUser = toUser;
     }
+
+    public double getAmount() {
+        return Money.toMajor(amountMinor);
+    }
+
+    public void setAmount(double amount) {
+        this.amountMinor = Money.toMinor(amount);
+    }
+
+    @EqualsAndHashCode.Include
+    public String getCategory() {
+        return categoryEntry == null
+            ? null
+            : categoryEntry.name();
+    }
+
+    // a wallet holding the operation counts it under the new category only after recalculating its aggregates,
+    // renames go through Wallet.renameCategory
+    public void setCategory(String category) {
+        this.categoryEntry = CategoryRegistry.Category.unbound(category);
+    }
+
+    CategoryRegistry.Category getCategoryEntry() {
+        return categoryEntry;
+    }
+
+    void bindCategory(CategoryRegistry.Category categoryEntry) {
+        this.categoryEntry = categoryEntry;
+    }
 }
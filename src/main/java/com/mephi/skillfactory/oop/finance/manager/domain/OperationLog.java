@@ -0,0 +1,309 @@
+package com.mephi.skillfactory.oop.finance.manager.domain;
+
+import com.mephi.skillfactory.oop.finance.manager.domain.enumeration.OperationType;
+
+import java.time.Instant;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.UUID;
+
+import static com.mephi.skillfactory.oop.finance.manager.domain.Wallet.WITHOUT_CATEGORY;
+
+// Operations of a wallet as parallel primitive arrays, one row per operation, instead of an object graph per operation:
+// a row takes about 60 bytes plus its description. Categories are ids of the wallet's registry, counterparty logins are
+// interned once per log. get() materializes a detached Operation copy of a row; scans go through a Cursor, a flyweight
+// moved from row to row that allocates nothing per operation. Rows are only appended through the owning wallet.
+public final class OperationLog extends AbstractList<Operation> implements RandomAccess {
+    private static final int NULL_REF = -1;
+    private static final byte NULL_TYPE = -1;
+    private static final long NULL_TIMESTAMP = Long.MIN_VALUE;
+    private static final int INITIAL_CAPACITY = 16;
+    private static final OperationType[] OPERATION_TYPES = OperationType.values();
+
+    private final CategoryRegistry categories;
+    // the entry rows without a category are counted under, interned up front so that reads never add to the registry
+    private CategoryRegistry.Category withoutCategory;
+    private final List<String> logins = new ArrayList<>();
+    private final Map<String, Integer> loginRefs = new HashMap<>();
+
+    private int size;
+    private long[] idsHigh = new long[0];
+    private long[] idsLow = new long[0];
+    private byte[] types = new byte[0];
+    private long[] amounts = new long[0];
+    private int[] categoryIds = new int[0];
+    private long[] epochSeconds = new long[0];
+    private int[] nanos = new int[0];
+    private int[] fromUsers = new int[0];
+    private int[] toUsers = new int[0];
+    private String[] descriptions = new String[0];
+
+    OperationLog(CategoryRegistry categories) {
+        this.categories = categories;
+        this.withoutCategory = categories.intern(WITHOUT_CATEGORY);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Operation get(int row) {
+        Objects.checkIndex(row, size);
+        final var timestamp = timestamp(row);
+        final var operation = new Operation(id(row), type(row), 0, null, descriptions[row], timestamp, login(fromUsers[row]),
+            login(toUsers[row]));
+        operation.setAmountMinor(amounts[row]);
+        operation.setTimestamp(timestamp);
+        if (categoryIds[row] != NULL_REF) {
+            operation.bindCategory(categories.byId(categoryIds[row]));
+        }
+        return operation;
+    }
+
+    // a cursor over all rows in the order they were added
+    public Cursor cursor() {
+        return new Cursor(null, 0, size);
+    }
+
+    // every category name and counterparty login the rows may refer to (a superset), collected without visiting the rows
+    public Set<String> names() {
+        final var names = new LinkedHashSet<String>();
+        for (var id = 0; id < categories.size(); id++) {
+            names.add(categories.byId(id).name());
+        }
+        names.addAll(logins);
+        return names;
+    }
+
+    // returns the row of the new operation
+    int append(Operation operation) {
+        if (size == types.length) {
+            grow();
+        }
+
+        final var row = size;
+        final var id = operation.getId();
+        idsHigh[row] = id == null
+            ? 0
+            : id.getMostSignificantBits();
+        idsLow[row] = id == null
+            ? 0
+            : id.getLeastSignificantBits();
+        types[row] = operation.getType() == null
+            ? NULL_TYPE
+            : (byte) operation.getType().ordinal();
+        amounts[row] = operation.getAmountMinor();
+        categoryIds[row] = operation.getCategory() == null
+            ? NULL_REF
+            : categories.intern(operation.getCategory()).id();
+        final var timestamp = operation.getTimestamp();
+        epochSeconds[row] = timestamp == null
+            ? NULL_TIMESTAMP
+            : timestamp.getEpochSecond();
+        nanos[row] = timestamp == null
+            ? 0
+            : timestamp.getNano();
+        fromUsers[row] = loginRef(operation.getFromUser());
+        toUsers[row] = loginRef(operation.getToUser());
+        // empty descriptions are common, they share one instance
+        descriptions[row] = operation.getDescription() == null || !operation.getDescription().isEmpty()
+            ? operation.getDescription()
+            : "";
+        size++;
+        modCount++;
+        return row;
+    }
+
+    // Rows without a category are moved to the entry WITHOUT_CATEGORY was renamed to, rows added later without a category
+    // get a fresh WITHOUT_CATEGORY entry
+    void assignMissingCategory() {
+        final var renamed = withoutCategory.resolve();
+        for (var row = 0; row < size; row++) {
+            if (categoryIds[row] == NULL_REF) {
+                categoryIds[row] = renamed.id();
+            }
+        }
+        withoutCategory = categories.intern(WITHOUT_CATEGORY);
+    }
+
+    // empties the log together with the category registry it shares with the wallet
+    void reset() {
+        Arrays.fill(descriptions, 0, size, null);
+        size = 0;
+        logins.clear();
+        loginRefs.clear();
+        categories.clear();
+        withoutCategory = categories.intern(WITHOUT_CATEGORY);
+        modCount++;
+    }
+
+    UUID id(int row) {
+        return idsHigh[row] == 0 && idsLow[row] == 0
+            ? null
+            : new UUID(idsHigh[row], idsLow[row]);
+    }
+
+    OperationType type(int row) {
+        return types[row] == NULL_TYPE
+            ? null
+            : OPERATION_TYPES[types[row]];
+    }
+
+    long amountMinor(int row) {
+        return amounts[row];
+    }
+
+    // the entry the row is counted under, WITHOUT_CATEGORY for an operation without a category
+    CategoryRegistry.Category category(int row) {
+        return categoryIds[row] == NULL_REF
+            ? withoutCategory.resolve()
+            : categories.byId(categoryIds[row]).resolve();
+    }
+
+    boolean hasTimestamp(int row) {
+        return epochSeconds[row] != NULL_TIMESTAMP;
+    }
+
+    Instant timestamp(int row) {
+        return hasTimestamp(row)
+            ? Instant.ofEpochSecond(epochSeconds[row], nanos[row])
+            : null;
+    }
+
+    // negative, zero or positive as the row's timestamp is before, equal to or after the given one
+    int compareTimestamp(int row, long epochSecond, int nano) {
+        final var bySecond = Long.compare(epochSeconds[row], epochSecond);
+        return bySecond != 0
+            ? bySecond
+            : Integer.compare(nanos[row], nano);
+    }
+
+    int compareTimestamps(int row, int otherRow) {
+        return compareTimestamp(row, epochSeconds[otherRow], nanos[otherRow]);
+    }
+
+    private String login(int ref) {
+        return ref == NULL_REF
+            ? null
+            : logins.get(ref);
+    }
+
+    private int loginRef(String login) {
+        if (login == null) {
+            return NULL_REF;
+        }
+        return loginRefs.computeIfAbsent(login, ignored -> {
+            logins.add(login);
+            return logins.size() - 1;
+        });
+    }
+
+    private void grow() {
+        final var capacity = Math.max(INITIAL_CAPACITY, types.length + (types.length >> 1));
+        idsHigh = Arrays.copyOf(idsHigh, capacity);
+        idsLow = Arrays.copyOf(idsLow, capacity);
+        types = Arrays.copyOf(types, capacity);
+        amounts = Arrays.copyOf(amounts, capacity);
+        categoryIds = Arrays.copyOf(categoryIds, capacity);
+        epochSeconds = Arrays.copyOf(epochSeconds, capacity);
+        nanos = Arrays.copyOf(nanos, capacity);
+        fromUsers = Arrays.copyOf(fromUsers, capacity);
+        toUsers = Arrays.copyOf(toUsers, capacity);
+        descriptions = Arrays.copyOf(descriptions, capacity);
+    }
+
+    // A flyweight over rows of the log, either in the order given by an array of rows or in the order they were added.
+    // next() moves it to the following row and the accessors read that row. Valid until the wallet changes.
+    public final class Cursor {
+        private final int[] rows;
+        private int position;
+        private final int end;
+        private int row = -1;
+
+        Cursor(int[] rows, int from, int to) {
+            this.rows = rows;
+            this.position = from;
+            this.end = to;
+        }
+
+        // rows not read yet
+        public int remaining() {
+            return end - position;
+        }
+
+        // the rows not read yet as consecutive cursors of at most chunkSize rows each, this cursor is left at the end.
+        // The chunks may be read on different threads as long as the wallet is not changed meanwhile.
+        public List<Cursor> split(int chunkSize) {
+            final var chunks = new ArrayList<Cursor>(remaining() / chunkSize + 1);
+            while (position < end) {
+                final var chunkEnd = (int) Math.min(end, (long) position + chunkSize);
+                chunks.add(new Cursor(rows, position, chunkEnd));
+                position = chunkEnd;
+            }
+            return chunks;
+        }
+
+        public boolean next() {
+            if (position >= end) {
+                return false;
+            }
+            row = rows == null
+                ? position
+                : rows[position];
+            position++;
+            return true;
+        }
+
+        public OperationType type() {
+            return OperationLog.this.type(row);
+        }
+
+        public long amountMinor() {
+            return amounts[row];
+        }
+
+        // the entry the operation is counted under, WITHOUT_CATEGORY for one without a category
+        public CategoryRegistry.Category category() {
+            return OperationLog.this.category(row);
+        }
+
+        // false for an operation added without any category
+        public boolean hasCategory() {
+            return categoryIds[row] != NULL_REF;
+        }
+
+        public UUID id() {
+            return OperationLog.this.id(row);
+        }
+
+        public Instant timestamp() {
+            return OperationLog.this.timestamp(row);
+        }
+
+        public String description() {
+            return descriptions[row];
+        }
+
+        public String fromUser() {
+            return login(fromUsers[row]);
+        }
+
+        public String toUser() {
+            return login(toUsers[row]);
+        }
+
+        public Operation operation() {
+            return get(row);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.mephi.skillfactory.oop.finance.manager.domain;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+// Rows of an operation log ordered by timestamp. New operations almost always come last in time, so keeping the order
+// costs O(1) per operation; an out-of-order one is inserted at its position. Operations without a timestamp are not indexed.
+final class OperationTimeIndex {
+    private final OperationLog log;
+    private int[] byTime = new int[0];
+    private int size;
+
+    OperationTimeIndex(OperationLog log) {
+        this.log = log;
+    }
+
+    void add(int row) {
+        if (!log.hasTimestamp(row)) {
+            return;
+        }
+
+        if (size == byTime.length) {
+            byTime = Arrays.copyOf(byTime, Math.max(16, size + (size >> 1)));
+        }
+        if (size == 0 || log.compareTimestamps(row, byTime[size - 1]) >= 0) {
+            byTime[size++] = row;
+        } else {
+            final var position = upperBound(row);
+            System.arraycopy(byTime, position, byTime, position + 1, size - position);
+            byTime[position] = row;
+            size++;
+        }
+    }
+
+    void rebuild() {
+        size = 0;
+        var sorted = true;
+        for (var row = 0; row < log.size(); row++) {
+            if (log.hasTimestamp(row)) {
+                sorted &= size == 0 || log.compareTimestamps(row, byTime[size - 1]) >= 0;
+                if (size == byTime.length) {
+                    byTime = Arrays.copyOf(byTime, Math.max(16, size + (size >> 1)));
+                }
+                byTime[size++] = row;
+            }
+        }
+        if (!sorted) {
+            // stable, so operations with equal timestamps stay in the order they were added
+            byTime = IntStream.of(Arrays.copyOf(byTime, size))
+                .boxed()
+                .sorted(log::compareTimestamps)
+                .mapToInt(Integer::intValue)
+                .toArray();
+        }
+    }
+
+    // rows with from <= timestamp < to in time order, O(log n) to locate
+    OperationLog.Cursor between(Instant from, Instant to) {
+        final var fromIndex = lowerBound(from);
+        final var toIndex = Math.max(fromIndex, lowerBound(to));
+        return log.new Cursor(byTime, fromIndex, toIndex);
+    }
+
+    // first position with a timestamp not before the given one
+    private int lowerBound(Instant timestamp) {
+        var low = 0;
+        var high = size;
+        while (low < high) {
+            final var middle = (low + high) >>> 1;
+            if (log.compareTimestamp(byTime[middle], timestamp.getEpochSecond(), timestamp.getNano()) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // first position with a timestamp after the one of the given row
+    private int upperBound(int row) {
+        var low = 0;
+        var high = size;
+        while (low < high) {
+            final var middle = (low + high) >>> 1;
+            if (log.compareTimestamps(byTime[middle], row) > 0) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,167 @@
+package com.mephi.skillfactory.oop.finance.manager.domain;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+import static com.mephi.skillfactory.oop.finance.manager.domain.Budget.MAX_ROLLING_DAYS;
+
+// Expense per category and calendar day for the last MAX_ROLLING_DAYS days (counted from the latest expense, but never
+// from a day after today, so an expense dated ahead does not push out the current days) and per calendar month for the
+// whole history. Days leaving the window are dropped, their spend stays in the month totals, so any week, month or
+// rolling window of a budget is answered from at most MAX_ROLLING_DAYS buckets.
+// Buckets hold minor units in one-element arrays added to in place, so an expense on a known day allocates no box;
+// categories are looked up by their registry id.
+final class SpendingBuckets {
+    static final ZoneId ZONE = ZoneId.systemDefault();
+
+    private final List<TreeMap<LocalDate, long[]>> dailyByCategory = new ArrayList<>();
+    private final List<Map<YearMonth, long[]>> monthlyByCategory = new ArrayList<>();
+    private LocalDate latestDay;
+
+    void add(int category, long amount, Instant timestamp) {
+        if (timestamp == null) {
+            return;
+        }
+
+        final var day = LocalDate.ofInstant(timestamp, ZONE);
+        slot(monthlyByCategory, category, HashMap::new)
+            .computeIfAbsent(YearMonth.from(day), ignored -> new long[1])[0] += amount;
+
+        final var anchorDay = min(day, LocalDate.now(ZONE));
+        if (latestDay == null || anchorDay.isAfter(latestDay)) {
+            latestDay = anchorDay;
+        }
+        final var windowStart = latestDay.minusDays(MAX_ROLLING_DAYS - 1);
+        if (day.isBefore(windowStart)) {
+            return;
+        }
+
+        final var daily = slot(dailyByCategory, category, TreeMap::new);
+        daily.computeIfAbsent(day, ignored -> new long[1])[0] += amount;
+        while (daily.firstKey().isBefore(windowStart)) {
+            daily.pollFirstEntry();
+        }
+    }
+
+    void clear() {
+        dailyByCategory.clear();
+        monthlyByCategory.clear();
+        latestDay = null;
+    }
+
+    void moveCategory(int oldCategory, int newCategory) {
+        final var daily = find(dailyByCategory, oldCategory);
+        if (daily != null) {
+            dailyByCategory.set(oldCategory, null);
+            final var target = slot(dailyByCategory, newCategory, TreeMap::new);
+            daily.forEach((day, amount) -> target.computeIfAbsent(day, ignored -> new long[1])[0] += amount[0]);
+        }
+
+        final var monthly = find(monthlyByCategory, oldCategory);
+        if (monthly != null) {
+            monthlyByCategory.set(oldCategory, null);
+            final var target = slot(monthlyByCategory, newCategory, HashMap::new);
+            monthly.forEach((month, amount) -> target.computeIfAbsent(month, ignored -> new long[1])[0] += amount[0]);
+        }
+    }
+
+    LocalDate latestDay() {
+        return latestDay;
+    }
+
+    Map<YearMonth, Long> monthly(int category) {
+        return copy(find(monthlyByCategory, category));
+    }
+
+    Map<LocalDate, Long> daily(int category) {
+        return copy(find(dailyByCategory, category));
+    }
+
+    // puts back what latestDay(), monthly() and daily() returned, into buckets cleared before
+    void restore(LocalDate latestDay, int category, Map<YearMonth, Long> monthly, Map<LocalDate, Long> daily) {
+        this.latestDay = latestDay;
+        if (!monthly.isEmpty()) {
+            final var monthlyBuckets = slot(monthlyByCategory, category, HashMap::new);
+            monthly.forEach((month, amount) -> monthlyBuckets.put(month, new long[] {amount}));
+        }
+        if (!daily.isEmpty()) {
+            final var dailyBuckets = slot(dailyByCategory, category, TreeMap::new);
+            daily.forEach((day, amount) -> dailyBuckets.put(day, new long[] {amount}));
+        }
+    }
+
+    long month(int category, LocalDate today) {
+        final var monthly = find(monthlyByCategory, category);
+        final var sum = monthly == null
+            ? null
+            : monthly.get(YearMonth.from(today));
+        return sum == null
+            ? 0
+            : sum[0];
+    }
+
+    // the current week, Monday to today
+    long week(int category, LocalDate today) {
+        return days(category, today.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY)), today);
+    }
+
+    // the window of the given number of days ending today
+    long rolling(int category, int days, LocalDate today) {
+        return days(category, today.minusDays(Math.clamp(days, 1, MAX_ROLLING_DAYS) - 1), today);
+    }
+
+    private long days(int category, LocalDate from, LocalDate to) {
+        final var daily = find(dailyByCategory, category);
+        if (daily == null) {
+            return 0;
+        }
+
+        var sum = 0L;
+        for (final var amount : daily.subMap(from, true, to, true).values()) {
+            sum += amount[0];
+        }
+        return sum;
+    }
+
+    private static LocalDate min(LocalDate first, LocalDate second) {
+        return first.isBefore(second)
+            ? first
+            : second;
+    }
+
+    private static <K> Map<K, Long> copy(Map<K, long[]> buckets) {
+        final var copy = new TreeMap<K, Long>();
+        if (buckets != null) {
+            buckets.forEach((key, amount) -> copy.put(key, amount[0]));
+        }
+        return copy;
+    }
+
+    private static <T> T find(List<T> byCategory, int category) {
+        return category < byCategory.size()
+            ? byCategory.get(category)
+            : null;
+    }
+
+    private static <T> T slot(List<T> byCategory, int category, Supplier<T> factory) {
+        while (byCategory.size() <= category) {
+            byCategory.add(null);
+        }
+        var buckets = byCategory.get(category);
+        if (buckets == null) {
+            buckets = factory.get();
+            byCategory.set(category, buckets);
+        }
+        return buckets;
+    }
+}
@@ -1,13 +1,21 @@
 package com.mephi.skillfactory.oop.finance.manager.domain;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
+import java.time.Instant;
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -17,31 +25,367 @@ import static com.mephi.skillfactory.oop.finance.manager.domain.enumeration.Oper
 @Getter
 @Setter
 public class Wallet {
-    private double balance;
-    private List<Operation> operations;
+    public static final String WITHOUT_CATEGORY = "Без категории";
+    private static final AtomicLong VERSIONS = new AtomicLong();
+
+    // money is kept in minor units, the JSON form shows major ones (see Money)
+    @JsonIgnore
+    private long balanceMinor;
+    @JsonIgnore
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final CategoryRegistry categoryRegistry = new CategoryRegistry();
+    // a structure of arrays, see OperationLog
+    private final OperationLog operations = new OperationLog(categoryRegistry);
     private Map<String, Budget> budgets;
 
+    // Running aggregates, kept in sync by addOperation/renameCategory. Operations given all at once (a loaded wallet)
+    // are aggregated on first use of the aggregates unless restoreAggregates() is given a matching rollup before that.
+    @JsonIgnore
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private boolean aggregated = true;
+    @JsonIgnore
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private long totalIncomeMinor;
+    @JsonIgnore
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private long totalExpenseMinor;
+    @JsonIgnore
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final CategorySums incomeByCategory = new CategorySums(categoryRegistry);
+    @JsonIgnore
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final CategorySums expenseByCategory = new CategorySums(categoryRegistry);
+    @JsonIgnore
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final OperationTimeIndex timeIndex = new OperationTimeIndex(operations);
+    @JsonIgnore
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final SpendingBuckets spendingBuckets = new SpendingBuckets();
+    // modification counter: every change bumps it, a storage remembers the version it wrote last (see isPersisted).
+    // Versions are unique across wallets, so a storage can tell the wallet it wrote from another copy of the same login.
+    @JsonIgnore
+    @Setter(AccessLevel.NONE)
+    private long version = VERSIONS.incrementAndGet();
+    @JsonIgnore
+    @Setter(AccessLevel.NONE)
+    private long persistedVersion = -1;
+
     public Wallet() {
-        this.balance = 0.0;
-        this.operations = new ArrayList<>();
+        this.balanceMinor = 0;
         this.budgets = new HashMap<>();
     }
 
     @JsonCreator
     public Wallet(@JsonProperty("balance") double balance, @JsonProperty("operations") List<Operation> operations,
                   @JsonProperty("budgets") Map<String, Budget> budgets) {
-        this.balance = balance;
-        this.operations = operations;
-        this.budgets = budgets;
+        this.balanceMinor = Money.toMinor(balance);
+        this.budgets = budgets == null
+            ? new HashMap<>()
+            : budgets;
+        replaceOperations(operations);
+    }
+
+    public void setOperations(List<Operation> operations) {
+        replaceOperations(operations);
+        markModified();
     }
 
+    // the wallet keeps its own copy of the operation, later changes of the given object are not seen
     public void addOperation(Operation op) {
-        operations.add(op);
+        ensureAggregated();
+        final var row = operations.append(op);
+        markModified();
 
         if (INCOME.equals(op.getType())) {
-            balance += op.getAmount();
+            balanceMinor += op.getAmountMinor();
         } else if (EXPENSE.equals(op.getType())) {
-            balance -= op.getAmount();
+            balanceMinor -= op.getAmountMinor();
         }
+        accumulate(row);
+        timeIndex.add(row);
+    }
+
+    // Returns the number of operations moved to the new category. The operations are not visited: they refer to the
+    // registry entry that is renamed (or merged into the new category's one), only operations without any category
+    // are given the renamed entry when WITHOUT_CATEGORY itself is renamed.
+    public int renameCategory(String oldCategoryName, String newCategoryName) {
+        ensureAggregated();
+        final var category = categoryRegistry.find(categoryKey(oldCategoryName));
+        if (category == null || category.operations() == 0) {
+            return 0;
+        }
+
+        final var renamed = category.operations();
+        final var newCategoryKey = categoryKey(newCategoryName);
+        final var target = categoryRegistry.find(newCategoryKey);
+        if (target != null && target != category) {
+            incomeByCategory.move(category, target);
+            expenseByCategory.move(category, target);
+            spendingBuckets.moveCategory(category.id(), target.id());
+        }
+        final var renamesMissingCategory = WITHOUT_CATEGORY.equals(category.name());
+        categoryRegistry.rename(category, newCategoryKey);
+        if (renamesMissingCategory) {
+            operations.assignMissingCategory();
+        }
+        markModified();
+        return renamed;
+    }
+
+    public double getBalance() {
+        return Money.toMajor(balanceMinor);
+    }
+
+    public void setBalance(double balance) {
+        this.balanceMinor = Money.toMinor(balance);
+    }
+
+    @JsonIgnore
+    public double getTotalIncome() {
+        return Money.toMajor(getTotalIncomeMinor());
+    }
+
+    @JsonIgnore
+    public double getTotalExpense() {
+        return Money.toMajor(getTotalExpenseMinor());
+    }
+
+    @JsonIgnore
+    public long getTotalIncomeMinor() {
+        ensureAggregated();
+        return totalIncomeMinor;
+    }
+
+    @JsonIgnore
+    public long getTotalExpenseMinor() {
+        ensureAggregated();
+        return totalExpenseMinor;
+    }
+
+    // for changes made around the wallet's own methods, such as edits of its budgets
+    public void markModified() {
+        version = VERSIONS.incrementAndGet();
+    }
+
+    // the given version, read earlier under the same lock, is now what the storage holds
+    public void markPersisted(long persistedVersion) {
+        this.persistedVersion = Math.max(this.persistedVersion, persistedVersion);
+    }
+
+    @JsonIgnore
+    public boolean isPersisted() {
+        return persistedVersion == version;
+    }
+
+    public boolean hasOperationsWithCategory(String category) {
+        ensureAggregated();
+        final var key = categoryKey(category);
+        return incomeByCategory.contains(key) || expenseByCategory.contains(key);
+    }
+
+    public double incomeByCategory(String category) {
+        ensureAggregated();
+        return Money.toMajor(incomeByCategory.get(categoryKey(category)));
+    }
+
+    public double expenseByCategory(String category) {
+        ensureAggregated();
+        return Money.toMajor(expenseByCategory.get(categoryKey(category)));
+    }
+
+    // expense counted against the budget in its current period
+    public double spentAgainst(Budget budget) {
+        return Money.toMajor(spentAgainstMinor(budget));
+    }
+
+    public long spentAgainstMinor(Budget budget) {
+        return spentAgainstMinor(budget, LocalDate.now(SpendingBuckets.ZONE));
+    }
+
+    public double spentAgainst(Budget budget, LocalDate today) {
+        return Money.toMajor(spentAgainstMinor(budget, today));
+    }
+
+    // expense in minor units counted against the budget in its period containing the given day
+    public long spentAgainstMinor(Budget budget, LocalDate today) {
+        ensureAggregated();
+        final var category = categoryRegistry.find(categoryKey(budget.getCategory()));
+        if (category == null) {
+            return 0;
+        }
+        return switch (budget.getPeriod()) {
+            case ALL_TIME -> expenseByCategory.get(category);
+            case WEEK -> spendingBuckets.week(category.id(), today);
+            case MONTH -> spendingBuckets.month(category.id(), today);
+            case ROLLING -> spendingBuckets.rolling(category.id(), budget.getRollingDays(), today);
+        };
+    }
+
+    // copies of the operations with from <= timestamp < to in time order
+    public List<Operation> operationsBetween(Instant from, Instant to) {
+        final var operationsBetween = new ArrayList<Operation>();
+        final var cursor = timeIndex.between(from, to);
+        while (cursor.next()) {
+            operationsBetween.add(cursor.operation());
+        }
+        return operationsBetween;
+    }
+
+    // the operations with from <= timestamp < to in time order, read in place without copying them
+    public OperationLog.Cursor scanBetween(Instant from, Instant to) {
+        // every category a row can be counted under is interned, so the cursor only reads the registry
+        ensureAggregated();
+        return timeIndex.between(from, to);
+    }
+
+    // copies in major units
+    @JsonIgnore
+    public Map<String, Double> getIncomeByCategory() {
+        ensureAggregated();
+        return incomeByCategory.toMajor();
+    }
+
+    @JsonIgnore
+    public Map<String, Double> getExpenseByCategory() {
+        ensureAggregated();
+        return expenseByCategory.toMajor();
+    }
+
+    // every category with income or expense
+    @JsonIgnore
+    public Set<String> getCategories() {
+        ensureAggregated();
+        final var categories = new HashSet<String>();
+        incomeByCategory.collectCategories(categories);
+        expenseByCategory.collectCategories(categories);
+        return categories;
+    }
+
+    // empty sums to be filled with the categories of a cursor, e.g. for a report over some of the operations
+    public CategorySums newCategorySums() {
+        return new CategorySums(categoryRegistry);
+    }
+
+    public WalletRollup rollup() {
+        ensureAggregated();
+        final var categories = new ArrayList<WalletRollup.CategoryRollup>();
+        for (var id = 0; id < categoryRegistry.size(); id++) {
+            final var category = categoryRegistry.byId(id);
+            // merged entries forward to the one they were merged into
+            if (category.id() == id && category.operations() > 0) {
+                categories.add(new WalletRollup.CategoryRollup(category.name(), category.operations(),
+                    incomeByCategory.contains(category)
+                        ? incomeByCategory.get(category)
+                        : null,
+                    expenseByCategory.contains(category)
+                        ? expenseByCategory.get(category)
+                        : null,
+                    spendingBuckets.monthly(id), spendingBuckets.daily(id)));
+            }
+        }
+        final var lastOperationId = operations.isEmpty()
+            ? null
+            : operations.id(operations.size() - 1);
+        return new WalletRollup(operations.size(), lastOperationId, balanceMinor, totalIncomeMinor, totalExpenseMinor,
+            spendingBuckets.latestDay(), categories);
+    }
+
+    // Takes the aggregates from a rollup of the same operations instead of going through the operations. Returns false,
+    // leaving the wallet as it is, if the rollup was taken from other operations or the aggregates are already there.
+    public boolean restoreAggregates(WalletRollup rollup) {
+        if (aggregated || rollup.operations() != operations.size() || rollup.balance() != balanceMinor) {
+            return false;
+        }
+        final var lastOperationId = operations.isEmpty()
+            ? null
+            : operations.id(operations.size() - 1);
+        if (!Objects.equals(rollup.lastOperationId(), lastOperationId)) {
+            return false;
+        }
+
+        clearAggregates();
+        totalIncomeMinor = rollup.totalIncome();
+        totalExpenseMinor = rollup.totalExpense();
+        for (final var categoryRollup : rollup.categories()) {
+            final var category = categoryRegistry.intern(categoryRollup.name());
+            category.countOperations(categoryRollup.operations());
+            if (categoryRollup.income() != null) {
+                incomeByCategory.add(category, categoryRollup.income());
+            }
+            if (categoryRollup.expense() != null) {
+                expenseByCategory.add(category, categoryRollup.expense());
+            }
+            spendingBuckets.restore(rollup.latestExpenseDay(), category.id(), categoryRollup.monthlyExpense(),
+                categoryRollup.dailyExpense());
+        }
+        aggregated = true;
+        return true;
+    }
+
+    // the balance stays as it is, a stored wallet declares its own
+    private void replaceOperations(List<Operation> replacement) {
+        // the replacement may be this wallet's own log, its rows are copied out before the log is emptied
+        final List<Operation> newOperations = replacement == null
+            ? List.of()
+            : replacement == operations
+                ? new ArrayList<>(replacement)
+                : replacement;
+
+        operations.reset();
+        for (final var operation : newOperations) {
+            operations.append(operation);
+        }
+        timeIndex.rebuild();
+        clearAggregates();
+        aggregated = newOperations.isEmpty();
+    }
+
+    private void ensureAggregated() {
+        if (aggregated) {
+            return;
+        }
+
+        clearAggregates();
+        for (var row = 0; row < operations.size(); row++) {
+            accumulate(row);
+        }
+        aggregated = true;
+    }
+
+    private void clearAggregates() {
+        totalIncomeMinor = 0;
+        totalExpenseMinor = 0;
+        incomeByCategory.clear();
+        expenseByCategory.clear();
+        spendingBuckets.clear();
+    }
+
+    private void accumulate(int row) {
+        final var category = operations.category(row);
+        category.countOperation();
+        final var type = operations.type(row);
+        final var amount = operations.amountMinor(row);
+        if (INCOME.equals(type)) {
+            totalIncomeMinor += amount;
+            incomeByCategory.add(category, amount);
+        } else if (EXPENSE.equals(type)) {
+            totalExpenseMinor += amount;
+            expenseByCategory.add(category, amount);
+            spendingBuckets.add(category.id(), amount, operations.timestamp(row));
+        }
+    }
+
+    private static String categoryKey(String category) {
+        return category == null
+            ? WITHOUT_CATEGORY
+            : category;
     }
 }
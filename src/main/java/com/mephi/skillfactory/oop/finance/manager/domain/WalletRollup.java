@@ -0,0 +1,19 @@
+package com.mephi.skillfactory.oop.finance.manager.domain;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+// The running aggregates of a wallet in minor units, taken by Wallet.rollup() and put back by Wallet.restoreAggregates()
+// in place of going through every operation again. operations, lastOperationId and balance identify the operations the
+// aggregates were taken from, a wallet with other operations does not accept them.
+public record WalletRollup(int operations, UUID lastOperationId, long balance, long totalIncome, long totalExpense,
+                           LocalDate latestExpenseDay, List<CategoryRollup> categories) {
+
+    // income and expense are null for a category without operations of that type; days cover the rolling budget window
+    public record CategoryRollup(String name, int operations, Long income, Long expense, Map<YearMonth, Long> monthlyExpense,
+                                 Map<LocalDate, Long> dailyExpense) {
+    }
+}
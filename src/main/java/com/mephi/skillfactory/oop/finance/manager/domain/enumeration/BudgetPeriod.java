@@ -0,0 +1,14 @@
+package com.mephi.skillfactory.oop.finance.manager.domain.enumeration;
+
+public enum BudgetPeriod {
+    ALL_TIME, WEEK, MONTH, ROLLING;
+
+    public String describe(int rollingDays) {
+        return switch (this) {
+            case ALL_TIME -> "за все время";
+            case WEEK -> "за текущую неделю";
+            case MONTH -> "за текущий месяц";
+            case ROLLING -> "за последние %d дн.".formatted(rollingDays);
+        };
+    }
+}
@@ -0,0 +1,24 @@
+package com.mephi.skillfactory.oop.finance.manager.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.binder.jvm.JvmMemoryMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+// Services and repositories record into Metrics.globalRegistry, which keeps nothing on its own:
+// this in-memory registry is what the 'metrics' CLI command prints
+@Configuration
+public class MetricsConfiguration {
+
+    @Bean(destroyMethod = "close")
+    public MeterRegistry meterRegistry() {
+        final var registry = new SimpleMeterRegistry();
+        Metrics.addRegistry(registry);
+        // heap and direct buffer usage, to compare with what the off-heap wallet store holds
+        new JvmMemoryMetrics().bindTo(registry);
+        return registry;
+    }
+}
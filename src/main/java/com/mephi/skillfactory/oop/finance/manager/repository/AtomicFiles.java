@@ -0,0 +1,164 @@
+package com.mephi.skillfactory.oop.finance.manager.repository;
+
+import com.mephi.skillfactory.oop.finance.manager.repository.exception.CorruptFileException;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Crash-safe replacement of a file: the new content is written to '<name>.tmp' and fsynced, the current content is kept
+// as '<name>.bak', then the temporary file is renamed over '<name>'. Whenever the process dies, '<name>' holds either the
+// old or the new complete version, and read() falls back to the backup if it cannot be parsed anyway.
+// The renames become durable with syncDirectory(), which a batch of replacements in one directory calls once. A batch
+// may also defer the fsync of its new files (replaceDeferringSync) into one pass of syncFiles() right before that: until
+// then a file lost in a crash is unreadable, and read() falls back to its backup, which was already durable.
+final class AtomicFiles {
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final String BACKUP_SUFFIX = ".bak";
+    private static final String CORRUPT_SUFFIX = ".corrupt-";
+
+    private AtomicFiles() {
+    }
+
+    // returns the size of the new file
+    static long replace(Path target, ContentWriter writer) throws IOException {
+        return replace(target, writer, true);
+    }
+
+    // the new content is durable only after syncFiles() for the target
+    static long replaceDeferringSync(Path target, ContentWriter writer) throws IOException {
+        return replace(target, writer, false);
+    }
+
+    private static long replace(Path target, ContentWriter writer, boolean sync) throws IOException {
+        final var tmp = sibling(target, TMP_SUFFIX);
+        write(tmp, writer, sync);
+
+        // without the target there is nothing newer than the backup, it stays until the rename below is done
+        if (Files.exists(target)) {
+            final var backup = sibling(target, BACKUP_SUFFIX);
+            Files.deleteIfExists(backup);
+            try {
+                Files.createLink(backup, target);
+            } catch (UnsupportedOperationException | FileSystemException e) {
+                Files.copy(target, backup);
+            }
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return Files.size(target);
+    }
+
+    static void writeSynced(Path file, ContentWriter writer) throws IOException {
+        write(file, writer, true);
+    }
+
+    // Forces the files taken out of the map, which concurrent writers may keep adding to, and returns the values of the
+    // ones that could not be forced. The forces of a batch are issued back to back, so the file system can commit them
+    // together; a file that is gone was replaced and synced since.
+    static <T> List<T> syncFiles(Map<Path, T> files) {
+        final var failed = new ArrayList<T>();
+        final var iterator = files.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final var file = iterator.next();
+            iterator.remove();
+            try (final var channel = FileChannel.open(file.getKey(), StandardOpenOption.WRITE)) {
+                channel.force(true);
+            } catch (NoSuchFileException e) {
+                // nothing left to sync
+            } catch (IOException e) {
+                System.err.println("Ошибка сброса на диск файла " + file.getKey() + ": " + e.getMessage());
+                failed.add(file.getValue());
+            }
+        }
+        return failed;
+    }
+
+    private static void write(Path file, ContentWriter writer, boolean sync) throws IOException {
+        try (final var channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+            // writers may close the stream (Jackson does), the channel must stay open until it is synced
+            final var out = new BufferedOutputStream(Channels.newOutputStream(channel)) {
+                @Override
+                public void close() throws IOException {
+                    flush();
+                }
+            };
+            writer.write(out);
+            out.flush();
+            if (sync) {
+                channel.force(true);
+            }
+        }
+    }
+
+    static void syncDirectory(Path dir) {
+        try (final var channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // directories cannot be opened for syncing on some platforms (Windows), renames are still atomic there
+        }
+    }
+
+    // Reads the file, or its backup if the file is missing or its content cannot be decoded. A damaged file is moved aside
+    // to '<name>.corrupt-<millis>' so that the next save does not overwrite what is left of it. Any other read error is
+    // rethrown and leaves the file in place. null if neither exists.
+    static <T> T read(Path target, ContentReader<T> reader) throws IOException {
+        final var backup = sibling(target, BACKUP_SUFFIX);
+        if (Files.exists(target)) {
+            try {
+                return readFile(target, reader);
+            } catch (CorruptFileException e) {
+                final var quarantined = sibling(target, CORRUPT_SUFFIX + System.currentTimeMillis());
+                Files.move(target, quarantined);
+                if (!Files.exists(backup)) {
+                    throw new IOException("Файл %s поврежден и перемещен в %s: %s".formatted(target, quarantined.getFileName(),
+                        e.getMessage()), e);
+                }
+                System.err.printf("Файл %s поврежден и перемещен в %s, используется резервная копия: %s%n", target,
+                    quarantined.getFileName(), e.getMessage());
+            }
+        }
+
+        return Files.exists(backup)
+            ? readFile(backup, reader)
+            : null;
+    }
+
+    static void delete(Path target) throws IOException {
+        Files.deleteIfExists(target);
+        Files.deleteIfExists(sibling(target, BACKUP_SUFFIX));
+        Files.deleteIfExists(sibling(target, TMP_SUFFIX));
+    }
+
+    private static <T> T readFile(Path file, ContentReader<T> reader) throws IOException {
+        try (final var in = Files.newInputStream(file)) {
+            return reader.read(in);
+        }
+    }
+
+    private static Path sibling(Path target, String suffix) {
+        return target.resolveSibling(target.getFileName() + suffix);
+    }
+
+    @FunctionalInterface
+    interface ContentWriter {
+        void write(OutputStream out) throws IOException;
+    }
+
+    @FunctionalInterface
+    interface ContentReader<T> {
+        T read(InputStream in) throws IOException;
+    }
+}
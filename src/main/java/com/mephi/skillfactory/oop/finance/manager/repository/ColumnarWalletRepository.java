@@ -0,0 +1,192 @@
+package com.mephi.skillfactory.oop.finance.manager.repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.mephi.skillfactory.oop.finance.manager.domain.User;
+import com.mephi.skillfactory.oop.finance.manager.domain.Wallet;
+import com.mephi.skillfactory.oop.finance.manager.repository.codec.WalletFileFormat;
+import com.mephi.skillfactory.oop.finance.manager.repository.columnar.WalletColumns;
+import com.mephi.skillfactory.oop.finance.manager.repository.exception.FileContentTypeMismatchException;
+import com.mephi.skillfactory.oop.finance.manager.repository.exception.WalletLoadException;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+import org.springframework.util.unit.DataSize;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Read-optimized storage: every wallet is a '<login>.columns' directory of memory-mapped column files (see WalletColumns).
+// New operations are appended to the columns, anything else (import, rename) rewrites the directory.
+// Wallets left by the file storage ('<login>.<ext>') are read once and moved into columns on the next save.
+@Repository
+@ConditionalOnProperty(name = "app.wallet-storage", havingValue = "columnar")
+public class ColumnarWalletRepository implements WalletRepository {
+    private static final String COLUMNS_SUFFIX = ".columns";
+
+    private final ObjectMapper mapper = new ObjectMapper().registerModule(new JavaTimeModule());
+    private final File dataDir;
+    private final WalletFiles walletFiles;
+    private final WalletJsonStreamReader importReader;
+    private final Map<String, ColumnsState> states = new ConcurrentHashMap<>();
+    private final WalletRepositoryMetrics metrics = new WalletRepositoryMetrics("columnar");
+
+    public ColumnarWalletRepository(@Value("${app.data-dir}") String dataDirName,
+                                    @Value("${app.wallet-format}") WalletFileFormat walletFormat,
+                                    @Value("${app.import.max-file-size}") DataSize maxImportFileSize) {
+        dataDir = new File(dataDirName);
+        if (!dataDir.exists()) {
+            final var ignored = dataDir.mkdirs();
+        }
+        walletFiles = new WalletFiles(dataDir, walletFormat, mapper);
+        importReader = new WalletJsonStreamReader(mapper, maxImportFileSize);
+    }
+
+    @Override
+    public void saveWallet(User user) {
+        final var login = user.getLogin();
+        final var wallet = user.getWallet();
+        final var state = states.get(login);
+        if (wallet.isPersisted()) {
+            metrics.skipped();
+            return;
+        }
+        final var sample = metrics.start();
+
+        try {
+            if (state == null || !state.canAppend(wallet)) {
+                final var columns = rewrite(login, wallet);
+                metrics.saved(sample, wallet, columns.committedBytes());
+                return;
+            }
+
+            final var committedBefore = state.columns.committedBytes();
+            state.columns.append(wallet);
+            remember(login, state.columns, wallet);
+            metrics.saved(sample, wallet, state.columns.committedBytes() - committedBefore);
+        } catch (IOException e) {
+            metrics.saveFailed(sample);
+            System.err.println("Ошибка сохранения кошелька для " + login + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void importWallet(Path src, User user) throws FileContentTypeMismatchException {
+        final var importedWallet = importReader.read(src);
+
+        try {
+            rewrite(user.getLogin(), importedWallet);
+        } catch (IOException e) {
+            throw new RuntimeException("Неизвестная ошибка импорта кошелька из " + src + ": " + e.getMessage());
+        }
+
+        user.setWallet(importedWallet);
+    }
+
+    @Override
+    public Wallet loadWallet(String login) {
+        final var sample = metrics.start();
+        try {
+            final var columns = WalletColumns.open(columnsDir(login), mapper);
+            if (columns == null) {
+                final var stored = walletFiles.read(login);
+                final var wallet = stored == null
+                    ? new Wallet()
+                    : stored;
+                metrics.loaded(sample, wallet);
+                return wallet;
+            }
+
+            final var wallet = columns.read();
+            remember(login, columns, wallet);
+            metrics.loaded(sample, wallet);
+            return wallet;
+        } catch (IOException e) {
+            metrics.loadFailed(sample);
+            throw new WalletLoadException("Ошибка загрузки кошелька для " + login + ": " + e.getMessage(), e);
+        }
+    }
+
+    // the columns are only opened to pick up their committed rows, a wallet not stored in columns yet is rewritten anyway
+    @Override
+    public void adoptWallet(String login, Wallet wallet) {
+        try {
+            final var columns = WalletColumns.open(columnsDir(login), mapper);
+            if (columns != null && columns.rows() == wallet.getOperations().size()) {
+                remember(login, columns, wallet);
+            } else {
+                states.remove(login);
+            }
+        } catch (IOException e) {
+            states.remove(login);
+        }
+    }
+
+    @Override
+    public void forgetWallet(String login) {
+        states.remove(login);
+    }
+
+    @Override
+    public boolean convertWalletFormat(String login) throws IOException {
+        if (WalletColumns.open(columnsDir(login), mapper) != null) {
+            return false;
+        }
+
+        final var wallet = walletFiles.read(login);
+        if (wallet == null) {
+            return false;
+        }
+        rewrite(login, wallet);
+        return true;
+    }
+
+    @Override
+    public Path walletFile(String login) {
+        return columnsDir(login);
+    }
+
+    private WalletColumns rewrite(String login, Wallet wallet) throws IOException {
+        final var columns = WalletColumns.rewrite(columnsDir(login), mapper, wallet);
+        walletFiles.delete(login);
+        remember(login, columns, wallet);
+        return columns;
+    }
+
+    // what is on disk now matches the wallet as it is, the caller holds the wallet lock
+    private void remember(String login, WalletColumns columns, Wallet wallet) {
+        states.put(login, new ColumnsState(columns, wallet));
+        wallet.markPersisted(wallet.getVersion());
+    }
+
+    private Path columnsDir(String login) {
+        return dataDir.toPath().resolve(login + COLUMNS_SUFFIX);
+    }
+
+    // What the columns hold for a login's wallet: appending is only possible while the operations persisted so far are
+    // unchanged. The wallet itself is not referenced, its persisted version tells it apart from any other of the login.
+    private static final class ColumnsState {
+        private final WalletColumns columns;
+        private final long version;
+        private final Set<String> categories;
+
+        private ColumnsState(WalletColumns columns, Wallet wallet) {
+            this.columns = columns;
+            this.version = wallet.getVersion();
+            this.categories = wallet.getCategories();
+        }
+
+        // a replaced wallet (import), fewer operations or a vanished category (rename) cannot be expressed as appends
+        private boolean canAppend(Wallet current) {
+            return current.getPersistedVersion() == version
+                && columns.rows() <= current.getOperations().size()
+                && categories.stream()
+                    .allMatch(current::hasOperationsWithCategory);
+        }
+    }
+}
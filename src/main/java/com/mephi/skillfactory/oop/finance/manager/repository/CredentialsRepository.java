@@ -7,4 +7,9 @@ public interface CredentialsRepository {
     Map<String, String> loadCredentials();
 
     void saveCredentials(Map<String, String> credentials);
+
+    // stores newly registered users: added holds only them, credentials holds every user including them
+    default void addCredentials(Map<String, String> added, Map<String, String> credentials) {
+        saveCredentials(credentials);
+    }
 }
@@ -1,10 +1,17 @@
 package com.mephi.skillfactory.oop.finance.manager.repository;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.mephi.skillfactory.oop.finance.manager.repository.exception.CorruptFileException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
 
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Repository;
 
 import java.io.File;
@@ -12,10 +19,21 @@ import java.io.IOException;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
+// Rewrites the whole 'credentials.json' on every registration
 @Repository
+@ConditionalOnProperty(name = "app.credentials-storage", havingValue = "file")
 public class FileBasedCredentialsRepository implements CredentialsRepository {
     private final ObjectMapper mapper = new ObjectMapper().registerModule(new JavaTimeModule());
     private final File credentialsFile;
+    private final Timer saveTimer = Timer.builder("credentials.repository.save")
+        .publishPercentiles(0.5, 0.95, 0.99)
+        .register(Metrics.globalRegistry);
+    private final Counter saveFailures = Counter.builder("credentials.repository.failures")
+        .tag("operation", "save")
+        .register(Metrics.globalRegistry);
+    private final Counter loadFailures = Counter.builder("credentials.repository.failures")
+        .tag("operation", "load")
+        .register(Metrics.globalRegistry);
 
     public FileBasedCredentialsRepository(@Value("${app.data-dir}") String dataDirName,
                                           @Value("${app.credentials-file}") String credentialsFileName) {
@@ -29,27 +47,37 @@ public class FileBasedCredentialsRepository implements CredentialsRepository {
 
     @Override
     public Map<String, String> loadCredentials() {
-        if (!credentialsFile.exists()) {
-            return new ConcurrentHashMap<>();
-        }
-
         try {
-            // use TypeReference to read Map<String,String>
-            final Map<String, String> credentials = mapper.readValue(credentialsFile, new TypeReference<>() {
+            // use TypeReference to read Map<String,String>; falls back to the previous version if the file is damaged
+            final Map<String, String> credentials = AtomicFiles.read(credentialsFile.toPath(), in -> {
+                try {
+                    return mapper.readValue(in, new TypeReference<Map<String, String>>() {
+                    });
+                } catch (JsonProcessingException e) {
+                    throw new CorruptFileException(e.getOriginalMessage(), e);
+                }
             });
-            return new ConcurrentHashMap<>(credentials);
+            return credentials == null
+                ? new ConcurrentHashMap<>()
+                : new ConcurrentHashMap<>(credentials);
         } catch (IOException e) {
+            loadFailures.increment();
             System.err.println("Ошибка загрузки credentials: " + e.getMessage());
             return new ConcurrentHashMap<>();
         }
     }
 
     @Override
-    public void saveCredentials(Map<String, String> credentials) {
+    public synchronized void saveCredentials(Map<String, String> credentials) {
+        final var sample = Timer.start();
         try {
-            mapper.writerWithDefaultPrettyPrinter().writeValue(credentialsFile, credentials);
+            AtomicFiles.replace(credentialsFile.toPath(), out -> mapper.writerWithDefaultPrettyPrinter().writeValue(out, credentials));
+            AtomicFiles.syncDirectory(credentialsFile.toPath().toAbsolutePath().getParent());
         } catch (IOException e) {
+            saveFailures.increment();
             System.err.println("Ошибка сохранения данных: " + e.getMessage());
+        } finally {
+            sample.stop(saveTimer);
         }
     }
 }
@@ -4,50 +4,106 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.mephi.skillfactory.oop.finance.manager.domain.User;
 import com.mephi.skillfactory.oop.finance.manager.domain.Wallet;
+import com.mephi.skillfactory.oop.finance.manager.repository.codec.WalletFileFormat;
 import com.mephi.skillfactory.oop.finance.manager.repository.exception.FileContentTypeMismatchException;
+import com.mephi.skillfactory.oop.finance.manager.repository.exception.WalletLoadException;
 
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Repository;
+import org.springframework.util.unit.DataSize;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32C;
 
 @Repository
+@ConditionalOnProperty(name = "app.wallet-storage", havingValue = "file", matchIfMissing = true)
 public class FileBasedWalletRepository implements WalletRepository {
     private final ObjectMapper mapper = new ObjectMapper().registerModule(new JavaTimeModule());
-    private final File dataDir;
+    private final WalletFiles walletFiles;
+    private final WalletRollupFiles rollupFiles;
+    private final WalletJsonStreamReader importReader;
+    private final WalletRepositoryMetrics metrics = new WalletRepositoryMetrics("file");
+    private final Map<Path, String> unsyncedFiles = new ConcurrentHashMap<>(); // file -> login
 
-    public FileBasedWalletRepository(@Value("${app.data-dir}") String dataDirName) {
-        dataDir = new File(dataDirName);
+    public FileBasedWalletRepository(@Value("${app.data-dir}") String dataDirName,
+                                     @Value("${app.wallet-format}") WalletFileFormat walletFormat,
+                                     @Value("${app.import.max-file-size}") DataSize maxImportFileSize) {
+        final var dataDir = new File(dataDirName);
         if (!dataDir.exists()) {
             final var ignored = dataDir.mkdirs();
         }
+        walletFiles = new WalletFiles(dataDir, walletFormat, mapper);
+        rollupFiles = new WalletRollupFiles(dataDir.toPath(), mapper);
+        importReader = new WalletJsonStreamReader(mapper, maxImportFileSize);
     }
 
     @Override
     public void saveWallet(User user) {
-        final var walletInfoFile = new File(dataDir, user.getLogin() + ".json");
+        if (write(user, true)) {
+            walletFiles.syncDataDir();
+        }
+    }
+
+    // the wallet file is forced together with the rest of the batch in syncSavedWallets()
+    @Override
+    public boolean saveWalletDeferringSync(User user) {
+        if (user.getWallet().isPersisted()) {
+            metrics.skipped();
+            return true;
+        }
+        if (!write(user, false)) {
+            return false;
+        }
+        unsyncedFiles.put(walletFiles.path(user.getLogin()), user.getLogin());
+        return true;
+    }
 
+    // false if nothing was written: the wallet is unchanged since it was loaded or saved, or the write failed. A wallet
+    // written without the sync is marked persisted by the caller of syncSavedWallets()
+    private boolean write(User user, boolean sync) {
+        final var wallet = user.getWallet();
+        if (wallet.isPersisted()) {
+            metrics.skipped();
+            return false;
+        }
+
+        final var sample = metrics.start();
         try {
-            mapper.writerWithDefaultPrettyPrinter().writeValue(walletInfoFile, user.getWallet());
+            final var version = wallet.getVersion();
+            final var checksum = new CRC32C();
+            final var written = sync
+                ? walletFiles.write(user.getLogin(), wallet, checksum)
+                : walletFiles.writeDeferringSync(user.getLogin(), wallet, checksum);
+            if (sync) {
+                wallet.markPersisted(version);
+            }
+            writeRollup(user.getLogin(), checksum.getValue(), wallet);
+            metrics.saved(sample, wallet, written);
+            return true;
         } catch (IOException e) {
+            metrics.saveFailed(sample);
             System.err.println("Ошибка сохранения кошелька для " + user.getLogin() + ": " + e.getMessage());
+            return false;
         }
     }
 
     @Override
     public void importWallet(Path src, User user) throws FileContentTypeMismatchException {
-        final Wallet importedWallet;
-        try {
-            importedWallet = mapper.readValue(src.toFile(), Wallet.class);
-        } catch (IOException e) {
-            throw new FileContentTypeMismatchException("Структура импортируемого файла не поддерживается");
-        }
-        final var importedWalletFile = new File(dataDir, user.getLogin() + ".json");
+        final var importedWallet = importReader.read(src);
 
         try {
-            mapper.writerWithDefaultPrettyPrinter().writeValue(importedWalletFile, importedWallet);
+            final var checksum = new CRC32C();
+            walletFiles.write(user.getLogin(), importedWallet, checksum);
+            walletFiles.syncDataDir();
+            importedWallet.markPersisted(importedWallet.getVersion());
+            writeRollup(user.getLogin(), checksum.getValue(), importedWallet);
         } catch (IOException e) {
             throw new RuntimeException("Неизвестная ошибка импорта кошелька из " + src + ": " + e.getMessage());
         }
@@ -55,18 +111,59 @@ public class FileBasedWalletRepository implements WalletRepository {
         user.setWallet(importedWallet);
     }
 
+    @Override
+    public Set<String> syncSavedWallets() {
+        final var failed = new HashSet<>(AtomicFiles.syncFiles(unsyncedFiles));
+        walletFiles.syncDataDir();
+        return failed;
+    }
+
     @Override
     public Wallet loadWallet(String login) {
-        final var walletInfoFile = new File(dataDir, login + ".json");
-        if (!walletInfoFile.exists()) {
-            return new Wallet();
+        final var sample = metrics.start();
+        try {
+            final var checksum = new CRC32C();
+            final var stored = walletFiles.read(login, checksum);
+            if (stored == null) {
+                final var wallet = new Wallet();
+                metrics.loaded(sample, wallet);
+                return wallet;
+            }
+
+            if (walletFiles.isStoredAsIs(login)) {
+                stored.markPersisted(stored.getVersion());
+                restoreAggregates(login, checksum.getValue(), stored);
+            }
+            metrics.loaded(sample, stored);
+            return stored;
+        } catch (IOException e) {
+            metrics.loadFailed(sample);
+            throw new WalletLoadException("Ошибка загрузки кошелька для " + login + ": " + e.getMessage(), e);
         }
+    }
+
+    // a wallet without a matching rollup aggregates its operations on first use
+    private void restoreAggregates(String login, long walletFileChecksum, Wallet wallet) {
+        final var rollup = rollupFiles.read(login, walletFileChecksum);
+        metrics.rollupRead(rollup != null && wallet.restoreAggregates(rollup));
+    }
 
+    // the wallet file is already replaced, a rollup that failed to follow it no longer matches it and is ignored
+    private void writeRollup(String login, long walletFileChecksum, Wallet wallet) {
         try {
-            return mapper.readValue(walletInfoFile, Wallet.class);
+            rollupFiles.write(login, walletFileChecksum, wallet);
         } catch (IOException e) {
-            System.err.println("Ошибка загрузки кошелька для " + login + ": " + e.getMessage());
-            return new Wallet();
+            System.err.println("Ошибка сохранения сводки кошелька для " + login + ": " + e.getMessage());
         }
     }
+
+    @Override
+    public boolean convertWalletFormat(String login) throws IOException {
+        return walletFiles.convert(login);
+    }
+
+    @Override
+    public Path walletFile(String login) {
+        return walletFiles.path(login);
+    }
 }
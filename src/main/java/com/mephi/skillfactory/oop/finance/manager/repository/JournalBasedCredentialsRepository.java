@@ -0,0 +1,195 @@
+package com.mephi.skillfactory.oop.finance.manager.repository;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.mephi.skillfactory.oop.finance.manager.repository.exception.CorruptFileException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Stores the credentials as a snapshot 'credentials.json' (same file as FileBasedCredentialsRepository) plus an
+// append-only 'credentials.json.journal' with one compact JSON record per registered user, so a registration writes
+// only its own users. The journal is folded into the snapshot once it holds more records than
+// app.journal.credentials-compaction-threshold and than the snapshot itself: the snapshot is rewritten after the number
+// of users has grown by a fixed fraction at most, and every registration costs amortized O(1) bytes written.
+@Repository
+@ConditionalOnProperty(name = "app.credentials-storage", havingValue = "journal", matchIfMissing = true)
+public class JournalBasedCredentialsRepository implements CredentialsRepository {
+    private static final String JOURNAL_SUFFIX = ".journal";
+    private static final String LINE_SEPARATOR = "\n";
+
+    private final ObjectMapper mapper = new ObjectMapper().registerModule(new JavaTimeModule());
+    private final Path credentialsFile;
+    private final Path journalFile;
+    private final int compactionThreshold;
+    private int snapshotRecords;
+    private int journalRecords;
+    private final Timer saveTimer = Timer.builder("credentials.repository.save")
+        .publishPercentiles(0.5, 0.95, 0.99)
+        .register(Metrics.globalRegistry);
+    private final Counter saveFailures = Counter.builder("credentials.repository.failures")
+        .tag("operation", "save")
+        .register(Metrics.globalRegistry);
+    private final Counter loadFailures = Counter.builder("credentials.repository.failures")
+        .tag("operation", "load")
+        .register(Metrics.globalRegistry);
+    private final Counter compactions = Counter.builder("credentials.repository.compactions")
+        .description("rewrites of the credentials snapshot that fold the journal into it")
+        .register(Metrics.globalRegistry);
+
+    public JournalBasedCredentialsRepository(@Value("${app.data-dir}") String dataDirName,
+                                             @Value("${app.credentials-file}") String credentialsFileName,
+                                             @Value("${app.journal.credentials-compaction-threshold}") int compactionThreshold) {
+        final var dataDir = new File(dataDirName);
+        if (!dataDir.exists()) {
+            final var ignored = dataDir.mkdirs();
+        }
+
+        credentialsFile = new File(dataDir, credentialsFileName).toPath();
+        journalFile = credentialsFile.resolveSibling(credentialsFile.getFileName() + JOURNAL_SUFFIX);
+        this.compactionThreshold = Math.max(1, compactionThreshold);
+    }
+
+    @Override
+    public synchronized Map<String, String> loadCredentials() {
+        final var credentials = new ConcurrentHashMap<String, String>();
+        try {
+            // falls back to the previous version if the snapshot is damaged
+            final Map<String, String> snapshot = AtomicFiles.read(credentialsFile, in -> {
+                try {
+                    return mapper.readValue(in, new TypeReference<Map<String, String>>() {
+                    });
+                } catch (JsonProcessingException e) {
+                    throw new CorruptFileException(e.getOriginalMessage(), e);
+                }
+            });
+            if (snapshot != null) {
+                credentials.putAll(snapshot);
+            }
+            snapshotRecords = credentials.size();
+            journalRecords = 0;
+
+            if (!Files.exists(journalFile)) {
+                return credentials;
+            }
+
+            final var journal = Files.readString(journalFile, StandardCharsets.UTF_8);
+            var corruptedTail = !journal.isEmpty() && !journal.endsWith(LINE_SEPARATOR);
+            for (final var line : journal.split(LINE_SEPARATOR)) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    final var record = mapper.readValue(line, CredentialsRecord.class);
+                    credentials.put(record.login(), record.passwordHash());
+                    journalRecords++;
+                } catch (IOException e) {
+                    // interrupted append: everything after the first broken record is dropped
+                    System.err.println("Журнал учетных данных поврежден, восстановлено записей: " + journalRecords);
+                    corruptedTail = true;
+                    break;
+                }
+            }
+
+            // new records must not be appended to a partially written line
+            if (corruptedTail) {
+                compact(credentials);
+            }
+            return credentials;
+        } catch (IOException e) {
+            loadFailures.increment();
+            System.err.println("Ошибка загрузки credentials: " + e.getMessage());
+            return credentials;
+        }
+    }
+
+    @Override
+    public synchronized void saveCredentials(Map<String, String> credentials) {
+        final var sample = Timer.start();
+        try {
+            compact(credentials);
+        } catch (IOException e) {
+            saveFailures.increment();
+            System.err.println("Ошибка сохранения данных: " + e.getMessage());
+        } finally {
+            sample.stop(saveTimer);
+        }
+    }
+
+    @Override
+    public synchronized void addCredentials(Map<String, String> added, Map<String, String> credentials) {
+        if (added.isEmpty()) {
+            return;
+        }
+
+        final var sample = Timer.start();
+        try {
+            if (journalRecords + added.size() > Math.max(compactionThreshold, snapshotRecords)) {
+                compact(credentials);
+            } else {
+                append(added);
+            }
+        } catch (IOException e) {
+            saveFailures.increment();
+            System.err.println("Ошибка сохранения данных: " + e.getMessage());
+        } finally {
+            sample.stop(saveTimer);
+        }
+    }
+
+    // all the records go to the journal with one write and one fsync
+    private void append(Map<String, String> added) throws IOException {
+        final var records = new StringBuilder();
+        for (final var entry : added.entrySet()) {
+            records.append(mapper.writeValueAsString(new CredentialsRecord(entry.getKey(), entry.getValue())))
+                .append(LINE_SEPARATOR);
+        }
+
+        final var created = !Files.exists(journalFile);
+        try (final var channel = FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.APPEND)) {
+            final var buffer = ByteBuffer.wrap(records.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        if (created) {
+            AtomicFiles.syncDirectory(journalFile.toAbsolutePath().getParent());
+        }
+        journalRecords += added.size();
+    }
+
+    // The snapshot holds every user before the journal is deleted: if the process dies in between, the journal is
+    // replayed over a snapshot that already contains its records, which changes nothing.
+    private void compact(Map<String, String> credentials) throws IOException {
+        AtomicFiles.replace(credentialsFile, out -> mapper.writerWithDefaultPrettyPrinter().writeValue(out, credentials));
+        Files.deleteIfExists(journalFile);
+        AtomicFiles.syncDirectory(credentialsFile.toAbsolutePath().getParent());
+
+        snapshotRecords = credentials.size();
+        journalRecords = 0;
+        compactions.increment();
+    }
+
+    record CredentialsRecord(String login, String passwordHash) {
+    }
+}
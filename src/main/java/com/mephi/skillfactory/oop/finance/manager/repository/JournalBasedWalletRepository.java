@@ -0,0 +1,354 @@
+package com.mephi.skillfactory.oop.finance.manager.repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.mephi.skillfactory.oop.finance.manager.domain.Budget;
+import com.mephi.skillfactory.oop.finance.manager.domain.User;
+import com.mephi.skillfactory.oop.finance.manager.domain.Wallet;
+import com.mephi.skillfactory.oop.finance.manager.repository.codec.WalletFileFormat;
+import com.mephi.skillfactory.oop.finance.manager.repository.exception.FileContentTypeMismatchException;
+import com.mephi.skillfactory.oop.finance.manager.repository.exception.WalletLoadException;
+import com.mephi.skillfactory.oop.finance.manager.repository.journal.WalletJournalRecord;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+import org.springframework.util.unit.DataSize;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Stores every wallet as a snapshot '<login>.<ext>' (same files as FileBasedWalletRepository)
+// plus an append-only '<login>.journal' with one compact JSON record per line.
+@Repository
+@ConditionalOnProperty(name = "app.wallet-storage", havingValue = "journal")
+public class JournalBasedWalletRepository implements WalletRepository {
+    private static final String SNAPSHOT_TMP_SUFFIX = ".tmp";
+    private static final String JOURNAL_SUFFIX = ".journal";
+    private static final String LINE_SEPARATOR = "\n";
+
+    private final ObjectMapper mapper = new ObjectMapper().registerModule(new JavaTimeModule());
+    private final File dataDir;
+    private final WalletFiles walletFiles;
+    private final int compactionThreshold;
+    private final WalletJsonStreamReader importReader;
+    private final Map<String, JournalState> states = new ConcurrentHashMap<>();
+    private final WalletRepositoryMetrics metrics = new WalletRepositoryMetrics("journal");
+    private final Map<Path, String> unsyncedJournals = new ConcurrentHashMap<>(); // journal -> login
+
+    public JournalBasedWalletRepository(@Value("${app.data-dir}") String dataDirName,
+                                        @Value("${app.wallet-format}") WalletFileFormat walletFormat,
+                                        @Value("${app.journal.compaction-threshold}") int compactionThreshold,
+                                        @Value("${app.import.max-file-size}") DataSize maxImportFileSize) {
+        dataDir = new File(dataDirName);
+        if (!dataDir.exists()) {
+            final var ignored = dataDir.mkdirs();
+        }
+        this.walletFiles = new WalletFiles(dataDir, walletFormat, mapper);
+        this.compactionThreshold = compactionThreshold;
+        this.importReader = new WalletJsonStreamReader(mapper, maxImportFileSize);
+    }
+
+    @Override
+    public void saveWallet(User user) {
+        save(user, true);
+    }
+
+    // appended records are forced together with the rest of the batch in syncSavedWallets(), snapshots are durable at once
+    @Override
+    public boolean saveWalletDeferringSync(User user) {
+        return save(user, false);
+    }
+
+    @Override
+    public Set<String> syncSavedWallets() {
+        final var failed = new HashSet<>(AtomicFiles.syncFiles(unsyncedJournals));
+        walletFiles.syncDataDir();
+        return failed;
+    }
+
+    // false if the wallet could not be written
+    private boolean save(User user, boolean sync) {
+        final var login = user.getLogin();
+        final var wallet = user.getWallet();
+        if (wallet.isPersisted()) {
+            metrics.skipped();
+            return true;
+        }
+        final var sample = metrics.start();
+
+        try {
+            final var written = persist(login, wallet, sync);
+            metrics.saved(sample, wallet, written);
+            return true;
+        } catch (IOException e) {
+            metrics.saveFailed(sample);
+            System.err.println("Ошибка сохранения кошелька для " + login + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    // returns the number of bytes written to the journal or the snapshot
+    private long persist(String login, Wallet wallet, boolean sync) throws IOException {
+        final var state = states.get(login);
+        if (state == null || !state.canAppend(wallet)) {
+            return writeSnapshot(login, wallet);
+        }
+
+        final var records = state.pendingRecords(wallet);
+        if (records.isEmpty()) {
+            remember(login, wallet, state.journalRecords);
+            return 0;
+        }
+        if (state.journalRecords + records.size() > compactionThreshold) {
+            return writeSnapshot(login, wallet);
+        }
+
+        final var lines = new ArrayList<String>(records.size());
+        var written = 0L;
+        for (final var record : records) {
+            final var line = mapper.writeValueAsString(record);
+            lines.add(line);
+            written += line.getBytes(StandardCharsets.UTF_8).length + LINE_SEPARATOR.length();
+        }
+        append(login, lines, sync);
+        // records appended without the sync are not durable yet, the caller of syncSavedWallets() marks the wallet
+        states.put(login, new JournalState(wallet, state.journalRecords + records.size()));
+        if (sync) {
+            wallet.markPersisted(wallet.getVersion());
+        }
+        return written;
+    }
+
+    // one write for all the records, forced right away or by syncSavedWallets()
+    private void append(String login, List<String> lines, boolean sync) throws IOException {
+        final var journalFile = journalFile(login);
+        final var records = new StringBuilder();
+        lines.forEach(line -> records.append(line).append(LINE_SEPARATOR));
+
+        final var created = !Files.exists(journalFile);
+        try (final var channel = FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.APPEND)) {
+            final var buffer = ByteBuffer.wrap(records.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            if (sync) {
+                channel.force(true);
+            }
+        }
+        if (!sync) {
+            unsyncedJournals.put(journalFile, login);
+        } else if (created) {
+            walletFiles.syncDataDir();
+        }
+    }
+
+    @Override
+    public void importWallet(Path src, User user) throws FileContentTypeMismatchException {
+        final var importedWallet = importReader.read(src);
+
+        try {
+            writeSnapshot(user.getLogin(), importedWallet);
+        } catch (IOException e) {
+            throw new RuntimeException("Неизвестная ошибка импорта кошелька из " + src + ": " + e.getMessage());
+        }
+
+        user.setWallet(importedWallet);
+    }
+
+    @Override
+    public Wallet loadWallet(String login) {
+        final var sample = metrics.start();
+        try {
+            recoverInterruptedCompaction(login);
+
+            final var snapshot = walletFiles.read(login);
+            final var wallet = snapshot == null
+                ? new Wallet()
+                : snapshot;
+
+            final var journalFile = journalFile(login);
+            if (!Files.exists(journalFile)) {
+                remember(login, wallet, 0);
+                metrics.loaded(sample, wallet);
+                return wallet;
+            }
+
+            // interrupted append: a last record without its separator and everything after the first broken one are dropped
+            final var journal = Files.readString(journalFile, StandardCharsets.UTF_8);
+            var replayed = 0;
+            var corruptedTail = !journal.isEmpty() && !journal.endsWith(LINE_SEPARATOR);
+            for (final var line : completeLines(journal)) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    mapper.readValue(line, WalletJournalRecord.class).applyTo(wallet);
+                    replayed++;
+                } catch (IOException e) {
+                    corruptedTail = true;
+                    break;
+                }
+            }
+
+            // new records must not be appended to a partially written line
+            if (corruptedTail) {
+                System.err.println("Журнал кошелька для " + login + " поврежден, восстановлено записей: " + replayed);
+                writeSnapshot(login, wallet);
+            } else {
+                remember(login, wallet, replayed);
+            }
+            metrics.loaded(sample, wallet);
+            return wallet;
+        } catch (IOException e) {
+            metrics.loadFailed(sample);
+            throw new WalletLoadException("Ошибка загрузки кошелька для " + login + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void adoptWallet(String login, Wallet wallet) {
+        final var journalFile = journalFile(login);
+        try {
+            final var journalRecords = Files.exists(journalFile)
+                ? (int) completeLines(Files.readString(journalFile, StandardCharsets.UTF_8)).stream()
+                    .filter(line -> !line.isBlank())
+                    .count()
+                : 0;
+            remember(login, wallet, journalRecords);
+        } catch (IOException e) {
+            // the next save writes a snapshot
+            states.remove(login);
+        }
+    }
+
+    @Override
+    public void forgetWallet(String login) {
+        states.remove(login);
+    }
+
+    // Compaction: the journal is guaranteed to exist while the new snapshot is being written, so a temporary
+    // snapshot without a journal next to it is always complete and can be promoted.
+    private long writeSnapshot(String login, Wallet wallet) throws IOException {
+        final var journalFile = journalFile(login);
+        final var tmpSnapshot = tmpSnapshotFile(login);
+        if (!Files.exists(journalFile)) {
+            Files.createFile(journalFile);
+        }
+
+        final var written = walletFiles.writeTo(tmpSnapshot, wallet);
+        Files.delete(journalFile);
+        Files.move(tmpSnapshot, walletFiles.path(login), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        walletFiles.deleteOtherFormat(login);
+        walletFiles.syncDataDir();
+
+        remember(login, wallet, 0);
+        return written;
+    }
+
+    private void recoverInterruptedCompaction(String login) throws IOException {
+        final var tmpSnapshot = tmpSnapshotFile(login);
+        if (!Files.exists(tmpSnapshot)) {
+            return;
+        }
+
+        if (Files.exists(journalFile(login))) {
+            Files.delete(tmpSnapshot);
+        } else {
+            Files.move(tmpSnapshot, walletFiles.path(login), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    @Override
+    public boolean convertWalletFormat(String login) throws IOException {
+        recoverInterruptedCompaction(login);
+        return walletFiles.convert(login);
+    }
+
+    @Override
+    public Path walletFile(String login) {
+        return walletFiles.path(login);
+    }
+
+    private Path tmpSnapshotFile(String login) {
+        return dataDir.toPath().resolve(walletFiles.path(login).getFileName() + SNAPSHOT_TMP_SUFFIX);
+    }
+
+    // what is on disk now matches the wallet as it is, the caller holds the wallet lock
+    // the lines ended by a separator, the text after the last one is not a complete record
+    private static List<String> completeLines(String journal) {
+        final var lines = List.of(journal.split(LINE_SEPARATOR, -1));
+        return lines.subList(0, lines.size() - 1);
+    }
+
+    private void remember(String login, Wallet wallet, int journalRecords) {
+        states.put(login, new JournalState(wallet, journalRecords));
+        wallet.markPersisted(wallet.getVersion());
+    }
+
+    private Path journalFile(String login) {
+        return dataDir.toPath().resolve(login + JOURNAL_SUFFIX);
+    }
+
+    // What has already been persisted for a login's wallet: everything beyond it goes to the journal on the next save.
+    // The wallet itself is not referenced, so an evicted wallet leaves the heap; its persisted version tells it apart from
+    // any other wallet of the login.
+    private static final class JournalState {
+        private final long version;
+        private final int journalRecords;
+        private final int operationsCount;
+        private final Map<String, Budget> budgets;
+        private final Set<String> categories;
+
+        private JournalState(Wallet wallet, int journalRecords) {
+            this.version = wallet.getVersion();
+            this.journalRecords = journalRecords;
+            this.operationsCount = wallet.getOperations().size();
+            this.budgets = new HashMap<>();
+            wallet.getBudgets().forEach((category, budget) -> budgets.put(category, budget.copy()));
+            this.categories = wallet.getCategories();
+        }
+
+        // a replaced wallet (import), fewer operations or a vanished category (rename) cannot be expressed as appends
+        private boolean canAppend(Wallet current) {
+            return current.getPersistedVersion() == version
+                && operationsCount <= current.getOperations().size()
+                && categories.stream()
+                    .allMatch(current::hasOperationsWithCategory);
+        }
+
+        private List<WalletJournalRecord> pendingRecords(Wallet current) {
+            final var records = new ArrayList<WalletJournalRecord>();
+            final var operations = current.getOperations();
+            for (var i = operationsCount; i < operations.size(); i++) {
+                records.add(WalletJournalRecord.operation(operations.get(i)));
+            }
+
+            final var currentBudgets = current.getBudgets();
+            currentBudgets.forEach((category, budget) -> {
+                if (!budget.equals(budgets.get(category))) {
+                    records.add(WalletJournalRecord.budgetSet(budget));
+                }
+            });
+            budgets.keySet().stream()
+                .filter(category -> !currentBudgets.containsKey(category))
+                .forEach(category -> records.add(WalletJournalRecord.budgetDelete(category)));
+            return records;
+        }
+    }
+}
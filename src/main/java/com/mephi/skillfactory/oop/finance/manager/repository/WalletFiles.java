@@ -0,0 +1,134 @@
+package com.mephi.skillfactory.oop.finance.manager.repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mephi.skillfactory.oop.finance.manager.domain.Wallet;
+import com.mephi.skillfactory.oop.finance.manager.repository.codec.WalletCodec;
+import com.mephi.skillfactory.oop.finance.manager.repository.codec.WalletFileFormat;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.Checksum;
+
+// '<login>.<ext>' wallet files in the configured format. A file in the other format is still readable,
+// so switching app.wallet-format does not lose wallets: they are converted on the next save.
+// Files are replaced atomically with a backup of the previous version (see AtomicFiles).
+final class WalletFiles {
+    private final Path dataDir;
+    private final WalletFileFormat format;
+    private final WalletCodec codec;
+    private final WalletCodec otherFormatCodec;
+
+    WalletFiles(File dataDir, WalletFileFormat format, ObjectMapper mapper) {
+        this.dataDir = dataDir.toPath();
+        this.format = format;
+        this.codec = format.createCodec(mapper);
+        this.otherFormatCodec = format.other().createCodec(mapper);
+    }
+
+    Path path(String login) {
+        return dataDir.resolve(login + "." + format.getExtension());
+    }
+
+    // null if the user has no stored wallet in any format
+    Wallet read(String login) throws IOException {
+        return read(login, new CRC32C());
+    }
+
+    // as read(), the checksum is given the content of the file the wallet was read from
+    Wallet read(String login, Checksum checksum) throws IOException {
+        final var wallet = AtomicFiles.read(path(login), in -> {
+            checksum.reset();
+            try (final var checked = checkedToEnd(in, checksum)) {
+                return codec.read(checked);
+            }
+        });
+        return wallet == null
+            ? AtomicFiles.read(otherFormatPath(login), otherFormatCodec::read)
+            : wallet;
+    }
+
+    // false for a wallet still in the other format or only readable from its backup: it has to be written again
+    boolean isStoredAsIs(String login) {
+        return Files.exists(path(login));
+    }
+
+    // returns the size of the written file; the replacement is durable after syncDataDir()
+    long write(String login, Wallet wallet) throws IOException {
+        return write(login, wallet, new CRC32C());
+    }
+
+    // as write(), the checksum is given the content of the new file
+    long write(String login, Wallet wallet, Checksum checksum) throws IOException {
+        checksum.reset();
+        final var written = AtomicFiles.replace(path(login), out -> codec.write(wallet, new CheckedOutputStream(out, checksum)));
+        deleteOtherFormat(login);
+        return written;
+    }
+
+    // as write(), but the new file itself is durable only after AtomicFiles.syncFiles() as well
+    long writeDeferringSync(String login, Wallet wallet, Checksum checksum) throws IOException {
+        checksum.reset();
+        final var written = AtomicFiles.replaceDeferringSync(path(login),
+            out -> codec.write(wallet, new CheckedOutputStream(out, checksum)));
+        deleteOtherFormat(login);
+        return written;
+    }
+
+    long writeTo(Path target, Wallet wallet) throws IOException {
+        AtomicFiles.writeSynced(target, out -> codec.write(wallet, out));
+        return Files.size(target);
+    }
+
+    void syncDataDir() {
+        AtomicFiles.syncDirectory(dataDir);
+    }
+
+    void deleteOtherFormat(String login) throws IOException {
+        AtomicFiles.delete(otherFormatPath(login));
+    }
+
+    // true if a wallet stored in the other format was rewritten in the configured one
+    boolean convert(String login) throws IOException {
+        final var otherFormatPath = otherFormatPath(login);
+        if (Files.exists(path(login)) || !Files.exists(otherFormatPath)) {
+            return false;
+        }
+
+        write(login, AtomicFiles.read(otherFormatPath, otherFormatCodec::read));
+        syncDataDir();
+        return true;
+    }
+
+    void delete(String login) throws IOException {
+        AtomicFiles.delete(path(login));
+        deleteOtherFormat(login);
+    }
+
+    // a codec may stop reading at the end of its content (Jackson leaves trailing whitespace), the rest of the file still
+    // goes through the checksum when the stream is closed
+    private static InputStream checkedToEnd(InputStream in, Checksum checksum) {
+        return new CheckedInputStream(in, checksum) {
+            private boolean drained;
+
+            @Override
+            public void close() throws IOException {
+                if (!drained) {
+                    drained = true;
+                    transferTo(OutputStream.nullOutputStream());
+                }
+                super.close();
+            }
+        };
+    }
+
+    private Path otherFormatPath(String login) {
+        return dataDir.resolve(login + "." + format.other().getExtension());
+    }
+}
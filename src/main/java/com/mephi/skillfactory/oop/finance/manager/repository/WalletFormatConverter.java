@@ -0,0 +1,42 @@
+package com.mephi.skillfactory.oop.finance.manager.repository;
+
+import com.mephi.skillfactory.oop.finance.manager.concurrent.IoExecutor;
+
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import lombok.RequiredArgsConstructor;
+
+// One-off conversion of all stored wallets to app.wallet-format, runs before the CLI starts
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@ConditionalOnProperty(name = "app.convert-wallets-on-startup", havingValue = "true")
+@RequiredArgsConstructor
+public class WalletFormatConverter implements ApplicationRunner {
+    private final WalletRepository walletRepository;
+    private final CredentialsRepository credentialsRepository;
+    private final IoExecutor ioExecutor;
+
+    // wallets are converted in parallel, every login is touched by one task only
+    @Override
+    public void run(ApplicationArguments args) {
+        final var converted = new AtomicInteger();
+        ioExecutor.forEach(credentialsRepository.loadCredentials().keySet(), login -> {
+            try {
+                if (walletRepository.convertWalletFormat(login)) {
+                    converted.incrementAndGet();
+                }
+            } catch (IOException e) {
+                System.err.println("Ошибка конвертации кошелька для " + login + ": " + e.getMessage());
+            }
+        });
+        System.out.printf("Конвертировано кошельков: %d%n", converted.get());
+    }
+}
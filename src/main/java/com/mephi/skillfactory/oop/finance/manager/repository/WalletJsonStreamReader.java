@@ -0,0 +1,118 @@
+package com.mephi.skillfactory.oop.finance.manager.repository;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mephi.skillfactory.oop.finance.manager.domain.Budget;
+import com.mephi.skillfactory.oop.finance.manager.domain.Money;
+import com.mephi.skillfactory.oop.finance.manager.domain.Operation;
+import com.mephi.skillfactory.oop.finance.manager.domain.Wallet;
+import com.mephi.skillfactory.oop.finance.manager.repository.exception.FileContentTypeMismatchException;
+
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+// Reads an exported wallet token by token: operations are validated and appended to the wallet one at a time,
+// without an intermediate tree or list of the whole file
+final class WalletJsonStreamReader {
+    private static final String UNSUPPORTED_STRUCTURE = "Структура импортируемого файла не поддерживается";
+
+    private final ObjectMapper mapper;
+    private final DataSize maxFileSize;
+
+    WalletJsonStreamReader(ObjectMapper mapper, DataSize maxFileSize) {
+        this.mapper = mapper;
+        this.maxFileSize = maxFileSize;
+    }
+
+    Wallet read(Path src) throws FileContentTypeMismatchException {
+        checkFileSize(src);
+
+        try (final var parser = mapper.createParser(src.toFile())) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new FileContentTypeMismatchException(UNSUPPORTED_STRUCTURE);
+            }
+
+            final var wallet = new Wallet();
+            Double declaredBalance = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final var fieldName = parser.currentName();
+                final var valueToken = parser.nextToken();
+                switch (fieldName) {
+                    case "balance" -> {
+                        if (!valueToken.isNumeric() || !Money.isRepresentable(parser.getDoubleValue())) {
+                            throw new FileContentTypeMismatchException(UNSUPPORTED_STRUCTURE);
+                        }
+                        declaredBalance = parser.getDoubleValue();
+                    }
+                    case "operations" -> readOperations(parser, wallet);
+                    case "budgets" -> {
+                        if (valueToken != JsonToken.VALUE_NULL) {
+                            wallet.setBudgets(new HashMap<>(mapper.readValue(parser, new TypeReference<Map<String, Budget>>() {
+                            })));
+                        }
+                    }
+                    default -> throw new FileContentTypeMismatchException(UNSUPPORTED_STRUCTURE);
+                }
+            }
+
+            // the exported balance wins over the recalculated one, as it did before streaming import
+            if (declaredBalance != null) {
+                wallet.setBalance(declaredBalance);
+            }
+            return wallet;
+        } catch (IOException e) {
+            throw new FileContentTypeMismatchException(UNSUPPORTED_STRUCTURE);
+        }
+    }
+
+    private void checkFileSize(Path src) throws FileContentTypeMismatchException {
+        final long size;
+        try {
+            size = Files.size(src);
+        } catch (IOException e) {
+            throw new FileContentTypeMismatchException("Не удалось прочитать импортируемый файл: " + e.getMessage());
+        }
+
+        if (size > maxFileSize.toBytes()) {
+            throw new FileContentTypeMismatchException(
+                "Размер импортируемого файла (%d байт) превышает допустимый (%d байт)".formatted(size, maxFileSize.toBytes()));
+        }
+    }
+
+    private void readOperations(JsonParser parser, Wallet wallet) throws IOException, FileContentTypeMismatchException {
+        if (parser.currentToken() == JsonToken.VALUE_NULL) {
+            return;
+        }
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            throw new FileContentTypeMismatchException(UNSUPPORTED_STRUCTURE);
+        }
+
+        var operationNumber = 0;
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            operationNumber++;
+            final var operation = mapper.readValue(parser, Operation.class);
+            validate(operation, operationNumber);
+            wallet.addOperation(operation);
+        }
+    }
+
+    private void validate(Operation operation, int operationNumber) throws FileContentTypeMismatchException {
+        if (operation == null || operation.getType() == null) {
+            throw new FileContentTypeMismatchException("Операция #%d: не указан тип операции".formatted(operationNumber));
+        }
+        if (operation.getAmountMinor() <= 0) {
+            throw new FileContentTypeMismatchException("Операция #%d: сумма должна быть больше 0".formatted(operationNumber));
+        }
+        if (operation.getId() == null) {
+            operation.setId(UUID.randomUUID());
+        }
+    }
+}
@@ -4,13 +4,43 @@ import com.mephi.skillfactory.oop.finance.manager.domain.User;
 import com.mephi.skillfactory.oop.finance.manager.domain.Wallet;
 import com.mephi.skillfactory.oop.finance.manager.repository.exception.FileContentTypeMismatchException;
 
+import java.io.IOException;
 import java.nio.file.Path;
+import java.util.Set;
 
 public interface WalletRepository {
 
     void saveWallet(User user);
 
+    // Group commit: saves of a batch skip the fsync of their files and of the directory, syncSavedWallets() makes all of
+    // them durable at once. Such a save does not mark the wallet persisted, the caller does once the sync has succeeded.
+    // Returns false if the wallet could not be written.
+    default boolean saveWalletDeferringSync(User user) {
+        saveWallet(user);
+        return user.getWallet().isPersisted();
+    }
+
+    // the logins of the wallets saved since the last call whose files could not be made durable
+    default Set<String> syncSavedWallets() {
+        return Set.of();
+    }
+
     void importWallet(Path src, User user) throws FileContentTypeMismatchException;
 
+    // an empty wallet if the user has none stored, WalletLoadException if the stored one cannot be read
     Wallet loadWallet(String login);
+
+    // The wallet, an exact copy of what the storage holds for the login, came back from elsewhere than loadWallet (the
+    // off-heap tier): a storage that saves incrementally picks up from it instead of rewriting the wallet on the next save.
+    default void adoptWallet(String login, Wallet wallet) {
+    }
+
+    // the login's wallet has left the heap, whatever the storage keeps to save it incrementally can go
+    default void forgetWallet(String login) {
+    }
+
+    // rewrites a wallet stored in a format other than app.wallet-format, returns false if there was nothing to convert
+    boolean convertWalletFormat(String login) throws IOException;
+
+    Path walletFile(String login);
 }
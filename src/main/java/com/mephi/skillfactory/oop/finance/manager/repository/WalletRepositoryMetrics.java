@@ -0,0 +1,95 @@
+package com.mephi.skillfactory.oop.finance.manager.repository;
+
+import com.mephi.skillfactory.oop.finance.manager.domain.Wallet;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+
+// Meters shared by the wallet repositories, tagged with the storage kind. They live in the global registry,
+// which only records anything once the application registers a concrete registry in it.
+final class WalletRepositoryMetrics {
+    private final Timer saveTimer;
+    private final Timer loadTimer;
+    private final Counter saveFailures;
+    private final Counter loadFailures;
+    private final Counter savesSkipped;
+    private final Counter rollupsRestored;
+    private final Counter rollupsIgnored;
+    private final DistributionSummary bytesWritten;
+    private final DistributionSummary operationsPerWallet;
+
+    WalletRepositoryMetrics(String storage) {
+        saveTimer = Timer.builder("wallet.repository.save")
+            .tag("storage", storage)
+            .publishPercentiles(0.5, 0.95, 0.99)
+            .register(Metrics.globalRegistry);
+        loadTimer = Timer.builder("wallet.repository.load")
+            .tag("storage", storage)
+            .publishPercentiles(0.5, 0.95, 0.99)
+            .register(Metrics.globalRegistry);
+        saveFailures = Counter.builder("wallet.repository.failures")
+            .tags("storage", storage, "operation", "save")
+            .register(Metrics.globalRegistry);
+        loadFailures = Counter.builder("wallet.repository.failures")
+            .tags("storage", storage, "operation", "load")
+            .register(Metrics.globalRegistry);
+        savesSkipped = Counter.builder("wallet.repository.saves.skipped")
+            .description("saves of wallets unchanged since they were last loaded or saved")
+            .tag("storage", storage)
+            .register(Metrics.globalRegistry);
+        rollupsRestored = Counter.builder("wallet.repository.rollups")
+            .description("loads that took the wallet aggregates from the stored rollup")
+            .tags("storage", storage, "outcome", "restored")
+            .register(Metrics.globalRegistry);
+        rollupsIgnored = Counter.builder("wallet.repository.rollups")
+            .description("loads without a rollup matching the wallet, its aggregates are computed from the operations")
+            .tags("storage", storage, "outcome", "ignored")
+            .register(Metrics.globalRegistry);
+        bytesWritten = DistributionSummary.builder("wallet.repository.bytes.written")
+            .tag("storage", storage)
+            .baseUnit("bytes")
+            .register(Metrics.globalRegistry);
+        operationsPerWallet = DistributionSummary.builder("wallet.repository.operations")
+            .tag("storage", storage)
+            .register(Metrics.globalRegistry);
+    }
+
+    Timer.Sample start() {
+        return Timer.start();
+    }
+
+    void saved(Timer.Sample sample, Wallet wallet, long bytes) {
+        sample.stop(saveTimer);
+        bytesWritten.record(bytes);
+        operationsPerWallet.record(wallet.getOperations().size());
+    }
+
+    void skipped() {
+        savesSkipped.increment();
+    }
+
+    void rollupRead(boolean restored) {
+        if (restored) {
+            rollupsRestored.increment();
+        } else {
+            rollupsIgnored.increment();
+        }
+    }
+
+    void saveFailed(Timer.Sample sample) {
+        sample.stop(saveTimer);
+        saveFailures.increment();
+    }
+
+    void loaded(Timer.Sample sample, Wallet wallet) {
+        sample.stop(loadTimer);
+        operationsPerWallet.record(wallet.getOperations().size());
+    }
+
+    void loadFailed(Timer.Sample sample) {
+        sample.stop(loadTimer);
+        loadFailures.increment();
+    }
+}
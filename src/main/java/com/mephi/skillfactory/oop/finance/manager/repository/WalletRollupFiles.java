@@ -0,0 +1,65 @@
+package com.mephi.skillfactory.oop.finance.manager.repository;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mephi.skillfactory.oop.finance.manager.domain.Wallet;
+import com.mephi.skillfactory.oop.finance.manager.domain.WalletRollup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+// '<login>.rollup.json' next to the wallet file: the wallet's aggregates (see WalletRollup) together with the checksum of
+// the content of the wallet file written with them. A rollup that does not describe the current wallet file - the process
+// died between the two writes, the wallet was edited or restored from its backup - is ignored, and the wallet aggregates
+// its operations itself. The checksum is taken while the file is written and read, so it costs no extra pass over it.
+// The rollup is only a shortcut, so it is neither backed up nor synced.
+final class WalletRollupFiles {
+    private static final String SUFFIX = ".rollup.json";
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private final Path dataDir;
+    private final ObjectMapper mapper;
+
+    WalletRollupFiles(Path dataDir, ObjectMapper mapper) {
+        this.dataDir = dataDir;
+        this.mapper = mapper;
+    }
+
+    // called right after the wallet file is written, with the wallet lock held
+    void write(String login, long walletFileChecksum, Wallet wallet) throws IOException {
+        final var stored = new StoredRollup(walletFileChecksum, wallet.rollup());
+        final var target = path(login);
+        final var tmp = target.resolveSibling(target.getFileName() + TMP_SUFFIX);
+        mapper.writeValue(tmp.toFile(), stored);
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // the rollup written with the wallet file of the given checksum, null if there is none
+    WalletRollup read(String login, long walletFileChecksum) {
+        final var path = path(login);
+        if (!Files.exists(path)) {
+            return null;
+        }
+
+        try {
+            final var stored = mapper.readValue(path.toFile(), StoredRollup.class);
+            return stored.walletFileChecksum() != null && stored.walletFileChecksum() == walletFileChecksum
+                ? stored.rollup()
+                : null;
+        } catch (IOException e) {
+            System.err.println("Сводка кошелька %s не прочитана, итоги будут пересчитаны: %s".formatted(login, e.getMessage()));
+            return null;
+        }
+    }
+
+    private Path path(String login) {
+        return dataDir.resolve(login + SUFFIX);
+    }
+
+    // rollups of older versions were matched by the size and modification time of the wallet file, they have no checksum
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    record StoredRollup(Long walletFileChecksum, WalletRollup rollup) {
+    }
+}
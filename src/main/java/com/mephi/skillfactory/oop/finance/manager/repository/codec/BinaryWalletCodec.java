@@ -0,0 +1,271 @@
+package com.mephi.skillfactory.oop.finance.manager.repository.codec;
+
+import com.mephi.skillfactory.oop.finance.manager.domain.Budget;
+import com.mephi.skillfactory.oop.finance.manager.domain.Money;
+import com.mephi.skillfactory.oop.finance.manager.domain.Operation;
+import com.mephi.skillfactory.oop.finance.manager.domain.Wallet;
+import com.mephi.skillfactory.oop.finance.manager.domain.enumeration.BudgetPeriod;
+import com.mephi.skillfactory.oop.finance.manager.domain.enumeration.OperationType;
+import com.mephi.skillfactory.oop.finance.manager.repository.exception.CorruptFileException;
+
+import java.io.ByteArrayInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UTFDataFormatException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import static java.util.Objects.requireNonNullElse;
+
+// Layout (big-endian):
+//   magic "FMWL", version byte, balance long (minor units, see Money),
+//   dictionary: int count + UTF strings (categories and logins), referenced by index, -1 stands for null,
+//   operations: int count + per operation: uuid (2 longs), type byte, amount long, category ref int,
+//               timestamp (epoch second long + nano int), from ref int, to ref int, description (int length + UTF-8),
+//   budgets: int count + per budget: category ref int, limit long, period byte, rolling days int
+//   (version 1 files have no period and rolling days, their budgets are all-time ones),
+//   CRC32 int of everything before it (absent in versions 1 and 2).
+// Versions 1 to 3 store balance, amounts and limits as doubles in major units.
+public class BinaryWalletCodec implements WalletCodec {
+    private static final int MAGIC = 0x464D574C; // "FMWL"
+    private static final byte VERSION = 4;
+    private static final byte VERSION_WITH_DOUBLES = 3;
+    private static final byte VERSION_WITHOUT_CHECKSUM = 2;
+    private static final byte VERSION_WITHOUT_PERIODS = 1;
+    private static final int NULL_REF = -1;
+    private static final long NULL_TIMESTAMP = Long.MIN_VALUE;
+    private static final UUID NULL_ID = new UUID(0L, 0L);
+    private static final OperationType[] OPERATION_TYPES = OperationType.values();
+    private static final BudgetPeriod[] BUDGET_PERIODS = BudgetPeriod.values();
+    private static final String UNEXPECTED_END = "Неожиданный конец бинарного файла кошелька";
+
+    // The rows are encoded in one pass of a cursor, without materializing an Operation per row: the dictionary is taken from
+    // the names the log has interned, a superset of the ones the rows refer to.
+    @Override
+    public void write(Wallet wallet, OutputStream out) throws IOException {
+        final var operations = wallet.getOperations();
+        final var dictionary = new LinkedHashMap<String, Integer>();
+        operations.names().forEach(name -> intern(dictionary, name));
+        wallet.getBudgets().keySet().forEach(category -> intern(dictionary, category));
+
+        final var checksum = new CRC32();
+        final var data = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(out), checksum));
+        data.writeInt(MAGIC);
+        data.writeByte(VERSION);
+        data.writeLong(wallet.getBalanceMinor());
+
+        data.writeInt(dictionary.size());
+        for (final var value : dictionary.keySet()) {
+            data.writeUTF(value);
+        }
+
+        data.writeInt(operations.size());
+        final var cursor = operations.cursor();
+        while (cursor.next()) {
+            final var id = requireNonNullElse(cursor.id(), NULL_ID);
+            data.writeLong(id.getMostSignificantBits());
+            data.writeLong(id.getLeastSignificantBits());
+            data.writeByte(cursor.type() == null
+                ? NULL_REF
+                : cursor.type().ordinal());
+            data.writeLong(cursor.amountMinor());
+            data.writeInt(cursor.hasCategory()
+                ? ref(dictionary, cursor.category().name())
+                : NULL_REF);
+            final var timestamp = cursor.timestamp();
+            if (timestamp == null) {
+                data.writeLong(NULL_TIMESTAMP);
+                data.writeInt(0);
+            } else {
+                data.writeLong(timestamp.getEpochSecond());
+                data.writeInt(timestamp.getNano());
+            }
+            data.writeInt(ref(dictionary, cursor.fromUser()));
+            data.writeInt(ref(dictionary, cursor.toUser()));
+            writeText(data, cursor.description());
+        }
+
+        data.writeInt(wallet.getBudgets().size());
+        for (final var budget : wallet.getBudgets().entrySet()) {
+            data.writeInt(ref(dictionary, budget.getKey()));
+            data.writeLong(budget.getValue().getLimitMinor());
+            data.writeByte(budget.getValue().getPeriod().ordinal());
+            data.writeInt(budget.getValue().getRollingDays());
+        }
+        data.writeInt((int) checksum.getValue());
+        data.flush();
+    }
+
+    @Override
+    public Wallet read(InputStream in) throws IOException {
+        try {
+            return decode(in);
+        } catch (EOFException e) {
+            throw new CorruptFileException(UNEXPECTED_END, e);
+        } catch (UTFDataFormatException e) {
+            throw new CorruptFileException("Некорректная строка в бинарном файле кошелька", e);
+        }
+    }
+
+    // The whole file is read first, so every count and length it holds is checked against the bytes left before anything
+    // is allocated for it: damage found by the checksum only at the end cannot make the decoder run out of memory.
+    private static Wallet decode(InputStream in) throws IOException {
+        final var checksum = new CRC32();
+        final var data = new DataInputStream(new CheckedInputStream(new ByteArrayInputStream(in.readAllBytes()), checksum));
+        if (data.readInt() != MAGIC) {
+            throw new CorruptFileException("Файл не является бинарным файлом кошелька");
+        }
+        final var version = data.readByte();
+        if (version < VERSION_WITHOUT_PERIODS || version > VERSION) {
+            throw new IOException("Неподдерживаемая версия бинарного файла кошелька: " + version);
+        }
+        final var balance = readMoney(data, version);
+
+        final var dictionary = new String[readCount(data)];
+        for (var i = 0; i < dictionary.length; i++) {
+            dictionary[i] = data.readUTF();
+        }
+
+        final var operationsCount = readCount(data);
+        final List<Operation> operations = new ArrayList<>(operationsCount);
+        for (var i = 0; i < operationsCount; i++) {
+            final var rawId = new UUID(data.readLong(), data.readLong());
+            final var id = NULL_ID.equals(rawId)
+                ? null
+                : rawId;
+            final var type = readOperationType(data.readByte());
+            final var amount = readMoney(data, version);
+            final var category = resolve(dictionary, data.readInt());
+            final var epochSecond = data.readLong();
+            final var nano = data.readInt();
+            final var fromUser = resolve(dictionary, data.readInt());
+            final var toUser = resolve(dictionary, data.readInt());
+            final var description = readText(data);
+
+            final var operation = new Operation(id, type, 0, category, description, fromUser, toUser);
+            operation.setAmountMinor(amount);
+            operation.setTimestamp(epochSecond == NULL_TIMESTAMP
+                ? null
+                : Instant.ofEpochSecond(epochSecond, nano));
+            operations.add(operation);
+        }
+
+        final var budgetsCount = readCount(data);
+        final Map<String, Budget> budgets = new HashMap<>();
+        for (var i = 0; i < budgetsCount; i++) {
+            final var category = resolve(dictionary, data.readInt());
+            final var limit = readMoney(data, version);
+            final var budget = version == VERSION_WITHOUT_PERIODS
+                ? new Budget(category, 0)
+                : new Budget(category, 0, readBudgetPeriod(data.readByte()), data.readInt());
+            budget.setLimitMinor(limit);
+            budgets.put(category, budget);
+        }
+
+        if (version > VERSION_WITHOUT_CHECKSUM) {
+            final var expected = (int) checksum.getValue();
+            if (data.readInt() != expected) {
+                throw new CorruptFileException("Контрольная сумма бинарного файла кошелька не совпадает");
+            }
+        }
+
+        final var wallet = new Wallet(0, operations, budgets);
+        wallet.setBalanceMinor(balance);
+        return wallet;
+    }
+
+    // minor units, converted from the doubles of older versions
+    private static long readMoney(DataInputStream data, byte version) throws IOException {
+        if (version > VERSION_WITH_DOUBLES) {
+            return data.readLong();
+        }
+        final var amount = data.readDouble();
+        if (!Money.isRepresentable(amount)) {
+            throw new CorruptFileException("Некорректная сумма в бинарном файле кошелька: " + amount);
+        }
+        return Money.toMinor(amount);
+    }
+
+    private static void intern(Map<String, Integer> dictionary, String value) {
+        if (value != null) {
+            dictionary.putIfAbsent(value, dictionary.size());
+        }
+    }
+
+    private static int ref(Map<String, Integer> dictionary, String value) {
+        return value == null
+            ? NULL_REF
+            : dictionary.get(value);
+    }
+
+    private static String resolve(String[] dictionary, int ref) throws IOException {
+        if (ref == NULL_REF) {
+            return null;
+        }
+        if (ref < 0 || ref >= dictionary.length) {
+            throw new CorruptFileException("Некорректная ссылка на словарь: " + ref);
+        }
+        return dictionary[ref];
+    }
+
+    // every element takes at least one byte
+    private static int readCount(DataInputStream data) throws IOException {
+        final var count = data.readInt();
+        if (count < 0 || count > data.available()) {
+            throw new CorruptFileException("Некорректное количество элементов: " + count);
+        }
+        return count;
+    }
+
+    private static OperationType readOperationType(byte ordinal) throws IOException {
+        if (ordinal == NULL_REF) {
+            return null;
+        }
+        if (ordinal < 0 || ordinal >= OPERATION_TYPES.length) {
+            throw new CorruptFileException("Некорректный тип операции: " + ordinal);
+        }
+        return OPERATION_TYPES[ordinal];
+    }
+
+    private static BudgetPeriod readBudgetPeriod(byte ordinal) throws IOException {
+        if (ordinal < 0 || ordinal >= BUDGET_PERIODS.length) {
+            throw new CorruptFileException("Некорректный период бюджета: " + ordinal);
+        }
+        return BUDGET_PERIODS[ordinal];
+    }
+
+    private static void writeText(DataOutputStream data, String text) throws IOException {
+        if (text == null) {
+            data.writeInt(NULL_REF);
+            return;
+        }
+        final var bytes = text.getBytes(StandardCharsets.UTF_8);
+        data.writeInt(bytes.length);
+        data.write(bytes);
+    }
+
+    private static String readText(DataInputStream data) throws IOException {
+        final var length = data.readInt();
+        if (length == NULL_REF) {
+            return null;
+        }
+        if (length < 0 || length > data.available()) {
+            throw new CorruptFileException("Некорректная длина строки: " + length);
+        }
+        return new String(data.readNBytes(length), StandardCharsets.UTF_8);
+    }
+}
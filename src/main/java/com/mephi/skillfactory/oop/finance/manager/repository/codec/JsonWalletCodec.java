@@ -0,0 +1,32 @@
+package com.mephi.skillfactory.oop.finance.manager.repository.codec;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mephi.skillfactory.oop.finance.manager.domain.Wallet;
+import com.mephi.skillfactory.oop.finance.manager.repository.exception.CorruptFileException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+public class JsonWalletCodec implements WalletCodec {
+    private final ObjectMapper mapper;
+
+    public JsonWalletCodec(ObjectMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    @Override
+    public void write(Wallet wallet, OutputStream out) throws IOException {
+        mapper.writerWithDefaultPrettyPrinter().writeValue(out, wallet);
+    }
+
+    @Override
+    public Wallet read(InputStream in) throws IOException {
+        try {
+            return mapper.readValue(in, Wallet.class);
+        } catch (JsonProcessingException e) {
+            throw new CorruptFileException(e.getOriginalMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.mephi.skillfactory.oop.finance.manager.repository.codec;
+
+import com.mephi.skillfactory.oop.finance.manager.domain.Wallet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+public interface WalletCodec {
+
+    void write(Wallet wallet, OutputStream out) throws IOException;
+
+    Wallet read(InputStream in) throws IOException;
+}
@@ -0,0 +1,27 @@
+package com.mephi.skillfactory.oop.finance.manager.repository.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+@Getter
+@RequiredArgsConstructor
+public enum WalletFileFormat {
+    JSON("json"), BINARY("bin");
+
+    private final String extension;
+
+    public WalletCodec createCodec(ObjectMapper mapper) {
+        return switch (this) {
+            case JSON -> new JsonWalletCodec(mapper);
+            case BINARY -> new BinaryWalletCodec();
+        };
+    }
+
+    public WalletFileFormat other() {
+        return this == JSON
+            ? BINARY
+            : JSON;
+    }
+}
@@ -0,0 +1,378 @@
+package com.mephi.skillfactory.oop.finance.manager.repository.columnar;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mephi.skillfactory.oop.finance.manager.domain.Budget;
+import com.mephi.skillfactory.oop.finance.manager.domain.Money;
+import com.mephi.skillfactory.oop.finance.manager.domain.Operation;
+import com.mephi.skillfactory.oop.finance.manager.domain.Wallet;
+import com.mephi.skillfactory.oop.finance.manager.domain.enumeration.OperationType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static java.util.Objects.requireNonNullElse;
+
+// One wallet as a directory of column files:
+//   type.col (byte per row), category.col (int dictionary ref), amount.col (long minor units), timestamp.col (long epoch nanos),
+//   details.dat (id, from/to refs and description per row, read only to materialize operations),
+//   dictionary.dat (categories and logins), wallet.meta (committed row count and file lengths, balance in minor units, budgets).
+// Appended rows become visible only when wallet.meta is replaced, anything past the committed lengths is a torn
+// append and is cut off before the next one.
+// Directories written before money became minor units have no amount scale in wallet.meta and keep double amounts in
+// amount.col; appends to them stay in that format until the next rewrite.
+public final class WalletColumns {
+    private static final String TYPE_COLUMN = "type.col";
+    private static final String CATEGORY_COLUMN = "category.col";
+    private static final String AMOUNT_COLUMN = "amount.col";
+    private static final String TIMESTAMP_COLUMN = "timestamp.col";
+    private static final String DETAILS_FILE = "details.dat";
+    private static final String DICTIONARY_FILE = "dictionary.dat";
+    private static final String META_FILE = "wallet.meta";
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final String OLD_SUFFIX = ".old";
+
+    private static final int NULL_REF = -1;
+    private static final byte NULL_TYPE = -1;
+    private static final long NULL_TIMESTAMP = Long.MIN_VALUE;
+    private static final UUID NULL_ID = new UUID(0L, 0L);
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final OperationType[] OPERATION_TYPES = OperationType.values();
+
+    private final Path dir;
+    private final ObjectMapper mapper;
+    private Meta meta;
+    private final List<String> dictionary = new ArrayList<>();
+    private final Map<String, Integer> dictionaryRefs = new HashMap<>();
+
+    private WalletColumns(Path dir, ObjectMapper mapper) {
+        this.dir = dir;
+        this.mapper = mapper;
+    }
+
+    // null if nothing has been stored in the directory yet
+    public static WalletColumns open(Path dir, ObjectMapper mapper) throws IOException {
+        recoverInterruptedRewrite(dir);
+        if (!Files.exists(dir.resolve(META_FILE))) {
+            return null;
+        }
+
+        final var columns = new WalletColumns(dir, mapper);
+        columns.meta = mapper.readValue(dir.resolve(META_FILE).toFile(), Meta.class);
+        columns.readDictionary();
+        return columns;
+    }
+
+    // Writes the wallet into a fresh directory next to the current one and swaps them:
+    // the old directory is only renamed away once the new one is complete.
+    public static WalletColumns rewrite(Path dir, ObjectMapper mapper, Wallet wallet) throws IOException {
+        final var tmpDir = sibling(dir, TMP_SUFFIX);
+        final var oldDir = sibling(dir, OLD_SUFFIX);
+        deleteDirectory(tmpDir);
+        Files.createDirectories(tmpDir);
+
+        final var columns = new WalletColumns(tmpDir, mapper);
+        columns.meta = new Meta(0, 0, 0, 0, null, 0L, Map.of(), Money.SCALE);
+        columns.append(wallet);
+
+        if (Files.exists(dir)) {
+            Files.move(dir, oldDir, StandardCopyOption.ATOMIC_MOVE);
+        }
+        Files.move(tmpDir, dir, StandardCopyOption.ATOMIC_MOVE);
+        deleteDirectory(oldDir);
+
+        final var rewritten = new WalletColumns(dir, mapper);
+        rewritten.meta = columns.meta;
+        rewritten.dictionary.addAll(columns.dictionary);
+        rewritten.dictionaryRefs.putAll(columns.dictionaryRefs);
+        return rewritten;
+    }
+
+    public int rows() {
+        return meta.rows();
+    }
+
+    // total size of the committed data across all files of the wallet
+    public long committedBytes() {
+        return (long) meta.rows() * (Byte.BYTES + Integer.BYTES + Long.BYTES + Long.BYTES) + meta.detailsLength()
+            + meta.dictionaryLength();
+    }
+
+    // appends wallet operations past the committed rows and commits the new balance and budgets
+    public void append(Wallet wallet) throws IOException {
+        final var dictionarySize = dictionary.size();
+        try {
+            appendRows(wallet, dictionarySize);
+        } catch (IOException e) {
+            // values interned by the failed append were never committed
+            dictionary.subList(dictionarySize, dictionary.size()).forEach(dictionaryRefs::remove);
+            dictionary.subList(dictionarySize, dictionary.size()).clear();
+            throw e;
+        }
+    }
+
+    private void appendRows(Wallet wallet, int dictionarySize) throws IOException {
+        final var operations = wallet.getOperations();
+        final var rows = meta.rows();
+        final var newRows = operations.size() - rows;
+
+        final var types = ByteBuffer.allocate(newRows);
+        final var categories = ByteBuffer.allocate(newRows * Integer.BYTES);
+        final var amounts = ByteBuffer.allocate(newRows * Long.BYTES);
+        final var timestamps = ByteBuffer.allocate(newRows * Long.BYTES);
+        final var details = new ByteArrayOutputStream();
+        final var detailsOut = new DataOutputStream(details);
+
+        for (var i = rows; i < operations.size(); i++) {
+            final var operation = operations.get(i);
+            types.put(operation.getType() == null
+                ? NULL_TYPE
+                : (byte) operation.getType().ordinal());
+            categories.putInt(ref(operation.getCategory()));
+            if (meta.hasMinorAmounts()) {
+                amounts.putLong(operation.getAmountMinor());
+            } else {
+                amounts.putDouble(operation.getAmount());
+            }
+            timestamps.putLong(toEpochNanos(operation.getTimestamp()));
+
+            final var id = requireNonNullElse(operation.getId(), NULL_ID);
+            detailsOut.writeLong(id.getMostSignificantBits());
+            detailsOut.writeLong(id.getLeastSignificantBits());
+            detailsOut.writeInt(ref(operation.getFromUser()));
+            detailsOut.writeInt(ref(operation.getToUser()));
+            writeText(detailsOut, operation.getDescription());
+        }
+
+        final var newDictionary = new ByteArrayOutputStream();
+        final var dictionaryOut = new DataOutputStream(newDictionary);
+        for (var i = dictionarySize; i < dictionary.size(); i++) {
+            dictionaryOut.writeUTF(dictionary.get(i));
+        }
+
+        appendAt(TYPE_COLUMN, (long) rows, types.flip());
+        appendAt(CATEGORY_COLUMN, (long) rows * Integer.BYTES, categories.flip());
+        appendAt(AMOUNT_COLUMN, (long) rows * Long.BYTES, amounts.flip());
+        appendAt(TIMESTAMP_COLUMN, (long) rows * Long.BYTES, timestamps.flip());
+        appendAt(DETAILS_FILE, meta.detailsLength(), ByteBuffer.wrap(details.toByteArray()));
+        appendAt(DICTIONARY_FILE, meta.dictionaryLength(), ByteBuffer.wrap(newDictionary.toByteArray()));
+
+        commit(new Meta(operations.size(), dictionary.size(), meta.dictionaryLength() + newDictionary.size(),
+            meta.detailsLength() + details.size(), null, wallet.getBalanceMinor(), new HashMap<>(wallet.getBudgets()), meta.amountScale()));
+    }
+
+    // materializes every operation, only loading a user needs this
+    public Wallet read() throws IOException {
+        final var rows = meta.rows();
+        final List<Operation> operations;
+        try (final var typeChannel = FileChannel.open(dir.resolve(TYPE_COLUMN));
+             final var categoryChannel = FileChannel.open(dir.resolve(CATEGORY_COLUMN));
+             final var amountChannel = FileChannel.open(dir.resolve(AMOUNT_COLUMN));
+             final var timestampChannel = FileChannel.open(dir.resolve(TIMESTAMP_COLUMN));
+             final var details = new DataInputStream(Files.newInputStream(dir.resolve(DETAILS_FILE)))) {
+
+            final var types = map(typeChannel, rows);
+            final var categories = map(categoryChannel, (long) rows * Integer.BYTES);
+            final var amounts = map(amountChannel, (long) rows * Long.BYTES);
+            final var timestamps = map(timestampChannel, (long) rows * Long.BYTES);
+
+            // allocated once the columns proved to hold that many rows
+            operations = new ArrayList<>(rows);
+            for (var row = 0; row < rows; row++) {
+                final var rawId = new UUID(details.readLong(), details.readLong());
+                final var id = NULL_ID.equals(rawId)
+                    ? null
+                    : rawId;
+                final var fromUser = resolve(details.readInt());
+                final var toUser = resolve(details.readInt());
+                final var description = readText(details);
+
+                final var operation = new Operation(id, operationType(types.get(row)), 0, resolve(categories.getInt(row * Integer.BYTES)),
+                    description, fromUser, toUser);
+                operation.setAmountMinor(amountMinor(amounts, row));
+                operation.setTimestamp(fromEpochNanos(timestamps.getLong(row * Long.BYTES)));
+                operations.add(operation);
+            }
+        }
+
+        final var budgets = new HashMap<String, Budget>();
+        meta.budgets().forEach((category, budget) -> budgets.put(category, budget.copy()));
+        final var wallet = new Wallet(0, operations, budgets);
+        wallet.setBalanceMinor(meta.balanceInMinorUnits());
+        return wallet;
+    }
+
+    private long amountMinor(ByteBuffer amounts, int row) {
+        return meta.hasMinorAmounts()
+            ? amounts.getLong(row * Long.BYTES)
+            : Money.toMinor(amounts.getDouble(row * Double.BYTES));
+    }
+
+    private void appendAt(String fileName, long committedLength, ByteBuffer data) throws IOException {
+        try (final var channel = FileChannel.open(dir.resolve(fileName), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            if (channel.size() > committedLength) {
+                channel.truncate(committedLength);
+            }
+            channel.position(committedLength);
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+            channel.force(false);
+        }
+    }
+
+    private void commit(Meta newMeta) throws IOException {
+        final var metaFile = dir.resolve(META_FILE);
+        final var tmpMetaFile = dir.resolve(META_FILE + TMP_SUFFIX);
+        mapper.writeValue(tmpMetaFile.toFile(), newMeta);
+        Files.move(tmpMetaFile, metaFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        meta = newMeta;
+    }
+
+    private void readDictionary() throws IOException {
+        if (meta.dictionarySize() == 0) {
+            return;
+        }
+        try (final var in = new DataInputStream(Files.newInputStream(dir.resolve(DICTIONARY_FILE)))) {
+            for (var i = 0; i < meta.dictionarySize(); i++) {
+                final var value = in.readUTF();
+                dictionaryRefs.put(value, dictionary.size());
+                dictionary.add(value);
+            }
+        }
+    }
+
+    private int ref(String value) {
+        if (value == null) {
+            return NULL_REF;
+        }
+        return dictionaryRefs.computeIfAbsent(value, ignored -> {
+            dictionary.add(value);
+            return dictionary.size() - 1;
+        });
+    }
+
+    private String resolve(int ref) throws IOException {
+        if (ref == NULL_REF) {
+            return null;
+        }
+        if (ref < 0 || ref >= dictionary.size()) {
+            throw new IOException("Некорректная ссылка на словарь: " + ref);
+        }
+        return dictionary.get(ref);
+    }
+
+    private static ByteBuffer map(FileChannel channel, long length) throws IOException {
+        if (channel.size() < length) {
+            throw new IOException("Файл колонки короче зафиксированного количества строк");
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+    }
+
+    private static OperationType operationType(byte ordinal) throws IOException {
+        if (ordinal == NULL_TYPE) {
+            return null;
+        }
+        if (ordinal < 0 || ordinal >= OPERATION_TYPES.length) {
+            throw new IOException("Некорректный тип операции: " + ordinal);
+        }
+        return OPERATION_TYPES[ordinal];
+    }
+
+    private static long toEpochNanos(Instant timestamp) {
+        return timestamp == null
+            ? NULL_TIMESTAMP
+            : Math.addExact(Math.multiplyExact(timestamp.getEpochSecond(), NANOS_PER_SECOND), timestamp.getNano());
+    }
+
+    private static Instant fromEpochNanos(long epochNanos) {
+        return epochNanos == NULL_TIMESTAMP
+            ? null
+            : Instant.ofEpochSecond(Math.floorDiv(epochNanos, NANOS_PER_SECOND), Math.floorMod(epochNanos, NANOS_PER_SECOND));
+    }
+
+    private static void writeText(DataOutputStream out, String text) throws IOException {
+        if (text == null) {
+            out.writeInt(NULL_REF);
+            return;
+        }
+        final var bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    // the details are read straight from the file, whose stream counts the bytes left in it as available
+    private static String readText(DataInputStream in) throws IOException {
+        final var length = in.readInt();
+        if (length == NULL_REF) {
+            return null;
+        }
+        if (length < 0 || length > in.available()) {
+            throw new IOException("Некорректная длина строки в файле колонок: " + length);
+        }
+        return new String(in.readNBytes(length), StandardCharsets.UTF_8);
+    }
+
+    // a complete new directory wins over a missing one, a leftover of an unfinished swap is dropped otherwise
+    private static void recoverInterruptedRewrite(Path dir) throws IOException {
+        final var tmpDir = sibling(dir, TMP_SUFFIX);
+        final var oldDir = sibling(dir, OLD_SUFFIX);
+        if (!Files.exists(dir)) {
+            if (Files.exists(tmpDir.resolve(META_FILE))) {
+                Files.move(tmpDir, dir, StandardCopyOption.ATOMIC_MOVE);
+            } else if (Files.exists(oldDir)) {
+                Files.move(oldDir, dir, StandardCopyOption.ATOMIC_MOVE);
+            }
+        }
+        deleteDirectory(tmpDir);
+        deleteDirectory(oldDir);
+    }
+
+    private static Path sibling(Path dir, String suffix) {
+        return dir.resolveSibling(dir.getFileName() + suffix);
+    }
+
+    private static void deleteDirectory(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (final var files = Files.list(dir)) {
+            for (final var file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    // amountScale is 0 in directories whose amount.col holds doubles; the balance is written in minor units, older meta
+    // files have it in major units as a double instead
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    record Meta(int rows, int dictionarySize, long dictionaryLength, long detailsLength, Double balance, Long balanceMinor,
+                Map<String, Budget> budgets, int amountScale) {
+
+        boolean hasMinorAmounts() {
+            return amountScale == Money.SCALE;
+        }
+
+        long balanceInMinorUnits() {
+            return balanceMinor != null
+                ? balanceMinor
+                : Money.toMinor(requireNonNullElse(balance, 0.0));
+        }
+    }
+}
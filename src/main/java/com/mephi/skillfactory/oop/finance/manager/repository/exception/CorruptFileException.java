@@ -0,0 +1,10 @@
+package com.mephi.skillfactory.oop.finance.manager.repository.exception;
+
+import java.io.IOException;
+
+import lombok.experimental.StandardException;
+
+// the content of a file cannot be decoded: it is damaged rather than unreadable for the moment
+@StandardException
+public final class CorruptFileException extends IOException {
+}
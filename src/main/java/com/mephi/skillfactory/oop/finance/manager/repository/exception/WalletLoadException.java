@@ -0,0 +1,8 @@
+package com.mephi.skillfactory.oop.finance.manager.repository.exception;
+
+import lombok.experimental.StandardException;
+
+// the stored wallet cannot be read right now, an empty one in its place would overwrite it on the next save
+@StandardException
+public final class WalletLoadException extends RuntimeException {
+}
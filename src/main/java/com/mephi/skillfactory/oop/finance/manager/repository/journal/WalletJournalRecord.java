@@ -0,0 +1,39 @@
+package com.mephi.skillfactory.oop.finance.manager.repository.journal;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.mephi.skillfactory.oop.finance.manager.domain.Budget;
+import com.mephi.skillfactory.oop.finance.manager.domain.Operation;
+import com.mephi.skillfactory.oop.finance.manager.domain.Wallet;
+import com.mephi.skillfactory.oop.finance.manager.domain.enumeration.BudgetPeriod;
+
+import static java.util.Objects.requireNonNullElse;
+
+// period and rollingDays are absent in records written before budget periods, such budgets are all-time ones
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record WalletJournalRecord(Type type, Operation operation, String category, Double limit, BudgetPeriod period, Integer rollingDays) {
+
+    public static WalletJournalRecord operation(Operation operation) {
+        return new WalletJournalRecord(Type.OPERATION, operation, null, null, null, null);
+    }
+
+    public static WalletJournalRecord budgetSet(Budget budget) {
+        return new WalletJournalRecord(Type.BUDGET_SET, null, budget.getCategory(), budget.getLimit(), budget.getPeriod(),
+            budget.getRollingDays());
+    }
+
+    public static WalletJournalRecord budgetDelete(String category) {
+        return new WalletJournalRecord(Type.BUDGET_DELETE, null, category, null, null, null);
+    }
+
+    public void applyTo(Wallet wallet) {
+        switch (type) {
+            case OPERATION -> wallet.addOperation(operation);
+            case BUDGET_SET -> wallet.getBudgets().put(category, new Budget(category, limit, period, requireNonNullElse(rollingDays, 0)));
+            case BUDGET_DELETE -> wallet.getBudgets().remove(category);
+        }
+    }
+
+    public enum Type {
+        OPERATION, BUDGET_SET, BUDGET_DELETE
+    }
+}
@@ -1,5 +1,6 @@
 package com.mephi.skillfactory.oop.finance.manager.service;
 
+import com.mephi.skillfactory.oop.finance.manager.domain.Money;
 import com.mephi.skillfactory.oop.finance.manager.domain.Operation;
 import com.mephi.skillfactory.oop.finance.manager.domain.User;
 
@@ -14,23 +15,33 @@ public class AlertService {
     @Value("${app.limit-threshold}")
     private double limitThreshold;
 
-    public void checkAlerts(User user, Operation recentOp, double spentByCategory, double totalIncome, double totalExpense) {
+    public void checkAlerts(User user, Operation recentOp, double totalIncome, double totalExpense) {
         if (EXPENSE.equals(recentOp.getType())) {
-            final var category = recentOp.getCategory();
-            final var budget = user.getWallet().getBudgets().get(category);
-
-            if (budget != null) {
-                final var remaining = budget.getLimit() - spentByCategory;
-                if (remaining < 0) {
-                    System.out.printf("Бюджет по категории '%s' превышен на %.2f%n", category, abs(remaining));
-                } else {
-                    if (remaining <= budget.getLimit() * limitThreshold) {
-                        System.out.printf("Бюджет по категории '%s' близок к лимиту: остаток = %.2f%n", category, remaining);
-                    }
+            checkBudgetAlert(user, recentOp.getCategory());
+        }
+
+        checkBalanceAlert(totalIncome, totalExpense);
+    }
+
+    // the spend is compared within the budget's own period, read from the wallet's daily and monthly buckets
+    public void checkBudgetAlert(User user, String category) {
+        final var wallet = user.getWallet();
+        final var budget = wallet.getBudgets().get(category);
+
+        if (budget != null) {
+            final var period = budget.getPeriod().describe(budget.getRollingDays());
+            final var remaining = Money.toMajor(budget.getLimitMinor() - wallet.spentAgainstMinor(budget));
+            if (remaining < 0) {
+                System.out.printf("Бюджет по категории '%s' %s превышен на %.2f%n", category, period, abs(remaining));
+            } else {
+                if (remaining <= budget.getLimit() * limitThreshold) {
+                    System.out.printf("Бюджет по категории '%s' %s близок к лимиту: остаток = %.2f%n", category, period, remaining);
                 }
             }
         }
+    }
 
+    public void checkBalanceAlert(double totalIncome, double totalExpense) {
         if (totalExpense > totalIncome) {
             final var diff = abs(totalExpense - totalIncome);
             System.out.printf("Общие расходы (%.2f) превышают доходы(%.2f)!%nВы в минусе на %.2f!%n", totalExpense, totalIncome, diff);
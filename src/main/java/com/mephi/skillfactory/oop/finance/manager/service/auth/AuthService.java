@@ -1,64 +1,162 @@
 package com.mephi.skillfactory.oop.finance.manager.service.auth;
 
+import com.mephi.skillfactory.oop.finance.manager.concurrent.IoExecutor;
 import com.mephi.skillfactory.oop.finance.manager.domain.User;
+import com.mephi.skillfactory.oop.finance.manager.domain.Wallet;
 import com.mephi.skillfactory.oop.finance.manager.repository.CredentialsRepository;
 import com.mephi.skillfactory.oop.finance.manager.repository.WalletRepository;
+import com.mephi.skillfactory.oop.finance.manager.repository.exception.WalletLoadException;
 import com.mephi.skillfactory.oop.finance.manager.service.auth.exception.IllegalCredentialsException;
 import com.mephi.skillfactory.oop.finance.manager.service.exception.UserNotFoundException;
+import com.mephi.skillfactory.oop.finance.manager.service.wallet.WalletLocks;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
 
 import org.apache.commons.codec.digest.DigestUtils;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.apache.logging.log4j.util.Strings.isBlank;
 
 @Service
 public class AuthService {
-    private final Map<String, User> users;
+    // the logged in user and the transfer recipient must be able to stay resident at the same time
+    private static final int MIN_USER_CACHE_CAPACITY = 2;
+
+    private final Map<String, User> users; // resident users only, wallets are loaded on demand
+    // Evicted users a caller may still hold: the logged in user, a transfer party. While anyone holds one, its login
+    // resolves to that very user again, so a login never has two wallets that diverge. Guarded by users.
+    private final Map<String, DetachedUser> detachedUsers = new HashMap<>();
+    private final ReferenceQueue<User> releasedUsers = new ReferenceQueue<>();
     private final Map<String, String> credentials;
     private final CredentialsRepository credentialsRepository;
     private final WalletRepository walletRepository;
+    private final WalletLocks walletLocks;
+    private final OffHeapWalletStore offHeapWallets;
+    private final IoExecutor ioExecutor;
+    // registrations are stored one after another, so a check for taken logins holds until the new users are stored
+    private final Object registrationMonitor = new Object();
+    private final Queue<User> evictedUsers = new ConcurrentLinkedQueue<>();
+    private final int userCacheCapacity;
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+    private final AtomicLong cacheEvictions = new AtomicLong();
+    private final Timer loginSuccessTimer = loginTimer("success");
+    private final Timer loginFailureTimer = loginTimer("failure");
 
-    public AuthService(WalletRepository walletRepository, CredentialsRepository credentialsRepository) {
+    public AuthService(WalletRepository walletRepository, CredentialsRepository credentialsRepository, WalletLocks walletLocks,
+                       IoExecutor ioExecutor, OffHeapWalletStore offHeapWallets,
+                       @Value("${app.user-cache.capacity}") int userCacheCapacity,
+                       @Value("${app.user-cache.preload}") boolean preloadWallets) {
         this.walletRepository = walletRepository;
         this.credentialsRepository = credentialsRepository;
-        this.users = new ConcurrentHashMap<>();
+        this.walletLocks = walletLocks;
+        this.offHeapWallets = offHeapWallets;
+        this.ioExecutor = ioExecutor;
+        this.userCacheCapacity = Math.max(MIN_USER_CACHE_CAPACITY, userCacheCapacity);
+        this.users = Collections.synchronizedMap(new UserCache(this.userCacheCapacity));
         this.credentials = new ConcurrentHashMap<>();
 
         final var loadedCredentials = credentialsRepository.loadCredentials();
         if (loadedCredentials != null) {
             credentials.putAll(loadedCredentials);
+        }
+        registerCacheMeters();
 
-            loadedCredentials.forEach((login, passwordHash) -> {
-                final var user = new User(login, passwordHash);
-                final var wallet = walletRepository.loadWallet(login);
-                user.setWallet(wallet);
-
-                users.put(login, user);
-            });
+        if (preloadWallets) {
+            preloadWallets();
         }
     }
 
+    // warms the cache with as many wallets as it holds, reading them in parallel; an unreadable one is left for the login
+    private void preloadWallets() {
+        final var logins = credentials.keySet().stream()
+            .limit(userCacheCapacity)
+            .toList();
+        ioExecutor.forEach(logins, login -> {
+            try {
+                resolveUser(login, credentials.get(login));
+            } catch (WalletLoadException e) {
+                System.err.println(e.getMessage());
+            }
+        });
+    }
+
     public void register(String login, String password) throws IllegalCredentialsException {
         if (isBlank(login) || isBlank(password)) {
             throw new IllegalCredentialsException("Логин или пароль не представлены");
         }
-        if (credentials.containsKey(login)) {
-            throw new IllegalCredentialsException("Пользователь с логином %s уже зарегистрирован".formatted(login));
-        }
 
         final var hash = DigestUtils.sha256Hex(password);
-        credentials.put(login, hash);
-        credentialsRepository.saveCredentials(credentials);
+        synchronized (registrationMonitor) {
+            if (credentials.putIfAbsent(login, hash) != null) {
+                throw new IllegalCredentialsException("Пользователь с логином %s уже зарегистрирован".formatted(login));
+            }
+            credentialsRepository.addCredentials(Map.of(login, hash), credentials);
+        }
 
         final var user = new User(login, hash);
         users.put(login, user);
-        walletRepository.saveWallet(user);
+        walletLocks.runLocked(login, () -> walletRepository.saveWallet(user));
+        persistEvictedUsers();
+    }
+
+    // Registers all the users or none of them: their credentials are stored at once and their wallets are written in
+    // parallel. The new users are not put into the cache, their wallets are loaded on first use like any other.
+    public void registerAll(Map<String, String> passwords) throws IllegalCredentialsException {
+        final var hashes = new LinkedHashMap<String, String>();
+        for (final var entry : passwords.entrySet()) {
+            if (isBlank(entry.getKey()) || isBlank(entry.getValue())) {
+                throw new IllegalCredentialsException("Логин или пароль не представлены");
+            }
+            hashes.put(entry.getKey(), DigestUtils.sha256Hex(entry.getValue()));
+        }
+
+        synchronized (registrationMonitor) {
+            for (final var login : hashes.keySet()) {
+                if (credentials.containsKey(login)) {
+                    throw new IllegalCredentialsException("Пользователь с логином %s уже зарегистрирован".formatted(login));
+                }
+            }
+            credentials.putAll(hashes);
+            credentialsRepository.addCredentials(hashes, credentials);
+        }
+
+        ioExecutor.forEach(hashes.entrySet(), entry -> {
+            final var user = new User(entry.getKey(), entry.getValue());
+            walletLocks.runLocked(user.getLogin(), () -> walletRepository.saveWallet(user));
+        });
     }
 
     public User login(String login, String password) throws IllegalCredentialsException, UserNotFoundException {
+        final var sample = Timer.start();
+        var authenticated = false;
+        try {
+            final var user = authenticate(login, password);
+            authenticated = true;
+            return user;
+        } finally {
+            sample.stop(authenticated
+                ? loginSuccessTimer
+                : loginFailureTimer);
+        }
+    }
+
+    private User authenticate(String login, String password) throws IllegalCredentialsException, UserNotFoundException {
         if (isBlank(login) || isBlank(password)) {
             throw new IllegalCredentialsException("Логин или пароль не представлены");
         }
@@ -73,23 +171,161 @@ public class AuthService {
             throw new IllegalCredentialsException("Неправильный пароль");
         }
 
-        final User user;
-        if (!users.containsKey(login)) {
-            user = new User(login, storedHash);
-            user.setWallet(walletRepository.loadWallet(login));
-            users.put(login, user);
-        } else {
-            user = users.get(login);
-            user.setWallet(walletRepository.loadWallet(login));
-        }
-        return user;
+        return resolveUser(login, storedHash);
     }
 
     public User findUser(String login) {
-        return users.get(login);
+        final var passwordHash = credentials.get(login);
+        if (passwordHash == null) {
+            return null;
+        }
+        return resolveUser(login, passwordHash);
     }
 
     public Map<String, User> getAllUsers() {
         return users;
     }
+
+    public UserCacheStats getCacheStats() {
+        return new UserCacheStats(cacheHits.get(), cacheMisses.get(), cacheEvictions.get(), users.size(), userCacheCapacity);
+    }
+
+    private User resolveUser(String login, String passwordHash) {
+        final var cached = residentUser(login, passwordHash);
+        if (cached != null) {
+            cacheHits.incrementAndGet();
+            persistEvictedUsers();
+            return cached;
+        }
+
+        // the wallet is read without holding the cache monitor, a concurrent loader of the same login wins the race
+        cacheMisses.incrementAndGet();
+        final var loaded = new User(login, passwordHash);
+        loaded.setWallet(walletLocks.callLocked(login, () -> {
+            final var parked = offHeapWallets.take(login);
+            if (parked == null) {
+                return walletRepository.loadWallet(login);
+            }
+            walletRepository.adoptWallet(login, parked);
+            return parked;
+        }));
+
+        final User user;
+        synchronized (users) {
+            final var concurrentlyLoaded = residentUser(login, passwordHash);
+            if (concurrentlyLoaded != null) {
+                user = concurrentlyLoaded;
+            } else {
+                users.put(login, loaded);
+                user = loaded;
+            }
+        }
+        persistEvictedUsers();
+        return user;
+    }
+
+    // The user in the cache, or the evicted one, which goes back to the cache: the very user if some caller still holds
+    // it, otherwise a new one with its wallet, as long as that wallet is not parked yet. null if neither.
+    private User residentUser(String login, String passwordHash) {
+        synchronized (users) {
+            final var resident = users.get(login);
+            if (resident != null) {
+                return resident;
+            }
+
+            final var detached = detachedUsers.remove(login);
+            if (detached == null) {
+                return null;
+            }
+            var user = detached.get();
+            if (user == null) {
+                user = new User(login, passwordHash);
+                user.setWallet(detached.wallet);
+            }
+            users.put(login, user);
+            return user;
+        }
+    }
+
+    // evicted wallets are saved outside the cache monitor: saving takes the wallet lock, which must never be
+    // acquired while holding the monitor
+    private void persistEvictedUsers() {
+        User evicted;
+        while ((evicted = evictedUsers.poll()) != null) {
+            final var user = evicted;
+            walletLocks.runLocked(user.getLogin(), () -> walletRepository.saveWallet(user));
+        }
+        parkReleasedUsers();
+    }
+
+    // An evicted user no caller holds any more cannot be changed through a handle kept somewhere, so its wallet is
+    // parked off the heap and the storage lets go of what it keeps for it. The wallet lock orders parking with a
+    // concurrent load of the same login, which takes the parked copy then.
+    private void parkReleasedUsers() {
+        DetachedUser released;
+        while ((released = (DetachedUser) releasedUsers.poll()) != null) {
+            final var detached = released;
+            walletLocks.runLocked(detached.login, () -> {
+                synchronized (users) {
+                    if (!detachedUsers.remove(detached.login, detached)) {
+                        return; // back in the cache
+                    }
+                }
+                walletRepository.forgetWallet(detached.login);
+                // an unsaved wallet is never released: write-behind holds its user until the save succeeds
+                if (detached.wallet.isPersisted()) {
+                    offHeapWallets.park(detached.login, detached.wallet);
+                }
+            });
+        }
+    }
+
+    private void registerCacheMeters() {
+        FunctionCounter.builder("auth.user-cache.hits", cacheHits, AtomicLong::get).register(Metrics.globalRegistry);
+        FunctionCounter.builder("auth.user-cache.misses", cacheMisses, AtomicLong::get).register(Metrics.globalRegistry);
+        FunctionCounter.builder("auth.user-cache.evictions", cacheEvictions, AtomicLong::get).register(Metrics.globalRegistry);
+        Gauge.builder("auth.user-cache.resident", users, Map::size).register(Metrics.globalRegistry);
+        Gauge.builder("auth.users.registered", credentials, Map::size).register(Metrics.globalRegistry);
+    }
+
+    private static Timer loginTimer(String outcome) {
+        return Timer.builder("auth.login")
+            .tag("outcome", outcome)
+            .publishPercentiles(0.5, 0.95, 0.99)
+            .register(Metrics.globalRegistry);
+    }
+
+    // LRU by access order: the least recently used wallet is persisted and dropped once the capacity is exceeded
+    private final class UserCache extends LinkedHashMap<String, User> {
+        private final int capacity;
+
+        private UserCache(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, User> eldest) {
+            if (size() <= capacity) {
+                return false;
+            }
+
+            evictedUsers.add(eldest.getValue());
+            detachedUsers.put(eldest.getKey(), new DetachedUser(eldest.getValue(), releasedUsers));
+            cacheEvictions.incrementAndGet();
+            return true;
+        }
+    }
+
+    // the wallet is held here until it is parked, after the user itself has been collected
+    private static final class DetachedUser extends WeakReference<User> {
+        private final String login;
+        private final Wallet wallet;
+
+        private DetachedUser(User user, ReferenceQueue<User> queue) {
+            super(user, queue);
+            this.login = user.getLogin();
+            this.wallet = user.getWallet();
+        }
+    }
 }
@@ -0,0 +1,198 @@
+package com.mephi.skillfactory.oop.finance.manager.service.auth;
+
+import com.mephi.skillfactory.oop.finance.manager.domain.Wallet;
+import com.mephi.skillfactory.oop.finance.manager.repository.codec.BinaryWalletCodec;
+import com.mephi.skillfactory.oop.finance.manager.repository.codec.WalletCodec;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Off-heap tier behind the user cache: a wallet evicted from the cache (and saved) is parked here in the binary wallet
+// format in a direct buffer, outside the Java heap, so idle users' histories do not add to GC work. Only wallets of
+// users no caller holds any more are parked, a held user comes back to the cache itself (see AuthService).
+// Wallets are encoded straight into one direct scratch buffer of app.user-cache.off-heap.max-wallet-size and copied to
+// a buffer of their own size from there, so parking never copies a wallet on the heap. The next access
+// rehydrates the wallet from the buffer instead of reading its file. Parked copies are dropped least recently parked
+// first above app.user-cache.off-heap.capacity, their wallets are then read from the storage again; a capacity of 0
+// turns the tier off. The buffers are freed by the GC once dropped.
+@Component
+public class OffHeapWalletStore {
+    private final WalletCodec codec = new BinaryWalletCodec();
+    private final long capacity;
+    private final long maxWalletSize;
+    private final Map<String, ByteBuffer> parkedWallets = new LinkedHashMap<>(); // guarded by this
+    private long parkedBytes; // guarded by this
+    private final Object encoding = new Object();
+    private ByteBuffer scratch; // guarded by encoding, allocated on first use
+    private final Counter parked = counter("auth.user-cache.off-heap.parked");
+    private final Counter rehydrated = counter("auth.user-cache.off-heap.rehydrated");
+    private final Counter dropped = counter("auth.user-cache.off-heap.dropped");
+
+    public OffHeapWalletStore(@Value("${app.user-cache.off-heap.capacity}") DataSize capacity,
+                              @Value("${app.user-cache.off-heap.max-wallet-size}") DataSize maxWalletSize) {
+        this.capacity = Math.max(0, capacity.toBytes());
+        this.maxWalletSize = Math.min(this.capacity, maxWalletSize.toBytes());
+        Gauge.builder("auth.user-cache.off-heap.bytes", this, OffHeapWalletStore::parkedBytes)
+            .baseUnit("bytes")
+            .register(Metrics.globalRegistry);
+        Gauge.builder("auth.user-cache.off-heap.wallets", this, OffHeapWalletStore::parkedWallets).register(Metrics.globalRegistry);
+    }
+
+    // called under the owner's wallet lock once the wallet is saved, so the parked copy is what the storage holds
+    public void park(String login, Wallet wallet) {
+        if (capacity == 0) {
+            return;
+        }
+
+        final ByteBuffer buffer;
+        synchronized (encoding) {
+            if (scratch == null) {
+                scratch = ByteBuffer.allocateDirect((int) Math.min(Integer.MAX_VALUE, maxWalletSize));
+            }
+            scratch.clear();
+            try {
+                codec.write(wallet, new ByteBufferOutputStream(scratch));
+            } catch (BufferFullException e) {
+                // too large to be worth the space of the smaller ones, read from the storage next time
+                discard(login);
+                return;
+            } catch (IOException e) {
+                System.err.println("Не удалось выгрузить кошелек пользователя %s из памяти: %s".formatted(login, e.getMessage()));
+                discard(login);
+                return;
+            }
+            buffer = ByteBuffer.allocateDirect(scratch.flip().remaining())
+                .put(scratch)
+                .flip();
+        }
+        synchronized (this) {
+            remove(login);
+            parkedWallets.put(login, buffer);
+            parkedBytes += buffer.capacity();
+            final var eldest = parkedWallets.values().iterator();
+            while (parkedBytes > capacity) {
+                parkedBytes -= eldest.next().capacity();
+                eldest.remove();
+                dropped.increment();
+            }
+        }
+        parked.increment();
+    }
+
+    // the parked wallet, which leaves the tier, or null if the wallet is to be read from the storage
+    public Wallet take(String login) {
+        final ByteBuffer buffer;
+        synchronized (this) {
+            buffer = remove(login);
+        }
+        if (buffer == null) {
+            return null;
+        }
+
+        try (final var in = new ByteBufferInputStream(buffer)) {
+            final var wallet = codec.read(in);
+            wallet.markPersisted(wallet.getVersion());
+            rehydrated.increment();
+            return wallet;
+        } catch (IOException e) {
+            System.err.println("Не удалось восстановить кошелек пользователя %s из памяти: %s".formatted(login, e.getMessage()));
+            return null;
+        }
+    }
+
+    // for a wallet changed after it was parked: the copy no longer matches it
+    public synchronized void discard(String login) {
+        remove(login);
+    }
+
+    public synchronized long parkedBytes() {
+        return parkedBytes;
+    }
+
+    public synchronized int parkedWallets() {
+        return parkedWallets.size();
+    }
+
+    // called with the monitor held
+    private ByteBuffer remove(String login) {
+        final var buffer = parkedWallets.remove(login);
+        if (buffer != null) {
+            parkedBytes -= buffer.capacity();
+        }
+        return buffer;
+    }
+
+    private static Counter counter(String name) {
+        return Counter.builder(name).register(Metrics.globalRegistry);
+    }
+
+    private static final class ByteBufferOutputStream extends OutputStream {
+        private final ByteBuffer buffer;
+
+        private ByteBufferOutputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (!buffer.hasRemaining()) {
+                throw new BufferFullException();
+            }
+            buffer.put((byte) b);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            if (length > buffer.remaining()) {
+                throw new BufferFullException();
+            }
+            buffer.put(bytes, offset, length);
+        }
+    }
+
+    private static final class BufferFullException extends IOException {
+        private BufferFullException() {
+            super("wallet exceeds app.user-cache.off-heap.max-wallet-size");
+        }
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining()
+                ? buffer.get() & 0xFF
+                : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            final var count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+    }
+}
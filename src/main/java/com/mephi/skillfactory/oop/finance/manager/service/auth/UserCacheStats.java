@@ -0,0 +1,4 @@
+package com.mephi.skillfactory.oop.finance.manager.service.auth;
+
+public record UserCacheStats(long hits, long misses, long evictions, int resident, int capacity) {
+}
@@ -0,0 +1,48 @@
+package com.mephi.skillfactory.oop.finance.manager.service.wallet;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+
+// Calendar buckets of the period report, weeks start on Monday
+public enum BucketSize {
+    DAY {
+        @Override
+        public LocalDate start(LocalDate date) {
+            return date;
+        }
+
+        @Override
+        public LocalDate next(LocalDate start) {
+            return start.plusDays(1);
+        }
+    },
+    WEEK {
+        @Override
+        public LocalDate start(LocalDate date) {
+            return date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+        }
+
+        @Override
+        public LocalDate next(LocalDate start) {
+            return start.plusWeeks(1);
+        }
+    },
+    MONTH {
+        @Override
+        public LocalDate start(LocalDate date) {
+            return date.withDayOfMonth(1);
+        }
+
+        @Override
+        public LocalDate next(LocalDate start) {
+            return start.plusMonths(1);
+        }
+    };
+
+    // first day of the bucket the date falls into
+    public abstract LocalDate start(LocalDate date);
+
+    // first day of the bucket following the one starting at the given day
+    public abstract LocalDate next(LocalDate start);
+}
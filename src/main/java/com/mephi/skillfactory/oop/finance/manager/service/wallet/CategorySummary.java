@@ -0,0 +1,12 @@
+package com.mephi.skillfactory.oop.finance.manager.service.wallet;
+
+import jakarta.annotation.Nullable;
+
+// Figures of one category for the 'summary-by-categories' command, budget is null if the category has none
+public record CategorySummary(String category, boolean hasOperations, double income, double expense,
+                              @Nullable WalletSummary.BudgetSummary budget) {
+
+    public boolean isEmpty() {
+        return !hasOperations && budget == null;
+    }
+}
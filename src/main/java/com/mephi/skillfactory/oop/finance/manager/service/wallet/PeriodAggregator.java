@@ -0,0 +1,147 @@
+package com.mephi.skillfactory.oop.finance.manager.service.wallet;
+
+import com.mephi.skillfactory.oop.finance.manager.domain.CategorySums;
+import com.mephi.skillfactory.oop.finance.manager.domain.OperationLog;
+import com.mephi.skillfactory.oop.finance.manager.domain.Wallet;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.List;
+
+import static com.mephi.skillfactory.oop.finance.manager.domain.enumeration.OperationType.EXPENSE;
+import static com.mephi.skillfactory.oop.finance.manager.domain.enumeration.OperationType.INCOME;
+
+// Sums of the operations of a period. A scan of at least app.aggregation.parallel-threshold operations is split into
+// chunks of app.aggregation.chunk-size that are summed on the common fork-join pool into partial sums, which are then
+// merged. The caller holds the wallet lock for the whole call, so the wallet does not change while the chunks are read.
+@Component
+public class PeriodAggregator {
+    private final int parallelThreshold;
+    private final int chunkSize;
+    private final Counter parallelScans = Counter.builder("wallet.aggregation.parallel").register(Metrics.globalRegistry);
+
+    public PeriodAggregator(@Value("${app.aggregation.parallel-threshold}") int parallelThreshold,
+                            @Value("${app.aggregation.chunk-size}") int chunkSize) {
+        this.parallelThreshold = Math.max(1, parallelThreshold);
+        this.chunkSize = Math.max(1, chunkSize);
+    }
+
+    Totals summarize(Wallet wallet, OperationLog.Cursor operations) {
+        if (!isParallel(operations)) {
+            return sum(wallet, operations);
+        }
+
+        parallelScans.increment();
+        return operations.split(chunkSize).parallelStream()
+            .map(chunk -> sum(wallet, chunk))
+            .reduce(Totals::merge)
+            .orElseGet(() -> new Totals(wallet));
+    }
+
+    // adds the operations to the buckets starting at the given days, the operations come in time order
+    void bucket(OperationLog.Cursor operations, List<LocalDate> starts, ZoneId zone, long[] incomes, long[] expenses) {
+        if (!isParallel(operations)) {
+            sumByBucket(operations, starts, zone, incomes, expenses);
+            return;
+        }
+
+        parallelScans.increment();
+        final var partial = operations.split(chunkSize).parallelStream()
+            .map(chunk -> {
+                final var sums = new long[2][starts.size()];
+                sumByBucket(chunk, starts, zone, sums[0], sums[1]);
+                return sums;
+            })
+            .reduce((left, right) -> {
+                for (var i = 0; i < starts.size(); i++) {
+                    left[0][i] += right[0][i];
+                    left[1][i] += right[1][i];
+                }
+                return left;
+            });
+        partial.ifPresent(sums -> {
+            for (var i = 0; i < starts.size(); i++) {
+                incomes[i] += sums[0][i];
+                expenses[i] += sums[1][i];
+            }
+        });
+    }
+
+    private boolean isParallel(OperationLog.Cursor operations) {
+        return operations.remaining() >= parallelThreshold;
+    }
+
+    private static Totals sum(Wallet wallet, OperationLog.Cursor operations) {
+        final var totals = new Totals(wallet);
+        while (operations.next()) {
+            if (INCOME.equals(operations.type())) {
+                totals.income += operations.amountMinor();
+                totals.incomeByCategory.add(operations.category(), operations.amountMinor());
+            } else if (EXPENSE.equals(operations.type())) {
+                totals.expense += operations.amountMinor();
+                totals.expenseByCategory.add(operations.category(), operations.amountMinor());
+            }
+        }
+        return totals;
+    }
+
+    private static void sumByBucket(OperationLog.Cursor operations, List<LocalDate> starts, ZoneId zone, long[] incomes,
+                                    long[] expenses) {
+        // operations come in time order, so the current bucket only ever moves forward
+        var bucket = 0;
+        while (operations.next()) {
+            final var date = LocalDate.ofInstant(operations.timestamp(), zone);
+            while (bucket + 1 < starts.size() && !starts.get(bucket + 1).isAfter(date)) {
+                bucket++;
+            }
+            if (INCOME.equals(operations.type())) {
+                incomes[bucket] += operations.amountMinor();
+            } else if (EXPENSE.equals(operations.type())) {
+                expenses[bucket] += operations.amountMinor();
+            }
+        }
+    }
+
+    // income and expense in minor units
+    static final class Totals {
+        private long income;
+        private long expense;
+        private final CategorySums incomeByCategory;
+        private final CategorySums expenseByCategory;
+
+        private Totals(Wallet wallet) {
+            this.incomeByCategory = wallet.newCategorySums();
+            this.expenseByCategory = wallet.newCategorySums();
+        }
+
+        long income() {
+            return income;
+        }
+
+        long expense() {
+            return expense;
+        }
+
+        CategorySums incomeByCategory() {
+            return incomeByCategory;
+        }
+
+        CategorySums expenseByCategory() {
+            return expenseByCategory;
+        }
+
+        private Totals merge(Totals other) {
+            income += other.income;
+            expense += other.expense;
+            incomeByCategory.addAll(other.incomeByCategory);
+            expenseByCategory.addAll(other.expenseByCategory);
+            return this;
+        }
+    }
+}
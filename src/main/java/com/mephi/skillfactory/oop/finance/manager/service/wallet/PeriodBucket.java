@@ -0,0 +1,7 @@
+package com.mephi.skillfactory.oop.finance.manager.service.wallet;
+
+import java.time.LocalDate;
+
+// One row of the period report: the days from..to inclusive, clipped to the requested period
+public record PeriodBucket(LocalDate from, LocalDate to, double income, double expense) {
+}
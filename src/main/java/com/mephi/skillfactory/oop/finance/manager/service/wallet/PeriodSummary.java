@@ -0,0 +1,16 @@
+package com.mephi.skillfactory.oop.finance.manager.service.wallet;
+
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Income and expense of the days from..to inclusive, categories are sorted by name
+public record PeriodSummary(LocalDate from, LocalDate to, double income, double expense, Map<String, Double> incomeByCategory,
+                            Map<String, Double> expenseByCategory) {
+
+    public PeriodSummary {
+        incomeByCategory = Collections.unmodifiableMap(new TreeMap<>(incomeByCategory));
+        expenseByCategory = Collections.unmodifiableMap(new TreeMap<>(expenseByCategory));
+    }
+}
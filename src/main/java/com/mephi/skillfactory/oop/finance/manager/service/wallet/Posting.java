@@ -0,0 +1,13 @@
+package com.mephi.skillfactory.oop.finance.manager.service.wallet;
+
+import com.mephi.skillfactory.oop.finance.manager.domain.enumeration.OperationType;
+
+import java.util.Objects;
+
+// A single line of a batch posting (e.g. a bank statement row)
+public record Posting(OperationType type, double amount, String category, String description) {
+
+    public Posting {
+        Objects.requireNonNull(type, "type");
+    }
+}
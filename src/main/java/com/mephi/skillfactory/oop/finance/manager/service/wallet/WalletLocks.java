@@ -0,0 +1,74 @@
+package com.mephi.skillfactory.oop.finance.manager.service.wallet;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+// Striped per-user locks: every wallet mutation runs under the stripe of its owner's login.
+// Operations touching two wallets take both stripes in ascending stripe order, so they never deadlock.
+@Component
+public class WalletLocks {
+    private final ReentrantLock[] stripes;
+
+    public WalletLocks(@Value("${app.concurrency.lock-stripes}") int stripesCount) {
+        stripes = new ReentrantLock[Math.max(1, stripesCount)];
+        for (var i = 0; i < stripes.length; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    public <E extends Exception> void runLocked(String login, LockedAction<E> action) throws E {
+        final var lock = stripes[stripeIndex(login)];
+        lock.lock();
+        try {
+            action.run();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public <E extends Exception> void runLocked(String firstLogin, String secondLogin, LockedAction<E> action) throws E {
+        final var firstIndex = stripeIndex(firstLogin);
+        final var secondIndex = stripeIndex(secondLogin);
+        if (firstIndex == secondIndex) {
+            runLocked(firstLogin, action);
+            return;
+        }
+
+        final var outer = stripes[Math.min(firstIndex, secondIndex)];
+        final var inner = stripes[Math.max(firstIndex, secondIndex)];
+        outer.lock();
+        try {
+            inner.lock();
+            try {
+                action.run();
+            } finally {
+                inner.unlock();
+            }
+        } finally {
+            outer.unlock();
+        }
+    }
+
+    public <T> T callLocked(String login, Supplier<T> supplier) {
+        final var lock = stripes[stripeIndex(login)];
+        lock.lock();
+        try {
+            return supplier.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int stripeIndex(String login) {
+        final var hash = login.hashCode();
+        return ((hash ^ (hash >>> 16)) & Integer.MAX_VALUE) % stripes.length;
+    }
+
+    @FunctionalInterface
+    public interface LockedAction<E extends Exception> {
+        void run() throws E;
+    }
+}
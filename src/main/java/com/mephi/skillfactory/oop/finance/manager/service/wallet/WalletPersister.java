@@ -0,0 +1,213 @@
+package com.mephi.skillfactory.oop.finance.manager.service.wallet;
+
+import com.mephi.skillfactory.oop.finance.manager.concurrent.IoExecutor;
+import com.mephi.skillfactory.oop.finance.manager.domain.User;
+import com.mephi.skillfactory.oop.finance.manager.repository.WalletRepository;
+import com.mephi.skillfactory.oop.finance.manager.service.auth.OffHeapWalletStore;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.annotation.PreDestroy;
+
+// Write-behind persistence: changed wallets are remembered (once per login, however often they change) and saved on a
+// virtual thread at most app.write-behind.max-delay after the first change, or as soon as app.write-behind.batch-size
+// wallets are waiting. Every save takes the owner's wallet lock, so it writes the wallet as it is at that moment.
+// The wallets of a batch are saved in parallel (see IoExecutor) and committed as a group: the storage makes all its saves
+// durable with one sync after the last one. A wallet the storage failed to save or to sync stays waiting for the next flush.
+@Component
+public class WalletPersister {
+    private final WalletRepository walletRepository;
+    private final WalletLocks walletLocks;
+    private final IoExecutor ioExecutor;
+    private final OffHeapWalletStore offHeapWallets;
+    private final Duration maxDelay;
+    private final int batchSize;
+    private final Map<String, User> dirtyUsers = new LinkedHashMap<>();
+    private final ScheduledExecutorService executor =
+        Executors.newSingleThreadScheduledExecutor(Thread.ofVirtual().name("wallet-write-behind").factory());
+    private final Counter flushedWallets = Counter.builder("wallet.write-behind.flushed").register(Metrics.globalRegistry);
+    private ScheduledFuture<?> scheduledFlush;
+    private boolean closed;
+
+    public WalletPersister(WalletRepository walletRepository, WalletLocks walletLocks, IoExecutor ioExecutor,
+                           OffHeapWalletStore offHeapWallets, @Value("${app.write-behind.max-delay}") Duration maxDelay,
+                           @Value("${app.write-behind.batch-size}") int batchSize) {
+        this.walletRepository = walletRepository;
+        this.walletLocks = walletLocks;
+        this.ioExecutor = ioExecutor;
+        this.offHeapWallets = offHeapWallets;
+        this.maxDelay = maxDelay;
+        this.batchSize = Math.max(1, batchSize);
+        Gauge.builder("wallet.write-behind.pending", this, WalletPersister::pending).register(Metrics.globalRegistry);
+    }
+
+    public void markDirty(User user) {
+        // a copy parked off the heap before the change is out of date
+        offHeapWallets.discard(user.getLogin());
+        synchronized (this) {
+            if (!closed) {
+                dirtyUsers.put(user.getLogin(), user);
+                if (dirtyUsers.size() >= batchSize) {
+                    schedule(0);
+                } else if (scheduledFlush == null) {
+                    schedule(maxDelay.toMillis());
+                }
+                return;
+            }
+        }
+
+        // after shutdown nothing is left to flush later, the wallet is saved right away
+        save(user);
+    }
+
+    // saves every waiting wallet on the calling thread and returns how many were saved
+    public int flush() {
+        var flushed = 0;
+        final var failed = new ArrayList<User>();
+        try {
+            List<User> batch;
+            while (!(batch = takeBatch()).isEmpty()) {
+                flushed += flushBatch(batch, failed);
+            }
+        } finally {
+            // retried by the next flush only, not by this one: the storage is likely to fail the same way right away
+            failed.forEach(this::requeue);
+        }
+        return flushed;
+    }
+
+    // saves the user's wallet only if it has changes waiting, returns whether it did
+    public boolean flush(User user) {
+        synchronized (this) {
+            if (dirtyUsers.remove(user.getLogin()) == null) {
+                return false;
+            }
+        }
+        return save(user);
+    }
+
+    public synchronized int pending() {
+        return dirtyUsers.size();
+    }
+
+    @PreDestroy
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            System.err.println("Ошибка сохранения кошельков при завершении: " + e.getMessage());
+        }
+        executor.shutdown();
+        try {
+            final var ignored = executor.awaitTermination(maxDelay.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // called with the monitor held
+    private void schedule(long delayMillis) {
+        if (scheduledFlush != null) {
+            if (delayMillis > 0 || scheduledFlush.getDelay(TimeUnit.MILLISECONDS) <= 0) {
+                return;
+            }
+            scheduledFlush.cancel(false);
+        }
+        scheduledFlush = executor.schedule(this::flushScheduled, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void flushScheduled() {
+        synchronized (this) {
+            scheduledFlush = null;
+        }
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            System.err.println("Ошибка фонового сохранения кошельков: " + e.getMessage());
+        }
+    }
+
+    // Returns how many wallets of the batch were committed, the others are added to the failed ones, also when a save or
+    // the sync throws. A wallet is persisted at the version it was written at once the group sync has made it durable.
+    private int flushBatch(List<User> batch, List<User> failed) {
+        final var committed = new HashSet<String>();
+        try {
+            final var writtenVersions = new ConcurrentHashMap<String, Long>();
+            ioExecutor.forEach(batch, user -> walletLocks.runLocked(user.getLogin(), () -> {
+                final var version = user.getWallet().getVersion();
+                if (walletRepository.saveWalletDeferringSync(user)) {
+                    writtenVersions.put(user.getLogin(), version);
+                }
+            }));
+            writtenVersions.keySet().removeAll(walletRepository.syncSavedWallets());
+            for (final var user : batch) {
+                final var version = writtenVersions.get(user.getLogin());
+                if (version != null) {
+                    walletLocks.runLocked(user.getLogin(), () -> user.getWallet().markPersisted(version));
+                    committed.add(user.getLogin());
+                }
+            }
+        } finally {
+            batch.stream()
+                .filter(user -> !committed.contains(user.getLogin()))
+                .forEach(failed::add);
+            flushedWallets.increment(committed.size());
+        }
+        return committed.size();
+    }
+
+    private synchronized List<User> takeBatch() {
+        final var batch = new ArrayList<User>(Math.min(batchSize, dirtyUsers.size()));
+        final var iterator = dirtyUsers.values().iterator();
+        while (iterator.hasNext() && batch.size() < batchSize) {
+            batch.add(iterator.next());
+            iterator.remove();
+        }
+        return batch;
+    }
+
+    // the repositories report failures themselves and leave the wallet unsaved, it is then kept waiting
+    private boolean save(User user) {
+        final var saved = walletLocks.callLocked(user.getLogin(), () -> {
+            walletRepository.saveWallet(user);
+            return user.getWallet().isPersisted();
+        });
+        if (saved) {
+            flushedWallets.increment();
+        } else {
+            requeue(user);
+        }
+        return saved;
+    }
+
+    // a newer change of the wallet may have put the user back already
+    private synchronized void requeue(User user) {
+        dirtyUsers.putIfAbsent(user.getLogin(), user);
+        if (closed) {
+            // nothing flushes in the background any more, only an explicit flush() retries the wallet
+            System.err.println("Кошелек пользователя " + user.getLogin() + " не сохранен");
+        } else if (scheduledFlush == null) {
+            schedule(maxDelay.toMillis());
+        }
+    }
+}
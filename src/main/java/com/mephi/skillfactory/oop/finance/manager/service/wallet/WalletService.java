@@ -1,10 +1,14 @@
 package com.mephi.skillfactory.oop.finance.manager.service.wallet;
 
 import com.mephi.skillfactory.oop.finance.manager.domain.Budget;
+import com.mephi.skillfactory.oop.finance.manager.domain.Money;
 import com.mephi.skillfactory.oop.finance.manager.domain.Operation;
+import com.mephi.skillfactory.oop.finance.manager.domain.OperationLog;
 import com.mephi.skillfactory.oop.finance.manager.domain.User;
+import com.mephi.skillfactory.oop.finance.manager.domain.Wallet;
+import com.mephi.skillfactory.oop.finance.manager.domain.enumeration.BudgetPeriod;
 import com.mephi.skillfactory.oop.finance.manager.domain.enumeration.OperationType;
-import com.mephi.skillfactory.oop.finance.manager.repository.FileBasedWalletRepository;
+import com.mephi.skillfactory.oop.finance.manager.repository.WalletRepository;
 import com.mephi.skillfactory.oop.finance.manager.repository.exception.FileContentTypeMismatchException;
 import com.mephi.skillfactory.oop.finance.manager.service.AlertService;
 import com.mephi.skillfactory.oop.finance.manager.service.auth.AuthService;
@@ -12,20 +16,32 @@ import com.mephi.skillfactory.oop.finance.manager.service.exception.UserNotFound
 import com.mephi.skillfactory.oop.finance.manager.service.wallet.exception.AmountException;
 import com.mephi.skillfactory.oop.finance.manager.service.wallet.exception.BudgetException;
 import com.mephi.skillfactory.oop.finance.manager.service.wallet.exception.CategoryNotFoundException;
+import com.mephi.skillfactory.oop.finance.manager.service.wallet.exception.OperationTypeException;
+import com.mephi.skillfactory.oop.finance.manager.service.wallet.exception.PeriodException;
 import com.mephi.skillfactory.oop.finance.manager.service.wallet.exception.WalletImportSourceException;
 
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+
 import org.springframework.stereotype.Service;
 
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
 import jakarta.annotation.Nullable;
 import lombok.RequiredArgsConstructor;
 
+import static com.mephi.skillfactory.oop.finance.manager.domain.Wallet.WITHOUT_CATEGORY;
 import static com.mephi.skillfactory.oop.finance.manager.domain.enumeration.OperationType.EXPENSE;
 import static com.mephi.skillfactory.oop.finance.manager.domain.enumeration.OperationType.INCOME;
 import static org.apache.logging.log4j.util.Strings.isBlank;
@@ -33,56 +49,130 @@ import static org.apache.logging.log4j.util.Strings.isBlank;
 @Service
 @RequiredArgsConstructor
 public class WalletService {
-    private static final String WITHOUT_CATEGORY = "Без категории";
+    private static final String AMOUNT_OUT_OF_RANGE = "Сумма должна быть не больше %.0f".formatted(Money.MAX_AMOUNT);
+
     private final AuthService authService;
-    private final FileBasedWalletRepository walletRepository;
+    private final WalletRepository walletRepository;
     private final AlertService alertService;
+    private final WalletLocks walletLocks;
+    private final WalletPersister walletPersister;
+    private final PeriodAggregator periodAggregator;
+    private final Timer transferSuccessTimer = transferTimer("success");
+    private final Timer transferFailureTimer = transferTimer("failure");
 
     public void addIncome(User user, double amount, String category, String description) throws AmountException {
         validateAmount(amount);
         final var operation = new Operation(INCOME, amount, category, description, null, user.getLogin());
-        user.getWallet().addOperation(operation);
 
-        alertService.checkAlerts(user, operation, sumByOperationTypeAndCategory(user.getWallet().getOperations(), EXPENSE, null)
-            .getOrDefault(category, 0.0), totalIncome(user), totalExpense(user));
+        walletLocks.runLocked(user.getLogin(), () -> {
+            user.getWallet().addOperation(operation);
+            alertService.checkAlerts(user, operation, totalIncome(user), totalExpense(user));
+            walletPersister.markDirty(user);
+        });
     }
 
     public void addExpense(User user, double amount, String category, String description) throws AmountException {
         validateAmount(amount);
-        if (isBlank(category)) {
-            category = WITHOUT_CATEGORY;
+        final var expenseCategory = isBlank(category)
+            ? WITHOUT_CATEGORY
+            : category;
+        final var operation = new Operation(EXPENSE, amount, expenseCategory, description, user.getLogin(), null);
+
+        walletLocks.runLocked(user.getLogin(), () -> {
+            user.getWallet().addOperation(operation);
+            alertService.checkAlerts(user, operation, totalIncome(user), totalExpense(user));
+            walletPersister.markDirty(user);
+        });
+    }
+
+    // Validates the whole batch first, applies it in one pass, then runs alerts once per affected category and marks the wallet
+    // for saving once. Only incomes and expenses can be posted: a single posting of any other type rejects the whole batch
+    public void addOperations(User user, Collection<Posting> postings) throws AmountException, OperationTypeException {
+        final var login = user.getLogin();
+        final var operations = new ArrayList<Operation>(postings.size());
+        var lineNumber = 0;
+        for (final var posting : postings) {
+            lineNumber++;
+            if (!Money.isRepresentable(posting.amount())) {
+                throw new AmountException("Операция #%d: %s".formatted(lineNumber, AMOUNT_OUT_OF_RANGE));
+            }
+            if (Money.toMinor(posting.amount()) <= 0) {
+                throw new AmountException("Операция #%d: Сумма должна быть больше 0".formatted(lineNumber));
+            }
+
+            switch (posting.type()) {
+                case INCOME -> operations.add(new Operation(INCOME, posting.amount(), posting.category(), posting.description(),
+                    null, login));
+                case EXPENSE -> {
+                    final var category = isBlank(posting.category())
+                        ? WITHOUT_CATEGORY
+                        : posting.category();
+                    operations.add(new Operation(EXPENSE, posting.amount(), category, posting.description(), login, null));
+                }
+                default -> throw new OperationTypeException(
+                    "Операция #%d: тип %s нельзя провести пакетом".formatted(lineNumber, posting.type()));
+            }
+        }
+        if (operations.isEmpty()) {
+            return;
         }
-        final var operation = new Operation(EXPENSE, amount, category, description, user.getLogin(), null);
-        user.getWallet().addOperation(operation);
 
-        alertService.checkAlerts(user, operation, sumByOperationTypeAndCategory(user.getWallet().getOperations(), EXPENSE, null)
-            .getOrDefault(category, 0.0), totalIncome(user), totalExpense(user));
+        walletLocks.runLocked(login, () -> {
+            final var wallet = user.getWallet();
+            final var expenseCategories = new LinkedHashSet<String>();
+            for (final var operation : operations) {
+                wallet.addOperation(operation);
+                if (EXPENSE.equals(operation.getType())) {
+                    expenseCategories.add(operation.getCategory());
+                }
+            }
+
+            expenseCategories.forEach(category -> alertService.checkBudgetAlert(user, category));
+            alertService.checkBalanceAlert(wallet.getTotalIncome(), wallet.getTotalExpense());
+
+            walletPersister.markDirty(user);
+        });
     }
 
     public void renameCategory(User user, String oldCategoryName, String newCategoryName) throws CategoryNotFoundException {
-        final var operations = user.getWallet().getOperations();
-        final var budgets = user.getWallet().getBudgets();
-
-        final var operationsWithCategoryToRename = operations.stream()
-            .filter(operation -> operation.getCategory().equals(oldCategoryName))
-            .toList();
-        final var categoryBudget = Optional.ofNullable(budgets.remove(oldCategoryName));
-
-        if (operationsWithCategoryToRename.isEmpty() && categoryBudget.isEmpty()) {
-            throw new CategoryNotFoundException("Категория %s не найдена".formatted(oldCategoryName));
-        }
-
-        operationsWithCategoryToRename
-            .forEach(operation -> operation.setCategory(newCategoryName));
-        categoryBudget
-            .ifPresent(budget -> {
-                budget.setCategory(newCategoryName);
-                budgets.put(newCategoryName, budget);
-            });
+        walletLocks.runLocked(user.getLogin(), () -> {
+            final var wallet = user.getWallet();
+            final var budgets = wallet.getBudgets();
+
+            final var hasOperationsWithCategory = wallet.hasOperationsWithCategory(oldCategoryName);
+            final var categoryBudget = Optional.ofNullable(budgets.remove(oldCategoryName));
+
+            if (!hasOperationsWithCategory && categoryBudget.isEmpty()) {
+                throw new CategoryNotFoundException("Категория %s не найдена".formatted(oldCategoryName));
+            }
+
+            wallet.renameCategory(oldCategoryName, newCategoryName);
+            categoryBudget
+                .ifPresent(budget -> {
+                    budget.setCategory(newCategoryName);
+                    budgets.put(newCategoryName, budget);
+                });
+            wallet.markModified();
+            walletPersister.markDirty(user);
+        });
     }
 
     public void transfer(String fromLogin, String toLogin, double amount, String category,
                          String description) throws AmountException, UserNotFoundException {
+        final var sample = Timer.start();
+        var transferred = false;
+        try {
+            doTransfer(fromLogin, toLogin, amount, category, description);
+            transferred = true;
+        } finally {
+            sample.stop(transferred
+                ? transferSuccessTimer
+                : transferFailureTimer);
+        }
+    }
+
+    private void doTransfer(String fromLogin, String toLogin, double amount, String category,
+                            String description) throws AmountException, UserNotFoundException {
 
         validateAmount(amount);
 
@@ -92,37 +182,56 @@ public class WalletService {
         validateUser(toUser, "Получатель не найден");
 
         final var expense = new Operation(EXPENSE, amount, category, description, fromLogin, toLogin);
-        fromUser.getWallet().addOperation(expense);
         final var income = new Operation(INCOME, amount, category, description, fromLogin, toLogin);
-        toUser.getWallet().addOperation(income);
 
-        saveUserWallet(fromUser);
-        saveUserWallet(toUser);
+        walletLocks.runLocked(fromLogin, toLogin, () -> {
+            fromUser.getWallet().addOperation(expense);
+            toUser.getWallet().addOperation(income);
+
+            walletPersister.markDirty(fromUser);
+            walletPersister.markDirty(toUser);
 
-        alertService.checkAlerts(fromUser, expense, sumByOperationTypeAndCategory(fromUser.getWallet().getOperations(), EXPENSE, null)
-            .getOrDefault(category, 0.0), totalIncome(fromUser), totalExpense(fromUser));
-        alertService.checkAlerts(toUser, income, sumByOperationTypeAndCategory(toUser.getWallet().getOperations(), EXPENSE, null)
-            .getOrDefault(category, 0.0), totalIncome(toUser), totalExpense(toUser));
+            alertService.checkAlerts(fromUser, expense, totalIncome(fromUser), totalExpense(fromUser));
+            alertService.checkAlerts(toUser, income, totalIncome(toUser), totalExpense(toUser));
+        });
     }
 
     public void setBudget(User user, String category, double limit) throws BudgetException {
+        setBudget(user, category, limit, BudgetPeriod.ALL_TIME, 0);
+    }
+
+    public void setBudget(User user, String category, double limit, BudgetPeriod period, int rollingDays) throws BudgetException {
         if (isBlank(category)) {
             throw new BudgetException("Категория не представлена");
         }
+        if (BudgetPeriod.ROLLING.equals(period) && (rollingDays < 1 || rollingDays > Budget.MAX_ROLLING_DAYS)) {
+            throw new BudgetException("Длина скользящего окна должна быть от 1 до %d дней".formatted(Budget.MAX_ROLLING_DAYS));
+        }
+
+        validateLimit(limit);
 
-        final var budget = new Budget(category, limit);
-        user.getWallet().getBudgets().put(category, budget);
+        final var budget = new Budget(category, limit, period, rollingDays);
+        walletLocks.runLocked(user.getLogin(), () -> {
+            user.getWallet().getBudgets().put(category, budget);
+            user.getWallet().markModified();
+            walletPersister.markDirty(user);
+        });
     }
 
     public void changeBudgetLimit(User user, String category, double limit) throws BudgetException {
         if (isBlank(category)) {
             throw new BudgetException("Категория не представлена");
         }
+        validateLimit(limit);
 
-        final var budget = Optional.ofNullable(user.getWallet().getBudgets().get(category))
-            .orElseThrow(() -> new BudgetException("Бюджет для категории %s не найден".formatted(category)));
+        walletLocks.runLocked(user.getLogin(), () -> {
+            final var budget = Optional.ofNullable(user.getWallet().getBudgets().get(category))
+                .orElseThrow(() -> new BudgetException("Бюджет для категории %s не найден".formatted(category)));
 
-        budget.setLimit(limit);
+            budget.setLimit(limit);
+            user.getWallet().markModified();
+            walletPersister.markDirty(user);
+        });
     }
 
 
@@ -131,47 +240,163 @@ public class WalletService {
             throw new BudgetException("Категория не представлена");
         }
 
-        Optional.ofNullable(user.getWallet().getBudgets().remove(category))
-            .orElseThrow(() -> new BudgetException("Бюджет для категории %s не найден".formatted(category)));
+        walletLocks.runLocked(user.getLogin(), () -> {
+            Optional.ofNullable(user.getWallet().getBudgets().remove(category))
+                .orElseThrow(() -> new BudgetException("Бюджет для категории %s не найден".formatted(category)));
+            user.getWallet().markModified();
+            walletPersister.markDirty(user);
+        });
     }
 
     public double totalIncome(User user) {
-        return user.getWallet().getOperations().stream()
-            .filter(operation -> INCOME.equals(operation.getType()))
-            .mapToDouble(Operation::getAmount)
-            .sum();
+        return walletLocks.callLocked(user.getLogin(), () -> user.getWallet().getTotalIncome());
     }
 
     public double totalExpense(User user) {
-        return user.getWallet().getOperations().stream()
-            .filter(operation -> EXPENSE.equals(operation.getType()))
-            .mapToDouble(Operation::getAmount)
-            .sum();
-    }
-
-    public Map<String, Double> sumByOperationTypeAndCategory(List<Operation> operations, OperationType operationType, @Nullable String category) {
-        return operations.stream()
-            .filter(operation -> {
-                final var matchesOpType = operationType.equals(operation.getType());
-                return category == null
-                    ? matchesOpType
-                    : matchesOpType && category.equals(operation.getCategory());
-            })
-            .collect(Collectors.groupingBy(
-                operation -> operation.getCategory() == null
-                    ? WITHOUT_CATEGORY
-                    : operation.getCategory(), Collectors.summingDouble(Operation::getAmount)
-            ));
+        return walletLocks.callLocked(user.getLogin(), () -> user.getWallet().getTotalExpense());
+    }
+
+    // everything the summary shows, taken from the wallet's running aggregates under a single lock
+    public WalletSummary summarize(User user) {
+        return walletLocks.callLocked(user.getLogin(), () -> {
+            final var wallet = user.getWallet();
+            final var budgets = wallet.getBudgets().values().stream()
+                .map(budget -> budgetSummary(wallet, budget))
+                .sorted(Comparator.comparing(WalletSummary.BudgetSummary::category))
+                .toList();
+
+            return new WalletSummary(wallet.getBalance(), wallet.getTotalIncome(), wallet.getTotalExpense(), wallet.getIncomeByCategory(),
+                wallet.getExpenseByCategory(), budgets);
+        });
+    }
+
+    // figures of the requested categories in request order, duplicates are reported once
+    public List<CategorySummary> summarizeCategories(User user, Collection<String> categories) {
+        final var requested = new LinkedHashSet<>(categories);
+        return walletLocks.callLocked(user.getLogin(), () -> {
+            final var wallet = user.getWallet();
+            final var summaries = new ArrayList<CategorySummary>(requested.size());
+            for (final var category : requested) {
+                final var budget = wallet.getBudgets().get(category);
+                final var budgetSummary = budget == null
+                    ? null
+                    : budgetSummary(wallet, budget);
+                summaries.add(new CategorySummary(category, wallet.hasOperationsWithCategory(category), wallet.incomeByCategory(category),
+                    wallet.expenseByCategory(category), budgetSummary));
+            }
+            return summaries;
+        });
+    }
+
+    // income and expense of the days from..to inclusive, read from the wallet's time index
+    public PeriodSummary summarizePeriod(User user, LocalDate from, LocalDate to, ZoneId zone) throws PeriodException {
+        validatePeriod(from, to);
+
+        return walletLocks.callLocked(user.getLogin(), () -> {
+            final var wallet = user.getWallet();
+            final var totals = periodAggregator.summarize(wallet, scanPeriod(wallet, from, to, zone));
+            return new PeriodSummary(from, to, Money.toMajor(totals.income()), Money.toMajor(totals.expense()),
+                totals.incomeByCategory().toMajor(), totals.expenseByCategory().toMajor());
+        });
+    }
+
+    // income and expense per day, week or month of the days from..to inclusive, empty buckets included
+    public List<PeriodBucket> bucketPeriod(User user, BucketSize bucketSize, LocalDate from, LocalDate to,
+                                           ZoneId zone) throws PeriodException {
+        validatePeriod(from, to);
+
+        final var starts = new ArrayList<LocalDate>();
+        for (var start = bucketSize.start(from); !start.isAfter(to); start = bucketSize.next(start)) {
+            starts.add(start);
+        }
+        final var incomes = new long[starts.size()];
+        final var expenses = new long[starts.size()];
+
+        walletLocks.runLocked(user.getLogin(),
+            () -> periodAggregator.bucket(scanPeriod(user.getWallet(), from, to, zone), starts, zone, incomes, expenses));
+
+        final var buckets = new ArrayList<PeriodBucket>(starts.size());
+        for (var i = 0; i < starts.size(); i++) {
+            final var bucketFrom = starts.get(i).isBefore(from)
+                ? from
+                : starts.get(i);
+            final var bucketEnd = bucketSize.next(starts.get(i)).minusDays(1);
+            final var bucketTo = bucketEnd.isAfter(to)
+                ? to
+                : bucketEnd;
+            buckets.add(new PeriodBucket(bucketFrom, bucketTo, Money.toMajor(incomes[i]), Money.toMajor(expenses[i])));
+        }
+        return buckets;
+    }
+
+    // read from the wallet's running per-category sums, which cost the same whatever the storage
+    public Map<String, Double> sumByOperationTypeAndCategory(User user, OperationType operationType, @Nullable String category) {
+        return walletLocks.callLocked(user.getLogin(), () -> sumByCategory(user.getWallet(), operationType, category));
+    }
+
+    private Map<String, Double> sumByCategory(Wallet wallet, OperationType operationType, @Nullable String category) {
+        final var sums = INCOME.equals(operationType)
+            ? wallet.getIncomeByCategory()
+            : wallet.getExpenseByCategory();
+        if (category == null) {
+            return sums;
+        }
+
+        final var sum = sums.get(category);
+        return sum == null
+            ? Map.of()
+            : Map.of(category, sum);
+    }
+
+    private WalletSummary.BudgetSummary budgetSummary(Wallet wallet, Budget budget) {
+        return new WalletSummary.BudgetSummary(budget.getCategory(), budget.getLimit(), budget.getPeriod(), budget.getRollingDays(),
+            wallet.spentAgainst(budget));
+    }
+
+    private OperationLog.Cursor scanPeriod(Wallet wallet, LocalDate from, LocalDate to, ZoneId zone) {
+        return wallet.scanBetween(from.atStartOfDay(zone).toInstant(), to.plusDays(1).atStartOfDay(zone).toInstant());
+    }
+
+    private void validatePeriod(LocalDate from, LocalDate to) throws PeriodException {
+        if (from == null || to == null) {
+            throw new PeriodException("Период не представлен");
+        }
+        if (from.isAfter(to)) {
+            throw new PeriodException("Начало периода %s позже его окончания %s".formatted(from, to));
+        }
     }
 
     private void validateAmount(double amount) throws AmountException {
-        if (amount <= 0) {
+        if (!Money.isRepresentable(amount)) {
+            throw new AmountException(AMOUNT_OUT_OF_RANGE);
+        }
+        // an amount below one minor unit would be stored as zero
+        if (Money.toMinor(amount) <= 0) {
             throw new AmountException("Сумма должна быть больше 0");
         }
     }
 
+    private void validateLimit(double limit) throws BudgetException {
+        if (!Money.isRepresentable(limit)) {
+            throw new BudgetException(AMOUNT_OUT_OF_RANGE);
+        }
+    }
+
     public void saveUserWallet(User user) {
-        walletRepository.saveWallet(user);
+        walletLocks.runLocked(user.getLogin(), () -> walletRepository.saveWallet(user));
+    }
+
+    // saves every wallet changed since its last background save, returns how many were saved
+    public int flush() {
+        return walletPersister.flush();
+    }
+
+    public boolean flush(User user) {
+        return walletPersister.flush(user);
+    }
+
+    public Path walletFile(User user) {
+        return walletRepository.walletFile(user.getLogin());
     }
 
     public void importWalletForUser(String source, User user) throws WalletImportSourceException, FileContentTypeMismatchException {
@@ -189,7 +414,16 @@ public class WalletService {
             throw new WalletImportSourceException("Файл не найден или не является обычным файлом: " + src);
         }
 
-        walletRepository.importWallet(src, user);
+        walletLocks.runLocked(user.getLogin(), () -> walletRepository.importWallet(src, user));
+        // an evicted user remembers the wallet it had then, resolving it brings it back to the cache with the new one
+        authService.findUser(user.getLogin());
+    }
+
+    private static Timer transferTimer(String outcome) {
+        return Timer.builder("wallet.transfer")
+            .tag("outcome", outcome)
+            .publishPercentiles(0.5, 0.95, 0.99)
+            .register(Metrics.globalRegistry);
     }
 
     private void validateUser(User user, String errorMessage) throws UserNotFoundException {
@@ -0,0 +1,28 @@
+package com.mephi.skillfactory.oop.finance.manager.service.wallet;
+
+import com.mephi.skillfactory.oop.finance.manager.domain.Money;
+import com.mephi.skillfactory.oop.finance.manager.domain.enumeration.BudgetPeriod;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Snapshot of a wallet for the 'summary' command, categories are sorted by name
+public record WalletSummary(double balance, double totalIncome, double totalExpense, Map<String, Double> incomeByCategory,
+                            Map<String, Double> expenseByCategory, List<BudgetSummary> budgets) {
+
+    public WalletSummary {
+        incomeByCategory = Collections.unmodifiableMap(new TreeMap<>(incomeByCategory));
+        expenseByCategory = Collections.unmodifiableMap(new TreeMap<>(expenseByCategory));
+        budgets = List.copyOf(budgets);
+    }
+
+    // spent is counted within the budget's period only
+    public record BudgetSummary(String category, double limit, BudgetPeriod period, int rollingDays, double spent) {
+
+        public double remaining() {
+            return Money.toMajor(Money.toMinor(limit) - Money.toMinor(spent));
+        }
+    }
+}
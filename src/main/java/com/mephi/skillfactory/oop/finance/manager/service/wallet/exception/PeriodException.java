@@ -0,0 +1,7 @@
+package com.mephi.skillfactory.oop.finance.manager.service.wallet.exception;
+
+import lombok.experimental.StandardException;
+
+@StandardException
+public final class PeriodException extends Exception {
+}
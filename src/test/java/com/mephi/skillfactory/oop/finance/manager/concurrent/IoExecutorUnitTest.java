@@ -0,0 +1,62 @@
+package com.mephi.skillfactory.oop.finance.manager.concurrent;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import lombok.SneakyThrows;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IoExecutorUnitTest {
+
+    @Test
+    void shouldRunEveryItemWithBoundedParallelism() {
+        // given
+        final var ioExecutor = new IoExecutor(3);
+        final var items = IntStream.range(0, 50).boxed().toList();
+        final var done = ConcurrentHashMap.<Integer>newKeySet();
+        final var running = new AtomicInteger();
+        final var maxRunning = new AtomicInteger();
+
+        // when
+        ioExecutor.forEach(items, item -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            sleep();
+            running.decrementAndGet();
+            done.add(item);
+        });
+
+        // then
+        assertEquals(Set.copyOf(items), done);
+        assertTrue(maxRunning.get() <= 3);
+    }
+
+    @Test
+    void shouldRethrowFailureAfterAllItemsAreDone() {
+        // given
+        final var ioExecutor = new IoExecutor(4);
+        final var done = new AtomicInteger();
+
+        // when
+        assertThrows(IllegalStateException.class, () -> ioExecutor.forEach(IntStream.range(0, 10).boxed().toList(), item -> {
+            if (item == 0) {
+                throw new IllegalStateException("broken");
+            }
+            done.incrementAndGet();
+        }));
+
+        // then
+        assertEquals(9, done.get());
+    }
+
+    @SneakyThrows
+    private static void sleep() {
+        Thread.sleep(5);
+    }
+}
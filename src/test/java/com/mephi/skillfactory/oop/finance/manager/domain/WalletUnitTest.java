@@ -0,0 +1,308 @@
+package com.mephi.skillfactory.oop.finance.manager.domain;
+
+import com.mephi.skillfactory.oop.finance.manager.domain.enumeration.BudgetPeriod;
+import com.mephi.skillfactory.oop.finance.manager.domain.enumeration.OperationType;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static com.mephi.skillfactory.oop.finance.manager.domain.Wallet.WITHOUT_CATEGORY;
+import static com.mephi.skillfactory.oop.finance.manager.domain.enumeration.OperationType.EXPENSE;
+import static com.mephi.skillfactory.oop.finance.manager.domain.enumeration.OperationType.INCOME;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WalletUnitTest {
+
+    @Test
+    void shouldMaintainAggregatesOnAddOperation() {
+        // given
+        final var wallet = new Wallet();
+
+        // when
+        wallet.addOperation(new Operation(INCOME, 1000, "salary", "", null, "login"));
+        wallet.addOperation(new Operation(EXPENSE, 200, "food", "", "login", null));
+        wallet.addOperation(new Operation(EXPENSE, 50, "food", "", "login", null));
+
+        // then
+        assertEquals(750.0, wallet.getBalance());
+        assertEquals(1000.0, wallet.getTotalIncome());
+        assertEquals(250.0, wallet.getTotalExpense());
+        assertEquals(1000.0, wallet.incomeByCategory("salary"));
+        assertEquals(250.0, wallet.expenseByCategory("food"));
+        assertEquals(0.0, wallet.expenseByCategory("unknown"));
+    }
+
+    @Test
+    void shouldSumAmountsExactly() {
+        // given
+        final var wallet = new Wallet();
+
+        // when
+        for (var i = 0; i < 10; i++) {
+            wallet.addOperation(new Operation(INCOME, 0.1, "gift", "", null, "login"));
+        }
+        wallet.addOperation(new Operation(EXPENSE, 0.3, "food", "", "login", null));
+
+        // then
+        assertEquals(1.0, wallet.getTotalIncome());
+        assertEquals(0.7, wallet.getBalance());
+        assertEquals(1.0, wallet.incomeByCategory("gift"));
+        assertEquals(0.3, wallet.getExpenseByCategory().get("food"));
+    }
+
+    @Test
+    void shouldRoundAmountsToMinorUnits() {
+        assertEquals(101, Money.toMinor(1.005));
+        assertEquals(1999, Money.toMinor(19.99));
+        assertEquals(-250, Money.toMinor(-2.5));
+        assertEquals(0.01, Money.toMajor(1));
+        assertFalse(Money.isRepresentable(Double.NaN));
+        assertFalse(Money.isRepresentable(1e300));
+    }
+
+    @Test
+    void shouldRecalculateAggregatesForLoadedOperations() {
+        // given
+        final var operations = new ArrayList<Operation>();
+        operations.add(new Operation(UUID.randomUUID(), INCOME, 300, "gift", "", null, "login"));
+        operations.add(new Operation(UUID.randomUUID(), EXPENSE, 100, null, "", "login", null));
+
+        // when
+        final var wallet = new Wallet(200, operations, new HashMap<>());
+
+        // then
+        assertEquals(300.0, wallet.getTotalIncome());
+        assertEquals(100.0, wallet.getTotalExpense());
+        assertEquals(100.0, wallet.expenseByCategory(WITHOUT_CATEGORY));
+    }
+
+    @Test
+    void shouldMoveAggregatesOnRenameCategory() {
+        // given
+        final var wallet = new Wallet(0, new ArrayList<>(List.of(
+            new Operation(UUID.randomUUID(), EXPENSE, 100, "cafe", "", "login", null),
+            new Operation(UUID.randomUUID(), EXPENSE, 40, "food", "", "login", null)
+        )), new HashMap<>());
+
+        // when
+        final var renamed = wallet.renameCategory("cafe", "food");
+
+        // then
+        assertEquals(1, renamed);
+        assertFalse(wallet.hasOperationsWithCategory("cafe"));
+        assertTrue(wallet.hasOperationsWithCategory("food"));
+        assertEquals(140.0, wallet.expenseByCategory("food"));
+        assertEquals(140.0, wallet.getTotalExpense());
+    }
+
+    @Test
+    void shouldRenameSharedCategoryOfAllOperations() {
+        // given
+        final var cafe = new Operation(UUID.randomUUID(), EXPENSE, 100, "cafe", "", "login", null);
+        final var food = new Operation(UUID.randomUUID(), EXPENSE, 40, "food", "", "login", null);
+        final var withoutCategory = new Operation(UUID.randomUUID(), EXPENSE, 5, null, "", "login", null);
+        final var wallet = new Wallet(0, new ArrayList<>(List.of(cafe, food, withoutCategory)), new HashMap<>());
+
+        // when
+        final var merged = wallet.renameCategory("cafe", "food");
+        final var renamed = wallet.renameCategory("food", "groceries");
+        final var renamedWithoutCategory = wallet.renameCategory(WITHOUT_CATEGORY, "misc");
+        wallet.addOperation(new Operation(UUID.randomUUID(), EXPENSE, 1, "food", "", "login", null));
+
+        // then
+        assertEquals(1, merged);
+        assertEquals(2, renamed);
+        assertEquals(1, renamedWithoutCategory);
+        assertEquals("groceries", wallet.getOperations().get(0).getCategory());
+        assertEquals("groceries", wallet.getOperations().get(1).getCategory());
+        assertEquals("misc", wallet.getOperations().get(2).getCategory());
+        assertEquals("food", wallet.getOperations().get(3).getCategory());
+        assertEquals(140.0, wallet.expenseByCategory("groceries"));
+        assertEquals(5.0, wallet.expenseByCategory("misc"));
+        assertEquals(1.0, wallet.expenseByCategory("food"));
+        assertFalse(wallet.hasOperationsWithCategory(WITHOUT_CATEGORY));
+        assertEquals(Set.of("groceries", "misc", "food"), wallet.getCategories());
+    }
+
+    @Test
+    void shouldCountOperationsWithoutCategoryAddedAfterRenameUnderWithoutCategory() {
+        // given
+        final var wallet = new Wallet();
+        wallet.addOperation(new Operation(UUID.randomUUID(), EXPENSE, 5, null, "", "login", null));
+        wallet.renameCategory(WITHOUT_CATEGORY, "misc");
+
+        // when
+        wallet.addOperation(new Operation(UUID.randomUUID(), EXPENSE, 7, null, "", "login", null));
+
+        // then
+        assertEquals("misc", wallet.getOperations().get(0).getCategory());
+        assertNull(wallet.getOperations().get(1).getCategory());
+        assertEquals(5.0, wallet.expenseByCategory("misc"));
+        assertEquals(7.0, wallet.expenseByCategory(WITHOUT_CATEGORY));
+        assertEquals(Set.of("misc", WITHOUT_CATEGORY), wallet.getCategories());
+    }
+
+    @Test
+    void shouldReturnOperationsOfTimeRangeInTimeOrder() {
+        // given
+        final var wallet = new Wallet();
+        final var march = operationAt(EXPENSE, 30, "2024-03-10T12:00:00Z");
+        final var january = operationAt(INCOME, 10, "2024-01-10T12:00:00Z");
+        final var february = operationAt(EXPENSE, 20, "2024-02-10T12:00:00Z");
+        final var loaded = new Wallet(0, new ArrayList<>(List.of(march, january)), new HashMap<>());
+
+        // when
+        wallet.addOperation(march);
+        wallet.addOperation(january);
+        wallet.addOperation(february);
+        loaded.addOperation(february);
+
+        // then
+        final var from = Instant.parse("2024-01-10T12:00:00Z");
+        final var to = Instant.parse("2024-03-10T12:00:00Z");
+        assertEquals(List.of(january, february), wallet.operationsBetween(from, to));
+        assertEquals(List.of(january, february), loaded.operationsBetween(from, to));
+        assertEquals(List.of(january, february, march), wallet.operationsBetween(Instant.EPOCH, Instant.parse("2025-01-01T00:00:00Z")));
+        assertTrue(wallet.operationsBetween(to, from).isEmpty());
+    }
+
+    @Test
+    void shouldScanOperationsOfTimeRangeWithoutCopies() {
+        // given
+        final var wallet = new Wallet();
+        final var january = operationAt(INCOME, 10.25, "2024-01-10T12:00:00.123456789Z");
+        wallet.addOperation(operationAt(EXPENSE, 30, "2024-03-10T12:00:00Z"));
+        wallet.addOperation(january);
+        wallet.addOperation(new Operation(UUID.randomUUID(), EXPENSE, 20, null, "", Instant.parse("2024-02-10T12:00:00Z"), "login", null));
+
+        // when
+        final var cursor = wallet.scanBetween(Instant.EPOCH, Instant.parse("2024-03-01T00:00:00Z"));
+
+        // then
+        assertTrue(cursor.next());
+        assertEquals(INCOME, cursor.type());
+        assertEquals(1025, cursor.amountMinor());
+        assertEquals(january.getTimestamp(), cursor.timestamp());
+        assertEquals(january, cursor.operation());
+        assertTrue(cursor.next());
+        assertEquals(WITHOUT_CATEGORY, cursor.category().name());
+        assertEquals(2000, cursor.amountMinor());
+        assertFalse(cursor.next());
+        assertEquals(3, wallet.getOperations().size());
+        assertEquals(january, wallet.getOperations().get(1));
+    }
+
+    @Test
+    void shouldCountBudgetSpendWithinItsPeriod() {
+        // given
+        final var wallet = new Wallet();
+        final var today = LocalDate.parse("2024-03-20");
+        wallet.addOperation(expenseOn("food", 10, "2024-03-20"));
+        wallet.addOperation(expenseOn("food", 20, "2024-03-18"));
+        wallet.addOperation(expenseOn("food", 40, "2024-03-17"));
+        wallet.addOperation(expenseOn("food", 80, "2024-03-01"));
+        wallet.addOperation(expenseOn("food", 160, "2024-02-28"));
+        wallet.addOperation(expenseOn("food", 320, "2023-01-10"));
+        wallet.addOperation(expenseOn("travel", 1000, "2024-03-19"));
+
+        // when
+        wallet.renameCategory("food", "groceries");
+
+        // then
+        assertEquals(630.0, wallet.spentAgainst(new Budget("groceries", 100), today));
+        assertEquals(150.0, wallet.spentAgainst(new Budget("groceries", 100, BudgetPeriod.MONTH, 0), today));
+        assertEquals(30.0, wallet.spentAgainst(new Budget("groceries", 100, BudgetPeriod.WEEK, 0), today));
+        assertEquals(70.0, wallet.spentAgainst(new Budget("groceries", 100, BudgetPeriod.ROLLING, 7), today));
+        assertEquals(310.0, wallet.spentAgainst(new Budget("groceries", 100, BudgetPeriod.ROLLING, 30), today));
+        assertEquals(0.0, wallet.spentAgainst(new Budget("food", 100, BudgetPeriod.MONTH, 0), today));
+    }
+
+    @Test
+    void shouldKeepCurrentDaysOfBudgetAfterExpenseDatedAhead() {
+        // given
+        final var wallet = new Wallet();
+        final var today = LocalDate.now(ZoneId.systemDefault());
+        wallet.addOperation(expenseOn("food", 10, today.toString()));
+
+        // when
+        wallet.addOperation(expenseOn("food", 20, today.plusYears(2).toString()));
+
+        // then
+        assertEquals(10.0, wallet.spentAgainst(new Budget("food", 100, BudgetPeriod.WEEK, 0)));
+        assertEquals(10.0, wallet.spentAgainst(new Budget("food", 100, BudgetPeriod.ROLLING, 7)));
+        assertEquals(20.0, wallet.spentAgainst(new Budget("food", 100, BudgetPeriod.ROLLING, 1), today.plusYears(2)));
+    }
+
+    @Test
+    void shouldRestoreAggregatesFromRollupOfSameOperations() {
+        // given
+        final var wallet = new Wallet();
+        final var today = LocalDate.parse("2024-03-20");
+        wallet.addOperation(new Operation(UUID.randomUUID(), INCOME, 1000, "salary", "", "login", null));
+        wallet.addOperation(expenseOn("food", 10, "2024-03-20"));
+        wallet.addOperation(expenseOn("cafe", 20, "2024-03-18"));
+        wallet.addOperation(expenseOn(null, 40, "2024-02-17"));
+        wallet.renameCategory("cafe", "food");
+        final var rollup = wallet.rollup();
+        final var loaded = new Wallet(wallet.getBalance(), new ArrayList<>(wallet.getOperations()), new HashMap<>());
+        final var other = new Wallet(wallet.getBalance(), new ArrayList<>(wallet.getOperations().subList(0, 3)), new HashMap<>());
+
+        // when
+        final var restored = loaded.restoreAggregates(rollup);
+        final var restoredOther = other.restoreAggregates(rollup);
+
+        // then
+        assertTrue(restored);
+        assertFalse(restoredOther);
+        assertEquals(wallet.getTotalIncome(), loaded.getTotalIncome());
+        assertEquals(wallet.getTotalExpense(), loaded.getTotalExpense());
+        assertEquals(wallet.getExpenseByCategory(), loaded.getExpenseByCategory());
+        assertEquals(wallet.getCategories(), loaded.getCategories());
+        assertEquals(30.0, loaded.spentAgainst(new Budget("food", 100, BudgetPeriod.WEEK, 0), today));
+        assertEquals(40.0, loaded.spentAgainst(new Budget(WITHOUT_CATEGORY, 100, BudgetPeriod.MONTH, 0), LocalDate.parse("2024-02-20")));
+        assertEquals(30.0, other.getTotalExpense());
+        assertFalse(loaded.restoreAggregates(rollup));
+    }
+
+    @Test
+    void shouldTrackChangesSinceLastPersistedVersion() {
+        // given
+        final var wallet = new Wallet();
+        wallet.addOperation(new Operation(EXPENSE, 10, "cafe", "", "login", null));
+        wallet.markPersisted(wallet.getVersion());
+
+        // when
+        final var persistedAfterSave = wallet.isPersisted();
+        final var renamedMissing = wallet.renameCategory("unknown", "food");
+        final var persistedAfterNoOpRename = wallet.isPersisted();
+        final var staleVersion = wallet.getVersion();
+        wallet.renameCategory("cafe", "food");
+        wallet.markPersisted(staleVersion);
+
+        // then
+        assertTrue(persistedAfterSave);
+        assertEquals(0, renamedMissing);
+        assertTrue(persistedAfterNoOpRename);
+        assertFalse(wallet.isPersisted());
+    }
+
+    private static Operation expenseOn(String category, double amount, String day) {
+        final var timestamp = LocalDate.parse(day).atTime(12, 0).atZone(ZoneId.systemDefault()).toInstant();
+        return new Operation(UUID.randomUUID(), EXPENSE, amount, category, "", timestamp, "login", null);
+    }
+
+    private static Operation operationAt(OperationType type, double amount, String timestamp) {
+        return new Operation(UUID.randomUUID(), type, amount, "category", "", Instant.parse(timestamp), null, null);
+    }
+}
@@ -0,0 +1,141 @@
+package com.mephi.skillfactory.oop.finance.manager.repository;
+
+import com.mephi.skillfactory.oop.finance.manager.domain.Budget;
+import com.mephi.skillfactory.oop.finance.manager.domain.Operation;
+import com.mephi.skillfactory.oop.finance.manager.domain.User;
+import com.mephi.skillfactory.oop.finance.manager.repository.codec.BinaryWalletCodec;
+import com.mephi.skillfactory.oop.finance.manager.repository.codec.WalletFileFormat;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import lombok.SneakyThrows;
+
+import static com.mephi.skillfactory.oop.finance.manager.domain.enumeration.OperationType.EXPENSE;
+import static com.mephi.skillfactory.oop.finance.manager.domain.enumeration.OperationType.INCOME;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ColumnarWalletRepositoryUnitTest {
+    private static final DataSize MAX_IMPORT_FILE_SIZE = DataSize.ofMegabytes(1);
+
+    @Test
+    @SneakyThrows
+    void shouldAppendOperationsToColumnsAndLoadThemBack(@TempDir Path tempDir) {
+        // given
+        final var repository = new ColumnarWalletRepository(tempDir.toString(), WalletFileFormat.JSON, MAX_IMPORT_FILE_SIZE);
+        final var login = "login";
+        final var user = new User(login, "passwordHash");
+        final var income = new Operation(INCOME, 500, "salary", "аванс", null, login);
+        user.getWallet().addOperation(income);
+        repository.saveWallet(user);
+
+        // when
+        user.getWallet().addOperation(new Operation(EXPENSE, 100, "food", null, login, "shop"));
+        user.getWallet().getBudgets().put("food", new Budget("food", 300));
+        repository.saveWallet(user);
+
+        // then
+        final var typeColumn = tempDir.resolve(login + ".columns").resolve("type.col");
+        assertEquals(2, Files.size(typeColumn));
+
+        final var loaded = new ColumnarWalletRepository(tempDir.toString(), WalletFileFormat.JSON, MAX_IMPORT_FILE_SIZE).loadWallet(login);
+        assertEquals(400.0, loaded.getBalance());
+        assertEquals(2, loaded.getOperations().size());
+        assertEquals(income.getId(), loaded.getOperations().getFirst().getId());
+        assertEquals(income.getTimestamp(), loaded.getOperations().getFirst().getTimestamp());
+        assertEquals("аванс", loaded.getOperations().getFirst().getDescription());
+        assertEquals("shop", loaded.getOperations().get(1).getToUser());
+        assertEquals(300.0, loaded.getBudgets().get("food").getLimit());
+    }
+
+    @Test
+    @SneakyThrows
+    void shouldKeepBalanceInMinorUnitsAndReadOlderMetaWithDoubleBalance(@TempDir Path tempDir) {
+        // given
+        final var repository = new ColumnarWalletRepository(tempDir.toString(), WalletFileFormat.JSON, MAX_IMPORT_FILE_SIZE);
+        final var login = "login";
+        final var user = new User(login, "passwordHash");
+        user.getWallet().addOperation(new Operation(INCOME, 0.1, "salary", "", null, login));
+        user.getWallet().addOperation(new Operation(INCOME, 0.2, "salary", "", null, login));
+        repository.saveWallet(user);
+        final var metaFile = tempDir.resolve(login + ".columns").resolve("wallet.meta");
+        final var meta = Files.readString(metaFile);
+
+        // when
+        final var loaded = new ColumnarWalletRepository(tempDir.toString(), WalletFileFormat.JSON, MAX_IMPORT_FILE_SIZE).loadWallet(login);
+        Files.writeString(metaFile, meta.replace("\"balanceMinor\":30", "\"balance\":0.3"));
+        final var loadedFromOlderMeta = new ColumnarWalletRepository(tempDir.toString(), WalletFileFormat.JSON, MAX_IMPORT_FILE_SIZE)
+            .loadWallet(login);
+
+        // then
+        assertTrue(meta.contains("\"balanceMinor\":30"));
+        assertFalse(meta.contains("\"balance\":"));
+        assertEquals(30, loaded.getBalanceMinor());
+        assertEquals(30, loadedFromOlderMeta.getBalanceMinor());
+    }
+
+    @Test
+    @SneakyThrows
+    void shouldRewriteColumnsOnRenameAndIgnoreTornAppend(@TempDir Path tempDir) {
+        // given
+        final var repository = new ColumnarWalletRepository(tempDir.toString(), WalletFileFormat.JSON, MAX_IMPORT_FILE_SIZE);
+        final var login = "login";
+        final var user = new User(login, "passwordHash");
+        user.getWallet().addOperation(new Operation(EXPENSE, 100, "food", "", login, null));
+        repository.saveWallet(user);
+        final var amountColumn = tempDir.resolve(login + ".columns").resolve("amount.col");
+        Files.write(amountColumn, new byte[] {1, 2, 3}, StandardOpenOption.APPEND);
+
+        // when
+        user.getWallet().renameCategory("food", "groceries");
+        repository.saveWallet(user);
+
+        // then
+        final var loaded = new ColumnarWalletRepository(tempDir.toString(), WalletFileFormat.JSON, MAX_IMPORT_FILE_SIZE).loadWallet(login);
+        assertEquals(1, loaded.getOperations().size());
+        assertEquals(100.0, loaded.expenseByCategory("groceries"));
+        assertFalse(loaded.hasOperationsWithCategory("food"));
+        assertEquals(Double.BYTES, Files.size(amountColumn));
+    }
+
+    @Test
+    @SneakyThrows
+    void shouldKeepAppendingForCopyOfWalletAdoptedAfterItLeftHeap(@TempDir Path tempDir) {
+        // given
+        final var repository = new ColumnarWalletRepository(tempDir.toString(), WalletFileFormat.JSON, MAX_IMPORT_FILE_SIZE);
+        final var login = "login";
+        final var user = new User(login, "passwordHash");
+        user.getWallet().addOperation(new Operation(INCOME, 500, "salary", "", null, login));
+        repository.saveWallet(user);
+        final var columnsDir = tempDir.resolve(login + ".columns");
+        final var directoryKey = Files.readAttributes(columnsDir, BasicFileAttributes.class).fileKey();
+
+        // when
+        final var codec = new BinaryWalletCodec();
+        final var out = new ByteArrayOutputStream();
+        codec.write(user.getWallet(), out);
+        final var copy = codec.read(new ByteArrayInputStream(out.toByteArray())); // as the off-heap tier gives it back
+        copy.markPersisted(copy.getVersion());
+        repository.forgetWallet(login);
+        repository.adoptWallet(login, copy);
+        user.setWallet(copy);
+        user.getWallet().addOperation(new Operation(EXPENSE, 100, "food", "", login, null));
+        repository.saveWallet(user);
+
+        // then
+        assertEquals(directoryKey, Files.readAttributes(columnsDir, BasicFileAttributes.class).fileKey()); // not rewritten
+        assertEquals(2, Files.size(columnsDir.resolve("type.col")));
+        final var loaded = new ColumnarWalletRepository(tempDir.toString(), WalletFileFormat.JSON, MAX_IMPORT_FILE_SIZE).loadWallet(login);
+        assertEquals(400.0, loaded.getBalance());
+    }
+}
@@ -93,4 +93,21 @@ class FileBasedCredentialsRepositoryUnitTest {
         assertEquals(user1PasswordHash, loaded.get(user1Name));
         assertEquals(user2PasswordHash, loaded.get(user2Name));
     }
+
+    @Test
+    @SneakyThrows
+    void shouldLoadPreviousCredentialsWhenFileIsDamaged(@TempDir Path tempDir) {
+        // given
+        final var credentialsFileName = "credentials.json";
+        final var repository = new FileBasedCredentialsRepository(tempDir.toString(), credentialsFileName);
+        repository.saveCredentials(Map.of("user1", "hash1"));
+        repository.saveCredentials(Map.of("user1", "hash1", "user2", "hash2"));
+
+        // when
+        Files.writeString(tempDir.resolve(credentialsFileName), "{\"user1\": \"ha");
+        final var loaded = repository.loadCredentials();
+
+        // then
+        assertEquals(Map.of("user1", "hash1"), loaded);
+    }
 }
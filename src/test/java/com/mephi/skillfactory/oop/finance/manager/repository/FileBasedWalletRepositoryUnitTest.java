@@ -2,24 +2,37 @@ package com.mephi.skillfactory.oop.finance.manager.repository;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.mephi.skillfactory.oop.finance.manager.domain.Budget;
 import com.mephi.skillfactory.oop.finance.manager.domain.Operation;
 import com.mephi.skillfactory.oop.finance.manager.domain.User;
 import com.mephi.skillfactory.oop.finance.manager.domain.Wallet;
+import com.mephi.skillfactory.oop.finance.manager.repository.codec.WalletFileFormat;
 import com.mephi.skillfactory.oop.finance.manager.repository.exception.FileContentTypeMismatchException;
+import com.mephi.skillfactory.oop.finance.manager.repository.exception.WalletLoadException;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
 
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import lombok.SneakyThrows;
 
+import static com.mephi.skillfactory.oop.finance.manager.domain.enumeration.OperationType.EXPENSE;
 import static com.mephi.skillfactory.oop.finance.manager.domain.enumeration.OperationType.INCOME;
 import static java.util.Collections.emptyMap;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
@@ -28,12 +41,13 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class FileBasedWalletRepositoryUnitTest {
     private static final ObjectMapper MAPPER = new ObjectMapper().registerModule(new JavaTimeModule());
+    private static final DataSize MAX_IMPORT_FILE_SIZE = DataSize.ofMegabytes(1);
 
     @Test
     @SneakyThrows
     void shouldSaveWalletToFile(@TempDir Path tempDir) {
         // given
-        final var repository = new FileBasedWalletRepository(tempDir.toString());
+        final var repository = new FileBasedWalletRepository(tempDir.toString(), WalletFileFormat.JSON, MAX_IMPORT_FILE_SIZE);
         final var login = "login";
         final var user = new User(login, "passwordHash");
         final var opId = UUID.randomUUID();
@@ -57,11 +71,37 @@ class FileBasedWalletRepositoryUnitTest {
         assertEquals(op.getTimestamp(), readOp.getTimestamp());
     }
 
+    @Test
+    @SneakyThrows
+    void shouldWriteBatchOfWalletsAndSyncThemAtOnce(@TempDir Path tempDir) {
+        // given
+        final var repository = new FileBasedWalletRepository(tempDir.toString(), WalletFileFormat.BINARY, MAX_IMPORT_FILE_SIZE);
+        final var users = new ArrayList<User>();
+        for (var i = 0; i < 3; i++) {
+            final var user = new User("login" + i, "passwordHash");
+            user.getWallet().addOperation(new Operation(UUID.randomUUID(), INCOME, 100 + i, "salary", "", null, user.getLogin()));
+            users.add(user);
+        }
+
+        // when
+        final var written = users.stream().allMatch(repository::saveWalletDeferringSync);
+        final var unsynced = repository.syncSavedWallets();
+
+        // then
+        assertTrue(written);
+        assertTrue(unsynced.isEmpty());
+        for (final var user : users) {
+            // the caller marks the wallets persisted once the sync has succeeded
+            assertFalse(user.getWallet().isPersisted());
+            assertEquals(user.getWallet().getOperations(), repository.loadWallet(user.getLogin()).getOperations());
+        }
+    }
+
     @Test
     @SneakyThrows
     void shouldReturnEmptyWalletIfFileIsEmptyOrNull(@TempDir Path tempDir) {
         // given
-        final var repository = new FileBasedWalletRepository(tempDir.toString());
+        final var repository = new FileBasedWalletRepository(tempDir.toString(), WalletFileFormat.JSON, MAX_IMPORT_FILE_SIZE);
 
         // when
         final var loadedWallet = repository.loadWallet("login");
@@ -77,7 +117,7 @@ class FileBasedWalletRepositoryUnitTest {
     @SneakyThrows
     void shouldLoadWalletFromFile(@TempDir Path tempDir) {
         // given
-        final var repository = new FileBasedWalletRepository(tempDir.toString());
+        final var repository = new FileBasedWalletRepository(tempDir.toString(), WalletFileFormat.JSON, MAX_IMPORT_FILE_SIZE);
         final var login = "login";
         final var user = new User(login, "passwordHash");
         final var opId = UUID.randomUUID();
@@ -102,7 +142,7 @@ class FileBasedWalletRepositoryUnitTest {
     @SneakyThrows
     void shouldImportWallet(@TempDir Path tempDir) {
         // given
-        final var repository = new FileBasedWalletRepository(tempDir.toString());
+        final var repository = new FileBasedWalletRepository(tempDir.toString(), WalletFileFormat.JSON, MAX_IMPORT_FILE_SIZE);
         final var login = "login";
         final var user = new User(login, "passwordHash");
         final var opId = UUID.randomUUID();
@@ -140,7 +180,7 @@ class FileBasedWalletRepositoryUnitTest {
     @SneakyThrows
     void shouldThrowExceptionIfImportWalletFileIsInvalidJson(@TempDir Path tempDir) {
         // given
-        final var repository = new FileBasedWalletRepository(tempDir.toString());
+        final var repository = new FileBasedWalletRepository(tempDir.toString(), WalletFileFormat.JSON, MAX_IMPORT_FILE_SIZE);
         final var login = "login";
         final var user = new User(login, "passwordHash");
 
@@ -165,7 +205,7 @@ class FileBasedWalletRepositoryUnitTest {
     @SneakyThrows
     void shouldReplaceExistingFileWhileImporting(@TempDir Path tempDir) {
         // given
-        final var repository = new FileBasedWalletRepository(tempDir.toString());
+        final var repository = new FileBasedWalletRepository(tempDir.toString(), WalletFileFormat.JSON, MAX_IMPORT_FILE_SIZE);
         final var login = "login";
         final var user = new User(login, "passwordHash");
 
@@ -198,4 +238,240 @@ class FileBasedWalletRepositoryUnitTest {
         assertNotNull(user.getWallet());
         assertEquals(500.0, user.getWallet().getBalance());
     }
+
+    @Test
+    @SneakyThrows
+    void shouldRejectImportOfOperationWithNonPositiveAmount(@TempDir Path tempDir) {
+        // given
+        final var repository = new FileBasedWalletRepository(tempDir.toString(), WalletFileFormat.JSON, MAX_IMPORT_FILE_SIZE);
+        final var login = "login";
+        final var user = new User(login, "passwordHash");
+
+        final var bad = tempDir.resolve("bad-amount.json");
+        Files.writeString(bad, """
+            {"balance": 0, "operations": [{"id": "%s", "type": "EXPENSE", "amount": -5, "category": "food"}], "budgets": {}}
+            """.formatted(UUID.randomUUID()));
+
+        // when
+        final var exception = assertThrows(FileContentTypeMismatchException.class, () -> repository.importWallet(bad, user));
+
+        // then
+        assertEquals("Операция #1: сумма должна быть больше 0", exception.getMessage());
+        assertFalse(Files.exists(tempDir.resolve(login + ".json")));
+    }
+
+    @Test
+    @SneakyThrows
+    void shouldRejectImportOfTooLargeFile(@TempDir Path tempDir) {
+        // given
+        final var repository = new FileBasedWalletRepository(tempDir.toString(), WalletFileFormat.JSON, DataSize.ofBytes(16));
+        final var user = new User("login", "passwordHash");
+
+        final var src = tempDir.resolve("wallet-to-import.json");
+        MAPPER.writeValue(src.toFile(), new Wallet());
+
+        // when
+        // then
+        assertThrows(FileContentTypeMismatchException.class, () -> repository.importWallet(src, user));
+    }
+
+    @Test
+    @SneakyThrows
+    void shouldReadJsonWalletAndReplaceItWithBinaryOnSave(@TempDir Path tempDir) {
+        // given
+        final var login = "login";
+        final var opId = UUID.randomUUID();
+        final var op = new Operation(opId, INCOME, 250, "someCategory", "description", login, null);
+        final var user = new User(login, "passwordHash");
+        user.setWallet(new Wallet(250, new ArrayList<>(List.of(op)), new HashMap<>()));
+        new FileBasedWalletRepository(tempDir.toString(), WalletFileFormat.JSON, MAX_IMPORT_FILE_SIZE).saveWallet(user);
+
+        final var repository = new FileBasedWalletRepository(tempDir.toString(), WalletFileFormat.BINARY, MAX_IMPORT_FILE_SIZE);
+
+        // when
+        final var loadedWallet = repository.loadWallet(login);
+        user.setWallet(loadedWallet);
+        repository.saveWallet(user);
+
+        // then
+        assertEquals(opId, loadedWallet.getOperations().getFirst().getId());
+        assertFalse(Files.exists(tempDir.resolve(login + ".json")));
+        assertTrue(Files.exists(tempDir.resolve(login + ".bin")));
+        assertEquals(250.0, repository.loadWallet(login).getBalance());
+    }
+
+    @Test
+    @SneakyThrows
+    void shouldRecoverPreviousVersionAndKeepCorruptedFile(@TempDir Path tempDir) {
+        // given
+        final var login = "login";
+        final var repository = new FileBasedWalletRepository(tempDir.toString(), WalletFileFormat.BINARY, MAX_IMPORT_FILE_SIZE);
+        final var user = new User(login, "passwordHash");
+        user.setWallet(new Wallet(250, new ArrayList<>(List.of(new Operation(UUID.randomUUID(), INCOME, 250, "salary", "", login, null))),
+            new HashMap<>()));
+        repository.saveWallet(user);
+        user.getWallet().addOperation(new Operation(UUID.randomUUID(), INCOME, 100, "salary", "", login, null));
+        repository.saveWallet(user);
+
+        final var walletFile = tempDir.resolve(login + ".bin");
+        final var bytes = Files.readAllBytes(walletFile);
+        Files.write(walletFile, Arrays.copyOf(bytes, bytes.length / 2)); // torn write
+
+        // when
+        final var loadedWallet = repository.loadWallet(login);
+
+        // then
+        assertEquals(1, loadedWallet.getOperations().size());
+        assertEquals(250.0, loadedWallet.getBalance());
+        try (final var files = Files.list(tempDir)) {
+            assertTrue(files.anyMatch(file -> file.getFileName().toString().startsWith(login + ".bin.corrupt-")));
+        }
+    }
+
+    @Test
+    @SneakyThrows
+    void shouldFailLoadAndLeaveFileThatCannotBeReadForNow(@TempDir Path tempDir) {
+        // given
+        final var login = "login";
+        final var repository = new FileBasedWalletRepository(tempDir.toString(), WalletFileFormat.BINARY, MAX_IMPORT_FILE_SIZE);
+        final var walletFile = tempDir.resolve(login + ".bin");
+        final var newerVersion = new byte[]{0x46, 0x4D, 0x57, 0x4C, 99}; // written by a newer version of the application
+        Files.write(walletFile, newerVersion);
+
+        // when
+        assertThrows(WalletLoadException.class, () -> repository.loadWallet(login));
+
+        // then
+        assertArrayEquals(newerVersion, Files.readAllBytes(walletFile));
+        try (final var files = Files.list(tempDir)) {
+            assertTrue(files.noneMatch(file -> file.getFileName().toString().contains(".corrupt-")));
+        }
+    }
+
+    @Test
+    @SneakyThrows
+    void shouldRecordSaveAndLoadMetrics(@TempDir Path tempDir) {
+        // given
+        final var registry = new SimpleMeterRegistry();
+        Metrics.addRegistry(registry);
+        try {
+            final var repository = new FileBasedWalletRepository(tempDir.toString(), WalletFileFormat.JSON, MAX_IMPORT_FILE_SIZE);
+            final var login = "login";
+            final var user = new User(login, "passwordHash");
+            user.getWallet().addOperation(new Operation(INCOME, 250, "someCategory", "description", null, login));
+
+            // when
+            repository.saveWallet(user);
+            repository.loadWallet(login);
+
+            // then
+            assertEquals(1, registry.get("wallet.repository.save").tag("storage", "file").timer().count());
+            assertEquals(1, registry.get("wallet.repository.load").tag("storage", "file").timer().count());
+            assertEquals(Files.size(tempDir.resolve(login + ".json")),
+                (long) registry.get("wallet.repository.bytes.written").summary().totalAmount());
+            assertEquals(0.0, registry.get("wallet.repository.failures").tag("operation", "save").counter().count());
+        } finally {
+            Metrics.removeRegistry(registry);
+        }
+    }
+
+    @Test
+    @SneakyThrows
+    void shouldRestoreAggregatesFromRollupOfCurrentWalletFile(@TempDir Path tempDir) {
+        // given
+        final var registry = new SimpleMeterRegistry();
+        Metrics.addRegistry(registry);
+        try {
+            final var repository = new FileBasedWalletRepository(tempDir.toString(), WalletFileFormat.BINARY, MAX_IMPORT_FILE_SIZE);
+            final var login = "login";
+            final var user = new User(login, "passwordHash");
+            user.getWallet().addOperation(new Operation(INCOME, 250, "salary", "", null, login));
+            user.getWallet().addOperation(new Operation(EXPENSE, 40.5, "food", "", login, null));
+            repository.saveWallet(user);
+            final var rollupFile = tempDir.resolve(login + ".rollup.json");
+            final var staleRollup = Files.readAllBytes(rollupFile);
+
+            // when
+            final var restored = repository.loadWallet(login);
+            user.setWallet(restored);
+            user.getWallet().addOperation(new Operation(EXPENSE, 9.5, "food", "", login, null));
+            repository.saveWallet(user);
+            Files.write(rollupFile, staleRollup); // as if the process died before the new rollup was written
+            final var recomputed = repository.loadWallet(login);
+
+            // then
+            assertEquals(Map.of("food", 50.0), restored.getExpenseByCategory());
+            assertEquals(250.0, restored.getTotalIncome());
+            assertEquals(Map.of("food", 50.0), recomputed.getExpenseByCategory());
+            assertEquals(3, recomputed.getOperations().size());
+            assertEquals(1.0, registry.get("wallet.repository.rollups").tag("outcome", "restored").counter().count());
+            assertEquals(1.0, registry.get("wallet.repository.rollups").tag("outcome", "ignored").counter().count());
+        } finally {
+            Metrics.removeRegistry(registry);
+        }
+    }
+
+    @Test
+    @SneakyThrows
+    void shouldIgnoreRollupOfWalletFileEditedWithoutChangingSizeOrModificationTime(@TempDir Path tempDir) {
+        // given
+        final var registry = new SimpleMeterRegistry();
+        Metrics.addRegistry(registry);
+        try {
+            final var repository = new FileBasedWalletRepository(tempDir.toString(), WalletFileFormat.JSON, MAX_IMPORT_FILE_SIZE);
+            final var login = "login";
+            final var user = new User(login, "passwordHash");
+            user.getWallet().addOperation(new Operation(INCOME, 250, "salary", "", null, login));
+            user.getWallet().addOperation(new Operation(EXPENSE, 40.5, "food", "", login, null));
+            repository.saveWallet(user);
+            final var restored = repository.loadWallet(login);
+
+            // when
+            final var walletFile = tempDir.resolve(login + ".json");
+            final var modified = Files.getLastModifiedTime(walletFile);
+            final var content = Files.readString(walletFile);
+            // neither the balance nor the last operation changes
+            Files.writeString(walletFile, content.replace("\"amount\" : 40.5", "\"amount\" : 49.5"));
+            Files.setLastModifiedTime(walletFile, modified);
+            final var edited = repository.loadWallet(login);
+
+            // then
+            assertEquals(Map.of("food", 40.5), restored.getExpenseByCategory());
+            assertEquals(Map.of("food", 49.5), edited.getExpenseByCategory());
+            assertEquals(1.0, registry.get("wallet.repository.rollups").tag("outcome", "restored").counter().count());
+            assertEquals(1.0, registry.get("wallet.repository.rollups").tag("outcome", "ignored").counter().count());
+        } finally {
+            Metrics.removeRegistry(registry);
+        }
+    }
+
+    @Test
+    @SneakyThrows
+    void shouldSkipSavingWalletUnchangedSinceLoadOrSave(@TempDir Path tempDir) {
+        // given
+        final var registry = new SimpleMeterRegistry();
+        Metrics.addRegistry(registry);
+        try {
+            final var repository = new FileBasedWalletRepository(tempDir.toString(), WalletFileFormat.JSON, MAX_IMPORT_FILE_SIZE);
+            final var login = "login";
+            final var user = new User(login, "passwordHash");
+            user.getWallet().addOperation(new Operation(INCOME, 250, "someCategory", "description", null, login));
+            repository.saveWallet(user);
+            user.setWallet(repository.loadWallet(login));
+
+            // when
+            repository.saveWallet(user);
+            user.getWallet().getBudgets().put("someCategory", new Budget("someCategory", 100));
+            user.getWallet().markModified();
+            repository.saveWallet(user);
+            repository.saveWallet(user);
+
+            // then
+            assertEquals(2, registry.get("wallet.repository.save").tag("storage", "file").timer().count());
+            assertEquals(2.0, registry.get("wallet.repository.saves.skipped").tag("storage", "file").counter().count());
+            assertEquals(100.0, repository.loadWallet(login).getBudgets().get("someCategory").getLimit());
+        } finally {
+            Metrics.removeRegistry(registry);
+        }
+    }
 }
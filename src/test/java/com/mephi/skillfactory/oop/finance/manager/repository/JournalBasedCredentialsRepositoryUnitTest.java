@@ -0,0 +1,100 @@
+package com.mephi.skillfactory.oop.finance.manager.repository;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+import lombok.SneakyThrows;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JournalBasedCredentialsRepositoryUnitTest {
+    private static final String CREDENTIALS_FILE = "credentials.json";
+    private static final String JOURNAL_FILE = "credentials.json.journal";
+
+    @Test
+    @SneakyThrows
+    void shouldAppendNewUsersWithoutRewritingSnapshot(@TempDir Path tempDir) {
+        // given
+        final var repository = new JournalBasedCredentialsRepository(tempDir.toString(), CREDENTIALS_FILE, 10);
+        final var credentials = new HashMap<>(repository.loadCredentials());
+        credentials.put("user1", "hash1");
+        repository.saveCredentials(credentials);
+        final var snapshot = Files.readString(tempDir.resolve(CREDENTIALS_FILE));
+
+        // when
+        credentials.put("user2", "hash2");
+        repository.addCredentials(Map.of("user2", "hash2"), credentials);
+        credentials.putAll(Map.of("user3", "hash3", "user4", "hash4"));
+        repository.addCredentials(Map.of("user3", "hash3", "user4", "hash4"), credentials);
+
+        // then
+        assertEquals(snapshot, Files.readString(tempDir.resolve(CREDENTIALS_FILE)));
+        assertEquals(3, Files.readAllLines(tempDir.resolve(JOURNAL_FILE)).size());
+        assertEquals(credentials, new JournalBasedCredentialsRepository(tempDir.toString(), CREDENTIALS_FILE, 10).loadCredentials());
+    }
+
+    @Test
+    @SneakyThrows
+    void shouldFoldJournalIntoSnapshotAboveThreshold(@TempDir Path tempDir) {
+        // given
+        final var repository = new JournalBasedCredentialsRepository(tempDir.toString(), CREDENTIALS_FILE, 2);
+        final var credentials = new HashMap<>(repository.loadCredentials());
+
+        // when
+        for (var i = 1; i <= 3; i++) {
+            credentials.put("user" + i, "hash" + i);
+            repository.addCredentials(Map.of("user" + i, "hash" + i), credentials);
+        }
+
+        // then
+        assertFalse(Files.exists(tempDir.resolve(JOURNAL_FILE)));
+        assertEquals(3, new JournalBasedCredentialsRepository(tempDir.toString(), CREDENTIALS_FILE, 2).loadCredentials().size());
+    }
+
+    @Test
+    @SneakyThrows
+    void shouldDropInterruptedJournalRecord(@TempDir Path tempDir) {
+        // given
+        final var repository = new JournalBasedCredentialsRepository(tempDir.toString(), CREDENTIALS_FILE, 10);
+        final var credentials = new HashMap<String, String>();
+        credentials.put("user1", "hash1");
+        repository.addCredentials(Map.of("user1", "hash1"), credentials);
+        Files.writeString(tempDir.resolve(JOURNAL_FILE), "{\"login\":\"user2\",\"passw", StandardCharsets.UTF_8,
+            StandardOpenOption.APPEND);
+
+        // when
+        final var reopened = new JournalBasedCredentialsRepository(tempDir.toString(), CREDENTIALS_FILE, 10);
+        final var loaded = reopened.loadCredentials();
+        final var updated = new HashMap<>(loaded);
+        updated.put("user3", "hash3");
+        reopened.addCredentials(Map.of("user3", "hash3"), updated);
+
+        // then
+        assertEquals(Map.of("user1", "hash1"), loaded);
+        assertTrue(Files.exists(tempDir.resolve(CREDENTIALS_FILE)));
+        assertEquals(Map.of("user1", "hash1", "user3", "hash3"),
+            new JournalBasedCredentialsRepository(tempDir.toString(), CREDENTIALS_FILE, 10).loadCredentials());
+    }
+
+    @Test
+    @SneakyThrows
+    void shouldReadCredentialsWrittenByFileBasedRepository(@TempDir Path tempDir) {
+        // given
+        new FileBasedCredentialsRepository(tempDir.toString(), CREDENTIALS_FILE).saveCredentials(Map.of("user1", "hash1"));
+
+        // when
+        final var loaded = new JournalBasedCredentialsRepository(tempDir.toString(), CREDENTIALS_FILE, 10).loadCredentials();
+
+        // then
+        assertEquals(Map.of("user1", "hash1"), loaded);
+    }
+}
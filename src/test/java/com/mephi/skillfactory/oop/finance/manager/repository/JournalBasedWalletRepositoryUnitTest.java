@@ -0,0 +1,200 @@
+package com.mephi.skillfactory.oop.finance.manager.repository;
+
+import com.mephi.skillfactory.oop.finance.manager.domain.Budget;
+import com.mephi.skillfactory.oop.finance.manager.domain.Operation;
+import com.mephi.skillfactory.oop.finance.manager.domain.User;
+import com.mephi.skillfactory.oop.finance.manager.repository.codec.BinaryWalletCodec;
+import com.mephi.skillfactory.oop.finance.manager.repository.codec.WalletFileFormat;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import lombok.SneakyThrows;
+
+import static com.mephi.skillfactory.oop.finance.manager.domain.enumeration.OperationType.EXPENSE;
+import static com.mephi.skillfactory.oop.finance.manager.domain.enumeration.OperationType.INCOME;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JournalBasedWalletRepositoryUnitTest {
+    private static final DataSize MAX_IMPORT_FILE_SIZE = DataSize.ofMegabytes(1);
+
+    @Test
+    @SneakyThrows
+    void shouldAppendNewOperationsToJournal(@TempDir Path tempDir) {
+        // given
+        final var repository = new JournalBasedWalletRepository(tempDir.toString(), WalletFileFormat.JSON, 1000, MAX_IMPORT_FILE_SIZE);
+        final var login = "login";
+        final var user = new User(login, "passwordHash");
+        repository.saveWallet(user);
+
+        // when
+        user.getWallet().addOperation(new Operation(INCOME, 500, "salary", "", null, login));
+        user.getWallet().addOperation(new Operation(EXPENSE, 100, "food", "", login, null));
+        user.getWallet().getBudgets().put("food", new Budget("food", 300));
+        repository.saveWallet(user);
+
+        // then
+        final var journal = tempDir.resolve(login + ".journal");
+        assertTrue(Files.exists(journal));
+        assertEquals(3, Files.readAllLines(journal).size());
+
+        final var loaded = new JournalBasedWalletRepository(tempDir.toString(), WalletFileFormat.JSON, 1000, MAX_IMPORT_FILE_SIZE).loadWallet(login);
+        assertEquals(400.0, loaded.getBalance());
+        assertEquals(2, loaded.getOperations().size());
+        assertEquals(100.0, loaded.expenseByCategory("food"));
+        assertEquals(300.0, loaded.getBudgets().get("food").getLimit());
+    }
+
+    @Test
+    @SneakyThrows
+    void shouldCompactJournalIntoSnapshot(@TempDir Path tempDir) {
+        // given
+        final var repository = new JournalBasedWalletRepository(tempDir.toString(), WalletFileFormat.JSON, 2, MAX_IMPORT_FILE_SIZE);
+        final var login = "login";
+        final var user = new User(login, "passwordHash");
+        repository.saveWallet(user);
+
+        // when
+        for (var i = 0; i < 3; i++) {
+            user.getWallet().addOperation(new Operation(INCOME, 10, "salary", "", null, login));
+            repository.saveWallet(user);
+        }
+
+        // then
+        final var loaded = new JournalBasedWalletRepository(tempDir.toString(), WalletFileFormat.JSON, 2, MAX_IMPORT_FILE_SIZE).loadWallet(login);
+        assertEquals(3, loaded.getOperations().size());
+        assertEquals(30.0, loaded.getBalance());
+        assertFalse(Files.exists(tempDir.resolve(login + ".json.tmp")));
+    }
+
+    @Test
+    @SneakyThrows
+    void shouldRewriteSnapshotAfterCategoryRename(@TempDir Path tempDir) {
+        // given
+        final var repository = new JournalBasedWalletRepository(tempDir.toString(), WalletFileFormat.JSON, 1000, MAX_IMPORT_FILE_SIZE);
+        final var login = "login";
+        final var user = new User(login, "passwordHash");
+        user.getWallet().addOperation(new Operation(EXPENSE, 100, "cafe", "", login, null));
+        repository.saveWallet(user);
+
+        // when
+        user.getWallet().renameCategory("cafe", "food");
+        repository.saveWallet(user);
+
+        // then
+        final var loaded = new JournalBasedWalletRepository(tempDir.toString(), WalletFileFormat.JSON, 1000, MAX_IMPORT_FILE_SIZE).loadWallet(login);
+        assertEquals("food", loaded.getOperations().getFirst().getCategory());
+        assertEquals(100.0, loaded.expenseByCategory("food"));
+    }
+
+    @Test
+    @SneakyThrows
+    void shouldIgnoreBrokenJournalTail(@TempDir Path tempDir) {
+        // given
+        final var repository = new JournalBasedWalletRepository(tempDir.toString(), WalletFileFormat.JSON, 1000, MAX_IMPORT_FILE_SIZE);
+        final var login = "login";
+        final var user = new User(login, "passwordHash");
+        repository.saveWallet(user);
+        user.getWallet().addOperation(new Operation(INCOME, 50, "salary", "", null, login));
+        repository.saveWallet(user);
+
+        Files.writeString(tempDir.resolve(login + ".journal"), "{\"type\":\"OPER", StandardOpenOption.APPEND);
+
+        // when
+        final var loaded = new JournalBasedWalletRepository(tempDir.toString(), WalletFileFormat.JSON, 1000, MAX_IMPORT_FILE_SIZE).loadWallet(login);
+
+        // then
+        assertEquals(1, loaded.getOperations().size());
+        assertEquals(50.0, loaded.getBalance());
+    }
+
+    @Test
+    @SneakyThrows
+    void shouldDropLastRecordWithoutItsSeparator(@TempDir Path tempDir) {
+        // given
+        final var repository = new JournalBasedWalletRepository(tempDir.toString(), WalletFileFormat.JSON, 1000, MAX_IMPORT_FILE_SIZE);
+        final var login = "login";
+        final var user = new User(login, "passwordHash");
+        repository.saveWallet(user);
+        user.getWallet().addOperation(new Operation(INCOME, 50, "salary", "", null, login));
+        repository.saveWallet(user);
+        user.getWallet().addOperation(new Operation(INCOME, 70, "salary", "", null, login));
+        repository.saveWallet(user);
+
+        // the append of the second record was interrupted right before its separator
+        final var journal = tempDir.resolve(login + ".journal");
+        final var content = Files.readString(journal);
+        Files.writeString(journal, content.substring(0, content.length() - 1));
+
+        // when
+        final var loaded = new JournalBasedWalletRepository(tempDir.toString(), WalletFileFormat.JSON, 1000, MAX_IMPORT_FILE_SIZE).loadWallet(login);
+
+        // then
+        assertEquals(1, loaded.getOperations().size());
+        assertEquals(50.0, loaded.getBalance());
+        assertEquals(50.0, new JournalBasedWalletRepository(tempDir.toString(), WalletFileFormat.JSON, 1000, MAX_IMPORT_FILE_SIZE)
+            .loadWallet(login).getBalance());
+    }
+
+    @Test
+    @SneakyThrows
+    void shouldKeepAppendingForCopyOfWalletAdoptedAfterItLeftHeap(@TempDir Path tempDir) {
+        // given
+        final var repository = new JournalBasedWalletRepository(tempDir.toString(), WalletFileFormat.JSON, 1000, MAX_IMPORT_FILE_SIZE);
+        final var login = "login";
+        final var user = new User(login, "passwordHash");
+        user.getWallet().addOperation(new Operation(INCOME, 500, "salary", "", null, login));
+        repository.saveWallet(user);
+        user.getWallet().addOperation(new Operation(EXPENSE, 100, "food", "", login, null));
+        repository.saveWallet(user);
+        final var snapshot = Files.readString(tempDir.resolve(login + ".json"));
+
+        // when
+        final var codec = new BinaryWalletCodec();
+        final var out = new ByteArrayOutputStream();
+        codec.write(user.getWallet(), out);
+        final var copy = codec.read(new ByteArrayInputStream(out.toByteArray())); // as the off-heap tier gives it back
+        copy.markPersisted(copy.getVersion());
+        repository.forgetWallet(login);
+        repository.adoptWallet(login, copy);
+        user.setWallet(copy);
+        user.getWallet().addOperation(new Operation(EXPENSE, 50, "food", "", login, null));
+        repository.saveWallet(user);
+
+        // then
+        assertEquals(snapshot, Files.readString(tempDir.resolve(login + ".json")));
+        assertEquals(2, Files.readAllLines(tempDir.resolve(login + ".journal")).size());
+        final var loaded = new JournalBasedWalletRepository(tempDir.toString(), WalletFileFormat.JSON, 1000, MAX_IMPORT_FILE_SIZE).loadWallet(login);
+        assertEquals(3, loaded.getOperations().size());
+        assertEquals(350.0, loaded.getBalance());
+    }
+
+    @Test
+    @SneakyThrows
+    void shouldWriteSnapshotForWalletItForgot(@TempDir Path tempDir) {
+        // given
+        final var repository = new JournalBasedWalletRepository(tempDir.toString(), WalletFileFormat.JSON, 1000, MAX_IMPORT_FILE_SIZE);
+        final var login = "login";
+        final var user = new User(login, "passwordHash");
+        repository.saveWallet(user);
+
+        // when
+        repository.forgetWallet(login);
+        user.getWallet().addOperation(new Operation(INCOME, 500, "salary", "", null, login));
+        repository.saveWallet(user);
+
+        // then
+        assertFalse(Files.exists(tempDir.resolve(login + ".journal")));
+        final var loaded = new JournalBasedWalletRepository(tempDir.toString(), WalletFileFormat.JSON, 1000, MAX_IMPORT_FILE_SIZE).loadWallet(login);
+        assertEquals(500.0, loaded.getBalance());
+    }
+}
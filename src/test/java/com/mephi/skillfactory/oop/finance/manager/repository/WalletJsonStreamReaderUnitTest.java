@@ -0,0 +1,38 @@
+package com.mephi.skillfactory.oop.finance.manager.repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mephi.skillfactory.oop.finance.manager.repository.exception.FileContentTypeMismatchException;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import lombok.SneakyThrows;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+class WalletJsonStreamReaderUnitTest {
+
+    @Test
+    @SneakyThrows
+    void shouldRejectOversizedFileBeforeParsingIt(@TempDir Path tempDir) {
+        // given
+        final var mapper = mock(ObjectMapper.class);
+        final var reader = new WalletJsonStreamReader(mapper, DataSize.ofBytes(16));
+        final var src = tempDir.resolve("wallet-to-import.json");
+        Files.writeString(src, "{ not valid json, but longer than the limit }");
+
+        // when
+        final var exception = assertThrows(FileContentTypeMismatchException.class, () -> reader.read(src));
+
+        // then
+        assertEquals("Размер импортируемого файла (45 байт) превышает допустимый (16 байт)", exception.getMessage());
+        verifyNoInteractions(mapper);
+    }
+}
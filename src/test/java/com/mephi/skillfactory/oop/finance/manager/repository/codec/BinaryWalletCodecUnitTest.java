@@ -0,0 +1,236 @@
+package com.mephi.skillfactory.oop.finance.manager.repository.codec;
+
+import com.mephi.skillfactory.oop.finance.manager.domain.Budget;
+import com.mephi.skillfactory.oop.finance.manager.domain.Operation;
+import com.mephi.skillfactory.oop.finance.manager.domain.Wallet;
+import com.mephi.skillfactory.oop.finance.manager.repository.exception.CorruptFileException;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import lombok.SneakyThrows;
+
+import static com.mephi.skillfactory.oop.finance.manager.domain.Wallet.WITHOUT_CATEGORY;
+import static com.mephi.skillfactory.oop.finance.manager.domain.enumeration.OperationType.EXPENSE;
+import static com.mephi.skillfactory.oop.finance.manager.domain.enumeration.OperationType.INCOME;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BinaryWalletCodecUnitTest {
+    private final BinaryWalletCodec codec = new BinaryWalletCodec();
+
+    @Test
+    @SneakyThrows
+    void shouldRoundTripWallet() {
+        // given
+        final var income = new Operation(UUID.randomUUID(), INCOME, 1000.5, "salary", "за октябрь", null, "login");
+        income.setTimestamp(Instant.parse("2024-10-01T10:15:30.123456789Z"));
+        final var transfer = new Operation(UUID.randomUUID(), EXPENSE, 250, "Перевод", null, "login", "friend");
+        transfer.setTimestamp(Instant.parse("2024-10-02T00:00:00Z"));
+        final var wallet = new Wallet(750.5, new ArrayList<>(List.of(income, transfer)),
+            new HashMap<>(Map.of("Перевод", new Budget("Перевод", 300))));
+
+        // when
+        final var out = new ByteArrayOutputStream();
+        codec.write(wallet, out);
+        final var decoded = codec.read(new ByteArrayInputStream(out.toByteArray()));
+
+        // then
+        assertEquals(750.5, decoded.getBalance());
+        assertEquals(2, decoded.getOperations().size());
+
+        final var decodedIncome = decoded.getOperations().getFirst();
+        assertEquals(income.getId(), decodedIncome.getId());
+        assertEquals(INCOME, decodedIncome.getType());
+        assertEquals(1000.5, decodedIncome.getAmount());
+        assertEquals("salary", decodedIncome.getCategory());
+        assertEquals("за октябрь", decodedIncome.getDescription());
+        assertEquals(income.getTimestamp(), decodedIncome.getTimestamp());
+        assertNull(decodedIncome.getFromUser());
+        assertEquals("login", decodedIncome.getToUser());
+
+        final var decodedTransfer = decoded.getOperations().get(1);
+        assertNull(decodedTransfer.getDescription());
+        assertEquals("friend", decodedTransfer.getToUser());
+
+        assertEquals(300.0, decoded.getBudgets().get("Перевод").getLimit());
+        assertEquals(250.0, decoded.expenseByCategory("Перевод"));
+    }
+
+    @Test
+    @SneakyThrows
+    void shouldRoundTripRenamedCategoriesAndOperationsWithoutCategory() {
+        // given
+        final var wallet = new Wallet();
+        wallet.addOperation(new Operation(UUID.randomUUID(), EXPENSE, 100, "cafe", "", "login", null));
+        wallet.addOperation(new Operation(UUID.randomUUID(), EXPENSE, 40, "food", "", "login", null));
+        wallet.addOperation(new Operation(UUID.randomUUID(), EXPENSE, 5, null, "", "login", null));
+        wallet.renameCategory("cafe", "food");
+
+        // when
+        final var out = new ByteArrayOutputStream();
+        codec.write(wallet, out);
+        final var decoded = codec.read(new ByteArrayInputStream(out.toByteArray()));
+
+        // then
+        assertEquals(wallet.getOperations(), decoded.getOperations());
+        assertEquals("food", decoded.getOperations().getFirst().getCategory());
+        assertNull(decoded.getOperations().get(2).getCategory());
+        assertEquals(140.0, decoded.expenseByCategory("food"));
+        assertEquals(5.0, decoded.expenseByCategory(WITHOUT_CATEGORY));
+    }
+
+    @Test
+    @SneakyThrows
+    void shouldReadVersionWithDoubleAmounts() {
+        // given
+        final var bytes = new ByteArrayOutputStream();
+        final var checksum = new CRC32();
+        final var data = new DataOutputStream(new CheckedOutputStream(bytes, checksum));
+        data.writeInt(0x464D574C);
+        data.writeByte(3);
+        data.writeDouble(0.3);
+        data.writeInt(1);
+        data.writeUTF("food");
+        data.writeInt(1);
+        data.writeLong(1L);
+        data.writeLong(2L);
+        data.writeByte(EXPENSE.ordinal());
+        data.writeDouble(0.7);
+        data.writeInt(0);
+        data.writeLong(Long.MIN_VALUE);
+        data.writeInt(0);
+        data.writeInt(-1);
+        data.writeInt(-1);
+        data.writeInt(-1);
+        data.writeInt(1);
+        data.writeInt(0);
+        data.writeDouble(1.1);
+        data.writeByte(0);
+        data.writeInt(0);
+        data.writeInt((int) checksum.getValue());
+
+        // when
+        final var decoded = codec.read(new ByteArrayInputStream(bytes.toByteArray()));
+
+        // then
+        assertEquals(30, decoded.getBalanceMinor());
+        assertEquals(70, decoded.getOperations().getFirst().getAmountMinor());
+        assertEquals(110, decoded.getBudgets().get("food").getLimitMinor());
+    }
+
+    @Test
+    void shouldRejectNonBinaryContent() {
+        final var json = "{\"balance\": 0}".getBytes();
+
+        assertThrows(CorruptFileException.class, () -> codec.read(new ByteArrayInputStream(json)));
+    }
+
+    @Test
+    @SneakyThrows
+    void shouldRejectContentWithBrokenChecksum() {
+        // given
+        final var out = new ByteArrayOutputStream();
+        codec.write(new Wallet(100, new ArrayList<>(), new HashMap<>()), out);
+        final var bytes = out.toByteArray();
+
+        // when
+        bytes[10] ^= 1; // a bit of the balance
+
+        // then
+        assertThrows(CorruptFileException.class, () -> codec.read(new ByteArrayInputStream(bytes)));
+    }
+
+    @Test
+    @SneakyThrows
+    void shouldRejectTruncatedContentAsCorrupt() {
+        // given
+        final var out = new ByteArrayOutputStream();
+        codec.write(new Wallet(100, new ArrayList<>(List.of(new Operation(UUID.randomUUID(), INCOME, 100, "salary", "", null,
+            "login"))), new HashMap<>()), out);
+
+        // when
+        final var torn = Arrays.copyOf(out.toByteArray(), out.size() / 2);
+
+        // then
+        assertThrows(CorruptFileException.class, () -> codec.read(new ByteArrayInputStream(torn)));
+    }
+
+    @Test
+    @SneakyThrows
+    void shouldRejectCountLargerThanRestOfFileBeforeAllocatingForIt() {
+        // given
+        final var bytes = new ByteArrayOutputStream();
+        final var data = new DataOutputStream(bytes);
+        data.writeInt(0x464D574C);
+        data.writeByte(4);
+        data.writeLong(0);
+        data.writeInt(Integer.MAX_VALUE); // a damaged dictionary size
+
+        // when
+        final var exception = assertThrows(CorruptFileException.class, () -> codec.read(new ByteArrayInputStream(bytes.toByteArray())));
+
+        // then
+        assertEquals("Некорректное количество элементов: " + Integer.MAX_VALUE, exception.getMessage());
+    }
+
+    @Test
+    @SneakyThrows
+    void shouldRejectTextLengthOutsideRestOfFile() {
+        // given
+        final var bytes = new ByteArrayOutputStream();
+        final var data = new DataOutputStream(bytes);
+        data.writeInt(0x464D574C);
+        data.writeByte(4);
+        data.writeLong(0);
+        data.writeInt(0);
+        data.writeInt(1);
+        data.writeLong(1L);
+        data.writeLong(2L);
+        data.writeByte(EXPENSE.ordinal());
+        data.writeLong(70);
+        data.writeInt(-1);
+        data.writeLong(Long.MIN_VALUE);
+        data.writeInt(0);
+        data.writeInt(-1);
+        data.writeInt(-1);
+        data.writeInt(-5); // a damaged description length
+
+        // when
+        final var exception = assertThrows(CorruptFileException.class, () -> codec.read(new ByteArrayInputStream(bytes.toByteArray())));
+
+        // then
+        assertEquals("Некорректная длина строки: -5", exception.getMessage());
+    }
+
+    @Test
+    @SneakyThrows
+    void shouldRejectNewerVersionWithoutCallingItCorrupt() {
+        // given
+        final var out = new ByteArrayOutputStream();
+        final var data = new DataOutputStream(out);
+        data.writeInt(0x464D574C);
+        data.writeByte(99);
+
+        // when
+        final var exception = assertThrows(IOException.class, () -> codec.read(new ByteArrayInputStream(out.toByteArray())));
+
+        // then
+        assertFalse(exception instanceof CorruptFileException);
+    }
+}
@@ -1,22 +1,35 @@
 package com.mephi.skillfactory.oop.finance.manager.service.auth;
 
+import com.mephi.skillfactory.oop.finance.manager.concurrent.IoExecutor;
 import com.mephi.skillfactory.oop.finance.manager.domain.User;
 import com.mephi.skillfactory.oop.finance.manager.domain.Wallet;
 import com.mephi.skillfactory.oop.finance.manager.repository.FileBasedCredentialsRepository;
 import com.mephi.skillfactory.oop.finance.manager.repository.FileBasedWalletRepository;
+import com.mephi.skillfactory.oop.finance.manager.repository.JournalBasedCredentialsRepository;
+import com.mephi.skillfactory.oop.finance.manager.repository.codec.WalletFileFormat;
+import com.mephi.skillfactory.oop.finance.manager.repository.exception.WalletLoadException;
+import com.mephi.skillfactory.oop.finance.manager.service.AlertService;
 import com.mephi.skillfactory.oop.finance.manager.service.auth.exception.IllegalCredentialsException;
 import com.mephi.skillfactory.oop.finance.manager.service.exception.UserNotFoundException;
+import com.mephi.skillfactory.oop.finance.manager.service.wallet.PeriodAggregator;
+import com.mephi.skillfactory.oop.finance.manager.service.wallet.WalletLocks;
+import com.mephi.skillfactory.oop.finance.manager.service.wallet.WalletPersister;
+import com.mephi.skillfactory.oop.finance.manager.service.wallet.WalletService;
 
 import org.apache.commons.codec.digest.DigestUtils;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.util.unit.DataSize;
 
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.stream.Stream;
@@ -25,13 +38,20 @@ import lombok.SneakyThrows;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.params.provider.Arguments.arguments;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
-@SpringBootTest(classes = AuthService.class)
+@SpringBootTest(classes = {AuthService.class, WalletLocks.class, IoExecutor.class, OffHeapWalletStore.class})
 class AuthServiceUnitTest {
     @MockitoBean
     private FileBasedWalletRepository walletRepository;
@@ -202,6 +222,113 @@ class AuthServiceUnitTest {
         assertEquals("Неправильный пароль", exception.getMessage());
     }
 
+    @Test
+    @SneakyThrows
+    @SuppressWarnings("unchecked")
+    void shouldLoadWalletLazilyOnlyOnce() {
+        // given
+        final var login = "login";
+        final var credentialsFiled = AuthService.class.getDeclaredField("credentials");
+        credentialsFiled.setAccessible(true);
+        ((Map<String, String>) credentialsFiled.get(authService)).put(login, DigestUtils.sha256Hex("password"));
+
+        // when
+        final var first = authService.findUser(login);
+        final var second = authService.findUser(login);
+
+        // then
+        assertNotNull(first);
+        assertSame(first, second);
+        verify(walletRepository, times(1)).loadWallet(login);
+        assertNull(authService.findUser("unknown"));
+    }
+
+    @Test
+    @SneakyThrows
+    @SuppressWarnings("unchecked")
+    void shouldFailLoginAndCacheNothingIfWalletCannotBeLoaded() {
+        // given
+        final var login = "login";
+        final var password = "password";
+        final var credentialsFiled = AuthService.class.getDeclaredField("credentials");
+        credentialsFiled.setAccessible(true);
+        ((Map<String, String>) credentialsFiled.get(authService)).put(login, DigestUtils.sha256Hex(password));
+        doThrow(new WalletLoadException("Ошибка загрузки кошелька для login"))
+            .when(walletRepository).loadWallet(login);
+
+        // when
+        assertThrows(WalletLoadException.class, () -> authService.login(login, password));
+
+        // then
+        assertNull(authService.getAllUsers().get(login));
+        verify(walletRepository, never()).saveWallet(any());
+    }
+
+    @Test
+    @SneakyThrows
+    void shouldRegisterAllUsersWithOneCredentialsWrite() {
+        // given
+        final var passwords = Map.of("user1", "password1", "user2", "password2");
+
+        // when
+        authService.registerAll(passwords);
+
+        // then
+        final var expectedHashes = Map.of("user1", DigestUtils.sha256Hex("password1"), "user2", DigestUtils.sha256Hex("password2"));
+        verify(credentialsRepository, times(1)).addCredentials(eq(expectedHashes), any());
+        verify(walletRepository, times(2)).saveWallet(any());
+        assertEquals("user2", authService.login("user2", "password2").getLogin());
+    }
+
+    @Test
+    @SneakyThrows
+    void shouldRegisterNoneOfUsersIfOneIsAlreadyRegistered() {
+        // given
+        authService.register("user2", "password");
+
+        // when
+        final var exception = assertThrows(IllegalCredentialsException.class,
+            () -> authService.registerAll(Map.of("user1", "password1", "user2", "password2")));
+
+        // then
+        assertEquals("Пользователь с логином user2 уже зарегистрирован", exception.getMessage());
+        assertNull(authService.findUser("user1"));
+    }
+
+    @Test
+    @SneakyThrows
+    void shouldKeepEvictedUserWhileItIsHeldSoThatNoOperationIsLost(@TempDir Path tempDir) {
+        // given
+        final var walletLocks = new WalletLocks(4);
+        final var ioExecutor = new IoExecutor(1);
+        final var offHeapWallets = new OffHeapWalletStore(DataSize.ofMegabytes(1), DataSize.ofKilobytes(64));
+        final var repository = new FileBasedWalletRepository(tempDir.toString(), WalletFileFormat.JSON, DataSize.ofMegabytes(1));
+        final var auth = new AuthService(repository, new JournalBasedCredentialsRepository(tempDir.toString(), "credentials.json", 10),
+            walletLocks, ioExecutor, offHeapWallets, 2, false);
+        final var persister = new WalletPersister(repository, walletLocks, ioExecutor, offHeapWallets, Duration.ofHours(1), 100);
+        final var walletService = new WalletService(auth, repository, new AlertService(), walletLocks, persister,
+            new PeriodAggregator(200_000, 50_000));
+        auth.register("alice", "password");
+        final var alice = auth.login("alice", "password");
+        walletService.addIncome(alice, 100, "salary", "");
+
+        // when
+        auth.register("bob", "password");
+        auth.register("carol", "password"); // alice is the least recently used of three users in a cache of two
+        final var evictions = auth.getCacheStats().evictions();
+        walletService.addExpense(alice, 30, "food", "");
+        walletService.transfer("bob", "alice", 50, "gift", "");
+        walletService.transfer("alice", "carol", 20, "gift", "");
+        persister.flush();
+
+        // then
+        assertEquals(1, evictions);
+        assertSame(alice, auth.findUser("alice"));
+        assertEquals(4, alice.getWallet().getOperations().size());
+        assertEquals(100.0, alice.getWallet().getBalance());
+        assertEquals(alice.getWallet().getOperations(), repository.loadWallet("alice").getOperations());
+    }
+
     private static Stream<Arguments> provideBadLoginOrPasswordArgs() {
         return Stream.of(
             arguments((Object) null), arguments(""), arguments("        ") // only whitespaces
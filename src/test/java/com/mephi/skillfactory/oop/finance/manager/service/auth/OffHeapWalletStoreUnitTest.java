@@ -0,0 +1,96 @@
+package com.mephi.skillfactory.oop.finance.manager.service.auth;
+
+import com.mephi.skillfactory.oop.finance.manager.domain.Budget;
+import com.mephi.skillfactory.oop.finance.manager.domain.Operation;
+import com.mephi.skillfactory.oop.finance.manager.domain.Wallet;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.util.UUID;
+
+import static com.mephi.skillfactory.oop.finance.manager.domain.enumeration.OperationType.EXPENSE;
+import static com.mephi.skillfactory.oop.finance.manager.domain.enumeration.OperationType.INCOME;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OffHeapWalletStoreUnitTest {
+
+    @Test
+    void shouldRehydrateParkedWalletOnce() {
+        // given
+        final var store = new OffHeapWalletStore(DataSize.ofMegabytes(1), DataSize.ofKilobytes(64));
+        final var wallet = walletWithOperations(3);
+        wallet.getBudgets().put("food", new Budget("food", 100));
+
+        // when
+        store.park("login", wallet);
+        final var parkedBytes = store.parkedBytes();
+        final var rehydrated = store.take("login");
+
+        // then
+        assertTrue(parkedBytes > 0);
+        assertNotNull(rehydrated);
+        assertEquals(wallet.getOperations(), rehydrated.getOperations());
+        assertEquals(wallet.getBalance(), rehydrated.getBalance());
+        assertEquals(100.0, rehydrated.getBudgets().get("food").getLimit());
+        assertTrue(rehydrated.isPersisted());
+        assertNull(store.take("login"));
+        assertEquals(0, store.parkedBytes());
+    }
+
+    @Test
+    void shouldDropEldestWalletsAboveCapacity() {
+        // given
+        final var walletSize = parkedSize(walletWithOperations(10));
+        final var store = new OffHeapWalletStore(DataSize.ofBytes(walletSize * 2), DataSize.ofBytes(walletSize));
+
+        // when
+        store.park("first", walletWithOperations(10));
+        store.park("second", walletWithOperations(10));
+        store.park("third", walletWithOperations(10));
+        store.park("large", walletWithOperations(20));
+
+        // then
+        assertEquals(2, store.parkedWallets());
+        assertNull(store.take("first"));
+        assertNull(store.take("large"));
+        assertNotNull(store.take("second"));
+        assertNotNull(store.take("third"));
+    }
+
+    @Test
+    void shouldNotRehydrateDiscardedOrDisabledWallets() {
+        // given
+        final var store = new OffHeapWalletStore(DataSize.ofMegabytes(1), DataSize.ofKilobytes(64));
+        final var disabled = new OffHeapWalletStore(DataSize.ofBytes(0), DataSize.ofKilobytes(64));
+
+        // when
+        store.park("login", walletWithOperations(1));
+        store.discard("login");
+        disabled.park("login", walletWithOperations(1));
+
+        // then
+        assertNull(store.take("login"));
+        assertNull(disabled.take("login"));
+        assertEquals(0, disabled.parkedWallets());
+    }
+
+    private static long parkedSize(Wallet wallet) {
+        final var store = new OffHeapWalletStore(DataSize.ofMegabytes(1), DataSize.ofKilobytes(64));
+        store.park("login", wallet);
+        return store.parkedBytes();
+    }
+
+    private static Wallet walletWithOperations(int count) {
+        final var wallet = new Wallet();
+        for (var i = 0; i < count; i++) {
+            wallet.addOperation(i % 2 == 0
+                ? new Operation(UUID.randomUUID(), INCOME, 100 + i, "salary", "", null, "login")
+                : new Operation(UUID.randomUUID(), EXPENSE, 10.5, "food", "обед", "login", null));
+        }
+        return wallet;
+    }
+}
@@ -0,0 +1,83 @@
+package com.mephi.skillfactory.oop.finance.manager.service.wallet;
+
+import com.mephi.skillfactory.oop.finance.manager.domain.Money;
+import com.mephi.skillfactory.oop.finance.manager.domain.Operation;
+import com.mephi.skillfactory.oop.finance.manager.domain.Wallet;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static com.mephi.skillfactory.oop.finance.manager.domain.Wallet.WITHOUT_CATEGORY;
+import static com.mephi.skillfactory.oop.finance.manager.domain.enumeration.OperationType.EXPENSE;
+import static com.mephi.skillfactory.oop.finance.manager.domain.enumeration.OperationType.INCOME;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PeriodAggregatorUnitTest {
+    private static final Instant FROM = Instant.parse("2024-01-01T00:00:00Z");
+    private static final Instant TO = Instant.parse("2024-02-01T00:00:00Z");
+
+    private final PeriodAggregator sequential = new PeriodAggregator(Integer.MAX_VALUE, 1);
+    private final PeriodAggregator parallel = new PeriodAggregator(1, 7);
+
+    @Test
+    void shouldSumChunksInParallelAsSequentially() {
+        // given
+        final var wallet = walletOfJanuary(1000);
+
+        // when
+        final var expected = sequential.summarize(wallet, wallet.scanBetween(FROM, TO));
+        final var actual = parallel.summarize(wallet, wallet.scanBetween(FROM, TO));
+
+        // then
+        assertEquals(expected.income(), actual.income());
+        assertEquals(expected.expense(), actual.expense());
+        assertEquals(expected.incomeByCategory().toMajor(), actual.incomeByCategory().toMajor());
+        assertEquals(expected.expenseByCategory().toMajor(), actual.expenseByCategory().toMajor());
+        assertEquals(Map.of("salary", wallet.getTotalIncome()), actual.incomeByCategory().toMajor());
+        assertEquals(wallet.expenseByCategory(WITHOUT_CATEGORY), Money.toMajor(actual.expenseByCategory().get(WITHOUT_CATEGORY)));
+    }
+
+    @Test
+    void shouldBucketChunksInParallelAsSequentially() {
+        // given
+        final var wallet = walletOfJanuary(500);
+        final var starts = List.of(LocalDate.parse("2024-01-01"), LocalDate.parse("2024-01-08"), LocalDate.parse("2024-01-15"),
+            LocalDate.parse("2024-01-22"), LocalDate.parse("2024-01-29"));
+        final var expectedIncomes = new long[starts.size()];
+        final var expectedExpenses = new long[starts.size()];
+        final var incomes = new long[starts.size()];
+        final var expenses = new long[starts.size()];
+
+        // when
+        sequential.bucket(wallet.scanBetween(FROM, TO), starts, ZoneOffset.UTC, expectedIncomes, expectedExpenses);
+        parallel.bucket(wallet.scanBetween(FROM, TO), starts, ZoneOffset.UTC, incomes, expenses);
+
+        // then
+        assertArrayEquals(expectedIncomes, incomes);
+        assertArrayEquals(expectedExpenses, expenses);
+    }
+
+    private static Wallet walletOfJanuary(int count) {
+        final var wallet = new Wallet();
+        for (var i = 0; i < count; i++) {
+            final var timestamp = FROM.plusSeconds(i * 2677L);
+            wallet.addOperation(i % 5 == 0
+                ? new Operation(UUID.randomUUID(), INCOME, 100.01 + i, "salary", "", timestamp, null, "login")
+                : new Operation(UUID.randomUUID(), EXPENSE, 0.5 + i % 7, category(i), "", timestamp, "login", null));
+        }
+        return wallet;
+    }
+
+    private static String category(int index) {
+        return index % 3 == 0
+            ? null
+            : "food-" + index % 4;
+    }
+}
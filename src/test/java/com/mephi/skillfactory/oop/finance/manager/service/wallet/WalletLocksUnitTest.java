@@ -0,0 +1,106 @@
+package com.mephi.skillfactory.oop.finance.manager.service.wallet;
+
+import com.mephi.skillfactory.oop.finance.manager.domain.User;
+import com.mephi.skillfactory.oop.finance.manager.repository.WalletRepository;
+import com.mephi.skillfactory.oop.finance.manager.service.AlertService;
+import com.mephi.skillfactory.oop.finance.manager.service.auth.AuthService;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import lombok.SneakyThrows;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class WalletLocksUnitTest {
+    private static final int THREADS = 8;
+    private static final int TRANSFERS_PER_THREAD = 500;
+
+    // with a single stripe both logins share it, with 64 they fall into different ones
+    @ParameterizedTest
+    @ValueSource(ints = {1, 64})
+    @SneakyThrows
+    void shouldTransferBothWaysConcurrentlyWithoutDeadlockOrLostOperations(int stripes) {
+        // given
+        final var alice = new User("alice", "passwordHash");
+        final var bob = new User("bob", "passwordHash");
+        final var authService = mock(AuthService.class);
+        when(authService.findUser("alice")).thenReturn(alice);
+        when(authService.findUser("bob")).thenReturn(bob);
+        final var walletLocks = new WalletLocks(stripes);
+        final var walletService = new WalletService(authService, mock(WalletRepository.class), new AlertService(), walletLocks,
+            mock(WalletPersister.class), new PeriodAggregator(200_000, 50_000));
+        walletService.addIncome(alice, 1000, "salary", "");
+        walletService.addIncome(bob, 1000, "salary", "");
+
+        final var start = new CountDownLatch(1);
+        final var tasks = new ArrayList<Callable<Void>>();
+        for (var i = 0; i < THREADS; i++) {
+            final var fromLogin = i % 2 == 0
+                ? "alice"
+                : "bob";
+            final var toLogin = i % 2 == 0
+                ? "bob"
+                : "alice";
+            tasks.add(() -> {
+                start.await();
+                for (var j = 0; j < TRANSFERS_PER_THREAD; j++) {
+                    walletService.transfer(fromLogin, toLogin, 1.25, "Перевод", "");
+                }
+                return null;
+            });
+        }
+
+        // when
+        final var executor = Executors.newFixedThreadPool(THREADS);
+        final var futures = new ArrayList<Future<Void>>();
+        try {
+            tasks.forEach(task -> futures.add(executor.submit(task)));
+            start.countDown();
+            executor.shutdown();
+
+            // then
+            assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS), "transfers did not finish, the stripes deadlocked");
+        } finally {
+            executor.shutdownNow();
+        }
+        for (final var future : futures) {
+            future.get();
+        }
+
+        final var transfersEachWay = THREADS / 2 * TRANSFERS_PER_THREAD;
+        for (final var user : new User[]{alice, bob}) {
+            final var wallet = user.getWallet();
+            assertEquals(1 + 2 * transfersEachWay, wallet.getOperations().size());
+            assertEquals(1000.0, wallet.getBalance());
+            assertEquals(1000 + 1.25 * transfersEachWay, wallet.getTotalIncome());
+            assertEquals(1.25 * transfersEachWay, wallet.getTotalExpense());
+            assertEquals(1.25 * transfersEachWay, wallet.expenseByCategory("Перевод"));
+        }
+    }
+
+    @Test
+    @SneakyThrows
+    void shouldRunActionOverTwoLoginsOfSameStripeOnce() {
+        // given
+        final var walletLocks = new WalletLocks(1);
+        final var runs = new int[1];
+
+        // when
+        walletLocks.runLocked("alice", "bob", () -> walletLocks.runLocked("alice", () -> runs[0]++));
+
+        // then
+        assertEquals(1, runs[0]);
+    }
+}
@@ -0,0 +1,131 @@
+package com.mephi.skillfactory.oop.finance.manager.service.wallet;
+
+import com.mephi.skillfactory.oop.finance.manager.concurrent.IoExecutor;
+import com.mephi.skillfactory.oop.finance.manager.domain.User;
+import com.mephi.skillfactory.oop.finance.manager.repository.WalletRepository;
+import com.mephi.skillfactory.oop.finance.manager.service.auth.OffHeapWalletStore;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@SpringBootTest(classes = {WalletPersister.class, WalletLocks.class, IoExecutor.class, OffHeapWalletStore.class},
+    properties = {"app.write-behind.max-delay=1h", "app.write-behind.batch-size=2"})
+class WalletPersisterUnitTest {
+    @MockitoBean
+    private WalletRepository walletRepository;
+
+    @Autowired
+    private WalletPersister walletPersister;
+
+    @BeforeEach
+    void beforeEach() {
+        doReturn(true).when(walletRepository).saveWalletDeferringSync(any());
+    }
+
+    @Test
+    void shouldSaveRepeatedlyChangedWalletOnceOnFlushAndSyncTheBatch() {
+        // given
+        final var user = new User("login", "passwordHash");
+
+        // when
+        walletPersister.markDirty(user);
+        walletPersister.markDirty(user);
+        walletPersister.markDirty(user);
+
+        // then
+        verify(walletRepository, never()).saveWalletDeferringSync(user);
+        assertEquals(1, walletPersister.pending());
+
+        assertEquals(1, walletPersister.flush());
+        verify(walletRepository, times(1)).saveWalletDeferringSync(user);
+        verify(walletRepository, times(1)).syncSavedWallets();
+        assertEquals(0, walletPersister.pending());
+        assertTrue(user.getWallet().isPersisted());
+    }
+
+    @Test
+    void shouldSaveInBackgroundOnceBatchIsFull() {
+        // given
+        final var first = new User("first", "passwordHash");
+        final var second = new User("second", "passwordHash");
+
+        // when
+        walletPersister.markDirty(first);
+        walletPersister.markDirty(second);
+
+        // then
+        verify(walletRepository, timeout(5000)).saveWalletDeferringSync(first);
+        verify(walletRepository, timeout(5000)).saveWalletDeferringSync(second);
+        verify(walletRepository, timeout(5000)).syncSavedWallets();
+    }
+
+    @Test
+    void shouldKeepWalletWhoseSaveFailedWaitingForNextFlush() {
+        // given
+        final var user = new User("login", "passwordHash");
+        // the storage reports the error itself
+        doReturn(false).when(walletRepository).saveWalletDeferringSync(user);
+
+        // when
+        walletPersister.markDirty(user);
+        final var savedWithFailingStorage = walletPersister.flush();
+        final var pendingAfterFailure = walletPersister.pending();
+        doReturn(true).when(walletRepository).saveWalletDeferringSync(user);
+        final var savedOnRetry = walletPersister.flush();
+
+        // then
+        assertEquals(0, savedWithFailingStorage);
+        assertEquals(1, pendingAfterFailure);
+        assertEquals(1, savedOnRetry);
+        assertEquals(0, walletPersister.pending());
+        verify(walletRepository, times(2)).saveWalletDeferringSync(user);
+    }
+
+    @Test
+    void shouldKeepWalletWaitingIfSaveThrows() {
+        // given
+        final var user = new User("login", "passwordHash");
+        doThrow(new IllegalStateException("disk is gone")).when(walletRepository).saveWalletDeferringSync(user);
+
+        // when
+        walletPersister.markDirty(user);
+        assertThrows(IllegalStateException.class, walletPersister::flush);
+
+        // then
+        assertEquals(1, walletPersister.pending());
+        assertFalse(user.getWallet().isPersisted());
+    }
+
+    @Test
+    void shouldKeepWalletWhoseSyncFailedUnpersistedAndWaitingForNextFlush() {
+        // given
+        final var user = new User("login", "passwordHash");
+        doReturn(Set.of(user.getLogin())).when(walletRepository).syncSavedWallets();
+
+        // when
+        walletPersister.markDirty(user);
+        final var savedWithFailingSync = walletPersister.flush();
+
+        // then
+        assertEquals(0, savedWithFailingSync);
+        assertFalse(user.getWallet().isPersisted());
+        assertEquals(1, walletPersister.pending());
+    }
+}
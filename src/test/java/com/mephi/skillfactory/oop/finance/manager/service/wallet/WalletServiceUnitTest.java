@@ -0,0 +1,209 @@
+package com.mephi.skillfactory.oop.finance.manager.service.wallet;
+
+import com.mephi.skillfactory.oop.finance.manager.concurrent.IoExecutor;
+import com.mephi.skillfactory.oop.finance.manager.domain.Operation;
+import com.mephi.skillfactory.oop.finance.manager.domain.User;
+import com.mephi.skillfactory.oop.finance.manager.repository.WalletRepository;
+import com.mephi.skillfactory.oop.finance.manager.service.AlertService;
+import com.mephi.skillfactory.oop.finance.manager.service.auth.AuthService;
+import com.mephi.skillfactory.oop.finance.manager.service.auth.OffHeapWalletStore;
+import com.mephi.skillfactory.oop.finance.manager.service.wallet.exception.AmountException;
+import com.mephi.skillfactory.oop.finance.manager.service.wallet.exception.BudgetException;
+import com.mephi.skillfactory.oop.finance.manager.service.wallet.exception.PeriodException;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import lombok.SneakyThrows;
+
+import static com.mephi.skillfactory.oop.finance.manager.domain.Wallet.WITHOUT_CATEGORY;
+import static com.mephi.skillfactory.oop.finance.manager.domain.enumeration.BudgetPeriod.ALL_TIME;
+import static com.mephi.skillfactory.oop.finance.manager.domain.enumeration.BudgetPeriod.ROLLING;
+import static com.mephi.skillfactory.oop.finance.manager.domain.enumeration.OperationType.EXPENSE;
+import static com.mephi.skillfactory.oop.finance.manager.domain.enumeration.OperationType.INCOME;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@SpringBootTest(classes = {WalletService.class, WalletLocks.class, WalletPersister.class, IoExecutor.class, AlertService.class,
+    OffHeapWalletStore.class, PeriodAggregator.class})
+class WalletServiceUnitTest {
+    @MockitoBean
+    private AuthService authService;
+    @MockitoBean
+    private WalletRepository walletRepository;
+    @MockitoSpyBean
+    private AlertService alertService;
+    @MockitoSpyBean
+    private WalletPersister walletPersister;
+
+    @Autowired
+    private WalletService walletService;
+
+    @Test
+    @SneakyThrows
+    void shouldSummarizeWalletFromAggregates() {
+        // given
+        final var user = new User("login", "passwordHash");
+        walletService.addIncome(user, 1000, "salary", "");
+        walletService.addExpense(user, 300, "food", "");
+        walletService.addExpense(user, 50, "food", "");
+        walletService.addExpense(user, 20, "", "");
+        walletService.setBudget(user, "food", 400);
+        walletService.setBudget(user, "travel", 100);
+
+        // when
+        final var summary = walletService.summarize(user);
+
+        // then
+        assertEquals(630.0, summary.balance());
+        assertEquals(1000.0, summary.totalIncome());
+        assertEquals(370.0, summary.totalExpense());
+        assertEquals(Map.of("salary", 1000.0), summary.incomeByCategory());
+        assertEquals(Map.of("food", 350.0, WITHOUT_CATEGORY, 20.0), summary.expenseByCategory());
+        assertEquals(List.of(new WalletSummary.BudgetSummary("food", 400, ALL_TIME, 0, 350),
+                new WalletSummary.BudgetSummary("travel", 100, ALL_TIME, 0, 0)),
+            summary.budgets());
+        assertEquals(50.0, summary.budgets().getFirst().remaining());
+    }
+
+    @Test
+    @SneakyThrows
+    void shouldSummarizeRequestedCategoriesInRequestOrder() {
+        // given
+        final var user = new User("login", "passwordHash");
+        walletService.addIncome(user, 500, "food", "");
+        walletService.addExpense(user, 120, "food", "");
+        walletService.setBudget(user, "travel", 100);
+
+        // when
+        final var summaries = walletService.summarizeCategories(user, List.of("travel", "food", "unknown", "food"));
+
+        // then
+        assertEquals(3, summaries.size());
+
+        final var travel = summaries.getFirst();
+        assertEquals("travel", travel.category());
+        assertFalse(travel.hasOperations());
+        assertEquals(100.0, travel.budget().remaining());
+
+        final var food = summaries.get(1);
+        assertEquals(500.0, food.income());
+        assertEquals(120.0, food.expense());
+        assertNull(food.budget());
+
+        assertTrue(summaries.get(2).isEmpty());
+    }
+
+    @Test
+    @SneakyThrows
+    void shouldReportPeriodByWeeksWithEmptyBuckets() {
+        // given
+        final var user = new User("login", "passwordHash");
+        final var wallet = user.getWallet();
+        wallet.addOperation(new Operation(UUID.randomUUID(), INCOME, 1000, "salary", "", Instant.parse("2024-04-01T09:00:00Z"), null, "login"));
+        wallet.addOperation(new Operation(UUID.randomUUID(), EXPENSE, 100, "food", "", Instant.parse("2024-04-03T09:00:00Z"), "login", null));
+        wallet.addOperation(new Operation(UUID.randomUUID(), EXPENSE, 40, "food", "", Instant.parse("2024-04-17T09:00:00Z"), "login", null));
+        wallet.addOperation(new Operation(UUID.randomUUID(), EXPENSE, 999, "food", "", Instant.parse("2024-05-01T09:00:00Z"), "login", null));
+
+        // when
+        final var buckets = walletService.bucketPeriod(user, BucketSize.WEEK, LocalDate.parse("2024-04-02"), LocalDate.parse("2024-04-20"), ZoneOffset.UTC);
+        final var summary = walletService.summarizePeriod(user, LocalDate.parse("2024-04-01"), LocalDate.parse("2024-04-30"), ZoneOffset.UTC);
+
+        // then
+        assertEquals(List.of(
+            new PeriodBucket(LocalDate.parse("2024-04-02"), LocalDate.parse("2024-04-07"), 0, 100),
+            new PeriodBucket(LocalDate.parse("2024-04-08"), LocalDate.parse("2024-04-14"), 0, 0),
+            new PeriodBucket(LocalDate.parse("2024-04-15"), LocalDate.parse("2024-04-20"), 0, 40)), buckets);
+        assertEquals(1000.0, summary.income());
+        assertEquals(Map.of("food", 140.0), summary.expenseByCategory());
+    }
+
+    @Test
+    void shouldRejectPeriodEndingBeforeItStarts() {
+        final var user = new User("login", "passwordHash");
+
+        assertThrows(PeriodException.class,
+            () -> walletService.summarizePeriod(user, LocalDate.parse("2024-05-01"), LocalDate.parse("2024-04-01"), ZoneOffset.UTC));
+    }
+
+    @Test
+    void shouldRejectRollingBudgetWindowOutOfRange() {
+        final var user = new User("login", "passwordHash");
+
+        assertThrows(BudgetException.class, () -> walletService.setBudget(user, "food", 100, ROLLING, 0));
+        assertThrows(BudgetException.class, () -> walletService.setBudget(user, "food", 100, ROLLING, 367));
+    }
+
+    @Test
+    @SneakyThrows
+    void shouldPostBatchWithOneBudgetAlertPerCategoryAndOneSave() {
+        // given
+        final var user = new User("login", "passwordHash");
+        walletService.setBudget(user, "food", 100);
+        final var postings = List.of(
+            new Posting(INCOME, 1000, "salary", ""),
+            new Posting(EXPENSE, 40, "food", ""),
+            new Posting(EXPENSE, 70, "travel", ""),
+            new Posting(EXPENSE, 30, "food", ""),
+            new Posting(EXPENSE, 10, "", ""));
+
+        // when
+        walletService.addOperations(user, postings);
+
+        // then
+        final var wallet = user.getWallet();
+        assertEquals(5, wallet.getOperations().size());
+        assertEquals(850.0, wallet.getBalance());
+        assertEquals(70.0, wallet.expenseByCategory("food"));
+        verify(alertService, times(1)).checkBudgetAlert(user, "food");
+        verify(alertService, times(1)).checkBudgetAlert(user, "travel");
+        verify(alertService, times(1)).checkBudgetAlert(user, WITHOUT_CATEGORY);
+        verify(alertService, never()).checkBudgetAlert(user, "salary");
+        verify(alertService, times(1)).checkBalanceAlert(anyDouble(), anyDouble());
+        verify(walletPersister, times(1)).markDirty(user);
+    }
+
+    @Test
+    @SneakyThrows
+    void shouldRejectWholeBatchBecauseOfSingleBadPosting() {
+        // given
+        final var user = new User("login", "passwordHash");
+        walletService.addIncome(user, 500, "salary", "");
+        final var postings = List.of(
+            new Posting(INCOME, 1000, "salary", ""),
+            new Posting(EXPENSE, 40, "food", ""),
+            new Posting(EXPENSE, -5, "food", ""),
+            new Posting(EXPENSE, 30, "travel", ""));
+
+        // when
+        final var exception = assertThrows(AmountException.class, () -> walletService.addOperations(user, postings));
+
+        // then
+        assertTrue(exception.getMessage().startsWith("Операция #3"));
+        final var wallet = user.getWallet();
+        assertEquals(1, wallet.getOperations().size());
+        assertEquals(500.0, wallet.getBalance());
+        assertEquals(0.0, wallet.expenseByCategory("food"));
+        verify(alertService, never()).checkBudgetAlert(eq(user), anyString());
+        verify(walletPersister, times(1)).markDirty(user);
+    }
+}